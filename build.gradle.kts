@@ -11,6 +11,11 @@ dependencies {
     implementation("com.google.code.gson:gson:2.10.1")
     implementation("org.mozilla:rhino:1.7.15")
     implementation("com.github.curious-odd-man:rgxgen:2.0")
+
+    testImplementation("net.portswigger.burp.extensions:montoya-api:2025.8")
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks.withType<JavaCompile> {
@@ -19,6 +24,10 @@ tasks.withType<JavaCompile> {
     options.encoding = "UTF-8"
 }
 
+tasks.test {
+    useJUnitPlatform()
+}
+
 tasks.jar {
     duplicatesStrategy = DuplicatesStrategy.EXCLUDE
     from(configurations.runtimeClasspath.get().filter { it.isDirectory })
@@ -3,6 +3,7 @@ import burp.api.montoya.MontoyaApi;
 import core.BucketManager;
 import core.CollectorHttpHandler;
 import core.PersistenceManager;
+import core.TokenPersistence;
 import model.BucketDefaults;
 import ui.CollectorTab;
 
@@ -13,6 +14,7 @@ public class Extension implements BurpExtension {
     private BucketManager bucketManager;
     private BucketDefaults bucketDefaults;
     private PersistenceManager persistenceManager;
+    private TokenPersistence tokenPersistence;
     private CollectorTab collectorTab;
 
     @Override
@@ -30,10 +32,22 @@ public class Extension implements BurpExtension {
         persistenceManager.loadBucketManager(bucketManager);
         bucketDefaults = persistenceManager.loadBucketDefaults();
 
+        // Restore saved tokens before any traffic arrives, then save changes in the background
+        tokenPersistence = new TokenPersistence(api, bucketManager);
+        tokenPersistence.restore();
+        tokenPersistence.start();
+
         // Register HTTP handler
         CollectorHttpHandler httpHandler = new CollectorHttpHandler(bucketManager);
         api.http().registerHttpHandler(httpHandler);
 
+        // Stop background workers and save remaining token changes when the extension is unloaded
+        api.extension().registerUnloadingHandler(() -> {
+            bucketManager.shutdown();
+            tokenPersistence.shutdown();
+            persistenceManager.shutdown(bucketManager, bucketDefaults);
+        });
+
         // Create UI
         SwingUtilities.invokeLater(() -> {
             collectorTab = new CollectorTab(bucketManager, bucketDefaults, this::saveState, api);
@@ -48,7 +62,9 @@ public class Extension implements BurpExtension {
     }
 
     private void saveState() {
-        persistenceManager.saveBucketManager(bucketManager);
-        persistenceManager.saveBucketDefaults(bucketDefaults);
+        // Swap in a fresh rule plan so the HTTP handler sees the new configuration, built off the Swing thread
+        bucketManager.requestPlanRebuild();
+        // Written shortly on a background thread, coalescing bursts of edits
+        persistenceManager.scheduleSave(bucketManager, bucketDefaults);
     }
 }
@@ -0,0 +1,224 @@
+package core;
+
+import burp.api.montoya.core.ToolType;
+import burp.api.montoya.http.message.HttpMessage;
+import burp.api.montoya.logging.Logging;
+import model.QueueFullBehavior;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs token collection on background worker threads so the HTTP handler can return
+ * without waiting for regex matching and post-processing scripts.
+ * Messages are queued by reference and only serialized on the worker.
+ */
+public class AsyncCollector {
+    // Upper bound on how long a replacement waits for pending collections
+    private static final long FLUSH_TIMEOUT_MS = 5000;
+
+    private final BucketManager bucketManager;
+    private final Logging logging;
+    private final LinkedBlockingQueue<CollectionTask> queue;
+    private final List<Thread> workers;
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private final Condition progressed;
+    private final AtomicLong droppedCount;
+
+    // Sequence numbers of queued plus in-progress tasks, guarded by lock
+    private final TreeSet<Long> unfinished;
+    private long nextSequence;
+    private boolean started;
+    private volatile boolean shutdown;
+
+    public AsyncCollector(BucketManager bucketManager, Logging logging) {
+        this.bucketManager = bucketManager;
+        this.logging = logging;
+        this.queue = new LinkedBlockingQueue<>();
+        this.workers = new ArrayList<>();
+        this.lock = new ReentrantLock();
+        this.notFull = lock.newCondition();
+        this.progressed = lock.newCondition();
+        this.droppedCount = new AtomicLong();
+        this.unfinished = new TreeSet<>();
+    }
+
+    /**
+     * Queue a message for collection.
+     *
+     * @param capacity Maximum number of pending messages before fullBehavior applies
+     * @param fullBehavior What to do when the queue is full
+     */
+    public void submit(HttpMessage message, MessageUrl url, ToolType toolType, boolean isRequest,
+                       int capacity, QueueFullBehavior fullBehavior) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            ensureStarted();
+
+            while (unfinished.size() >= Math.max(1, capacity)) {
+                switch (fullBehavior) {
+                    case DROP:
+                        droppedCount.incrementAndGet();
+                        return;
+                    case RUN_INLINE:
+                        lock.unlock();
+                        try {
+                            run(new CollectionTask(message, url, toolType, isRequest, -1));
+                        } finally {
+                            lock.lock();
+                        }
+                        return;
+                    case BLOCK:
+                    default:
+                        notFull.await();
+                        if (shutdown) {
+                            return;
+                        }
+                        break;
+                }
+            }
+
+            long sequence = nextSequence++;
+            unfinished.add(sequence);
+            queue.add(new CollectionTask(message, url, toolType, isRequest, sequence));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until every collection queued before this call has finished, so the next replacement
+     * sees its tokens. Messages queued meanwhile are not waited for, so steady traffic can't keep
+     * the queue from ever looking empty. Gives up after a bounded timeout rather than stalling
+     * the HTTP thread indefinitely.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            long target = nextSequence - 1;
+            long remaining = TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MS);
+            while (!unfinished.isEmpty() && unfinished.first() <= target && !shutdown) {
+                if (remaining <= 0) {
+                    int waitingFor = unfinished.headSet(target, true).size();
+                    logging.logToError("Timed out waiting for " + waitingFor + " pending token collections");
+                    return;
+                }
+                remaining = progressed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean hasPending() {
+        lock.lock();
+        try {
+            return !unfinished.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stop the worker threads, discarding anything still queued.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            queue.clear();
+            unfinished.clear();
+            notFull.signalAll();
+            progressed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    // Must be called with lock held
+    private void ensureStarted() {
+        if (started) {
+            return;
+        }
+        started = true;
+        int workerCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(Thread.ofVirtual().name("Collector-collection-" + i).start(this::workerLoop));
+        }
+    }
+
+    private void workerLoop() {
+        while (!shutdown) {
+            CollectionTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                run(task);
+            } finally {
+                lock.lock();
+                try {
+                    boolean oldest = !unfinished.isEmpty() && unfinished.first() == task.sequence;
+                    if (unfinished.remove(task.sequence)) {
+                        notFull.signal();
+                    }
+                    // Flushes only wait on the oldest unfinished task
+                    if (oldest) {
+                        progressed.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    private void run(CollectionTask task) {
+        try {
+            bucketManager.collectTokens(task.message, task.url, task.toolType, task.isRequest);
+        } catch (Exception e) {
+            logging.logToError("Error collecting tokens asynchronously: " + e.getMessage());
+        }
+    }
+
+    private static final class CollectionTask {
+        final HttpMessage message;
+        final MessageUrl url;
+        final ToolType toolType;
+        final boolean isRequest;
+        // Order of submission, or -1 for a task run inline
+        final long sequence;
+
+        CollectionTask(HttpMessage message, MessageUrl url, ToolType toolType, boolean isRequest, long sequence) {
+            this.message = message;
+            this.url = url;
+            this.toolType = toolType;
+            this.isRequest = isRequest;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package core;
 
-import burp.api.montoya.http.message.params.HttpParameter;
+import burp.api.montoya.http.message.HttpMessage;
 import burp.api.montoya.http.message.params.HttpParameterType;
 import burp.api.montoya.http.message.params.ParsedHttpParameter;
 import burp.api.montoya.http.message.requests.HttpRequest;
@@ -8,33 +8,74 @@ import burp.api.montoya.http.message.responses.HttpResponse;
 import burp.api.montoya.logging.Logging;
 import com.github.curiousoddman.rgxgen.RgxGen;
 import model.*;
+import util.TokenTransformer;
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class BucketManager {
-    private final List<Bucket> buckets;
+    // Proxy history items handed to one worker at a time when parsing history
+    private static final int HISTORY_CHUNK_SIZE = 64;
+
+    // Immutable list, replaced as a whole on every change so readers never see a half-applied edit
+    private volatile List<Bucket> buckets = Collections.emptyList();
     private final GlobalControls globalControls;
     private final JavaScriptProcessor jsProcessor;
     private final Logging logging;
     private final burp.api.montoya.MontoyaApi api;
+    private final AsyncCollector asyncCollector;
+    private final ScopeCache scopeCache;
+    private final burp.api.montoya.core.Registration scopeChangeRegistration;
+
+    // Immutable snapshot of the configuration used by the HTTP hot path, swapped on rebuildPlan()
+    private volatile RulePlan plan;
+    // Builds plans requested by UI edits off the Swing thread; requests made while one is pending share it
+    private final ExecutorService planBuilder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Collector rule plan builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean planRebuildPending = new AtomicBoolean();
+
+    // Proxy history already parsed into each bucket, dropped along with the bucket
+    private final Map<Bucket, HistoryCheckpoint> historyCheckpoints = Collections.synchronizedMap(new WeakHashMap<>());
 
     public BucketManager(Logging logging, burp.api.montoya.MontoyaApi api) {
-        this.buckets = new CopyOnWriteArrayList<>();
         this.globalControls = new GlobalControls();
         this.jsProcessor = new JavaScriptProcessor(logging, api);
         this.logging = logging;
         this.api = api;
+        this.asyncCollector = new AsyncCollector(this, logging);
+        this.scopeCache = new ScopeCache(url -> api.scope().isInScope(url));
+        // Cached scope decisions are stale as soon as the user edits the scope
+        this.scopeChangeRegistration = api.scope().registerScopeChangeHandler(change -> scopeCache.clear());
+        this.plan = RulePlan.build(buckets, globalControls, logging);
+    }
+
+    public synchronized void addBucket(Bucket bucket) {
+        List<Bucket> updated = new ArrayList<>(buckets);
+        updated.add(bucket);
+        buckets = Collections.unmodifiableList(updated);
+        rebuildPlan();
     }
 
-    public void addBucket(Bucket bucket) {
-        buckets.add(bucket);
+    public synchronized void removeBucket(Bucket bucket) {
+        List<Bucket> updated = new ArrayList<>(buckets);
+        updated.remove(bucket);
+        buckets = Collections.unmodifiableList(updated);
+        rebuildPlan();
     }
 
-    public void removeBucket(Bucket bucket) {
-        buckets.remove(bucket);
+    /**
+     * Replace all buckets at once: the new list is swapped in atomically and the rule plan rebuilt a single time.
+     */
+    public synchronized void replaceBuckets(List<Bucket> newBuckets) {
+        buckets = Collections.unmodifiableList(new ArrayList<>(newBuckets));
+        rebuildPlan();
     }
 
     public List<Bucket> getBuckets() {
@@ -52,672 +93,566 @@ public class BucketManager {
         return globalControls;
     }
 
-    public void collectTokens(String content, String url, burp.api.montoya.core.ToolType toolType, boolean isRequest) {
+    /**
+     * Rebuild the precompiled rule plan from the current configuration and swap it in.
+     * Must be called after any configuration change (the UI save callback does this). Synchronized so
+     * a plan built from an older bucket list can never be swapped in after a newer one.
+     */
+    public synchronized void rebuildPlan() {
+        jsProcessor.setOptimizationLevel(globalControls.getScriptOptimizationLevel());
+        plan = RulePlan.build(buckets, globalControls, logging);
+    }
+
+    /**
+     * Rebuild the rule plan shortly on a background thread. A burst of edits (typing in a
+     * field fires one per keystroke) builds the plan once instead of once per edit.
+     */
+    public void requestPlanRebuild() {
+        if (!planRebuildPending.compareAndSet(false, true)) {
+            return; // The pending rebuild will see this edit too
+        }
+        try {
+            planBuilder.execute(() -> {
+                // Cleared first, so an edit made while building schedules another build
+                planRebuildPending.set(false);
+                try {
+                    rebuildPlan();
+                } catch (ConcurrentModificationException e) {
+                    // The UI edited a list while the plan was built from it
+                    requestPlanRebuild();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down, nothing left to serve
+        }
+    }
+
+    /**
+     * Wrap a message's URL so it is parsed and scope-checked at most once across all buckets.
+     */
+    MessageUrl messageUrl(String url) {
+        return new MessageUrl(url, this::isInScope);
+    }
+
+    private boolean isInScope(String url) {
+        return scopeCache.isInScope(url);
+    }
+
+    /**
+     * Collect tokens from an HTTP message. When async collection is enabled the message is queued
+     * by reference and collected on a background worker; otherwise it is collected inline.
+     */
+    public void collectTokensFromMessage(HttpMessage message, String url, burp.api.montoya.core.ToolType toolType, boolean isRequest) {
+        collectTokensFromMessage(message, messageUrl(url), toolType, isRequest);
+    }
+
+    /**
+     * Collect tokens from an HTTP message whose URL may be shared with its replacement pass.
+     */
+    public void collectTokensFromMessage(HttpMessage message, MessageUrl url, burp.api.montoya.core.ToolType toolType, boolean isRequest) {
+        RulePlan current = plan;
+
+        // Nothing can be collected, so don't serialize or queue the message at all
+        if (!current.bucketsEnabled || !current.collectionTools.contains(toolType) || current.collectionPlans.length == 0) {
+            return;
+        }
+
+        // The global content filter is checked here so skipped messages are never queued
+        MessageView view = new MessageView(message, isRequest);
+        if (current.collectionGate != null && !current.collectionGate.accepts(view)) {
+            return;
+        }
+
+        if (current.asyncCollection) {
+            asyncCollector.submit(message, url, toolType, isRequest, current.asyncQueueCapacity, current.asyncQueueFullBehavior);
+        } else {
+            collectTokens(view, url, toolType);
+        }
+    }
+
+    /**
+     * Wait for queued asynchronous collections so a replacement sees the latest tokens.
+     */
+    private void flushPendingCollections(RulePlan current) {
+        if (current.flushBeforeReplacement && asyncCollector.hasPending()) {
+            asyncCollector.flush();
+        }
+    }
+
+    /**
+     * Stop background collection workers and the scope listener. Called when the extension is unloaded.
+     */
+    public void shutdown() {
+        planBuilder.shutdownNow();
+        asyncCollector.shutdown();
+        jsProcessor.shutdown();
+        scopeChangeRegistration.deregister();
+    }
+
+    /**
+     * Collect tokens from a message that has already passed the global content filter.
+     */
+    public void collectTokens(HttpMessage message, MessageUrl url, burp.api.montoya.core.ToolType toolType, boolean isRequest) {
+        collectTokens(new MessageView(message, isRequest), url, toolType);
+    }
+
+    private void collectTokens(MessageView view, MessageUrl url, burp.api.montoya.core.ToolType toolType) {
+        RulePlan current = plan;
+        boolean isRequest = view.isRequest();
+
         // Check if buckets are globally enabled
-        if (!globalControls.isBucketsEnabled()) {
+        if (!current.bucketsEnabled) {
             return;
         }
 
         // Global controls are a master switch - if disabled globally, skip entirely
-        if (!globalControls.isCollectionEnabledForTool(toolType)) {
+        if (!current.collectionTools.contains(toolType)) {
             return;
         }
 
-        for (Bucket bucket : buckets) {
-            // Check if bucket is enabled (both global buckets enabled AND individual bucket enabled)
-            if (!bucket.isEnabled()) continue;
+        boolean globalHeadersOnly = current.collectionGate != null && current.collectionGate.headersOnly;
 
-            CollectionRule rule = bucket.getCollectionRule();
+        // Only visit buckets whose URL rules could match this host, in configuration order
+        BitSet candidates = current.collectionHostIndex.candidates(url);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            RulePlan.CollectionPlan collectionPlan = current.collectionPlans[i];
 
             // Check if this bucket is configured to collect from this type
-            if (isRequest && !rule.isCollectFromRequests()) continue;
-            if (!isRequest && !rule.isCollectFromResponses()) continue;
+            if (isRequest && !collectionPlan.collectFromRequests) continue;
+            if (!isRequest && !collectionPlan.collectFromResponses) continue;
 
             // Bucket must explicitly enable the tool (global is already checked above)
             // Both global AND bucket must be checked for the tool to be processed
-            if (!rule.getEnabledTools().contains(toolType)) {
+            if (!collectionPlan.enabledTools.contains(toolType)) {
                 continue; // Tool not enabled at bucket level
             }
 
-            // Check URL matchers - always act as allow-list
-            // At least one of: in-scope match OR URL matcher match required
-            boolean urlMatches = false;
-
-            // Check in-scope first if enabled
-            if (rule.isMatchInScopeUrls() && api.scope().isInScope(url)) {
-                urlMatches = true;
+            // If no URL match found, skip this bucket
+            if (!matchesUrl(collectionPlan.matchInScopeUrls, collectionPlan.urlMatchers, url)) {
+                continue;
             }
 
-            // If not matched yet, check URL matchers
-            if (!urlMatches && !rule.getUrlMatchers().isEmpty()) {
-                for (UrlMatcher matcher : rule.getUrlMatchers()) {
-                    if (matcher.isEnabled() && matcher.matches(url)) {
-                        urlMatches = true;
-                        break;
-                    }
-                }
+            // Size and MIME checks come before the message is serialized for matching
+            if (collectionPlan.gate != null && !collectionPlan.gate.accepts(view)) {
+                continue;
             }
 
-            // If no match found, skip this bucket
-            if (!urlMatches) {
-                continue;
+            boolean headersOnly = globalHeadersOnly || (collectionPlan.gate != null && collectionPlan.gate.headersOnly);
+            collectWithPlan(collectionPlan, view, url, headersOnly, current.literalPrefilter, null);
+        }
+    }
+
+    /**
+     * Check URL matchers - always act as allow-list.
+     * At least one of: in-scope match OR URL matcher match required.
+     */
+    private boolean matchesUrl(boolean matchInScopeUrls, UrlMatcher.Compiled[] urlMatchers, MessageUrl url) {
+        // Check in-scope first if enabled
+        if (matchInScopeUrls && url.isInScope()) {
+            return true;
+        }
+
+        // If not matched yet, check URL matchers (already filtered to enabled ones)
+        for (UrlMatcher.Compiled matcher : urlMatchers) {
+            if (matcher.matches(url.parsed())) {
+                return true;
             }
+        }
 
-            // Try each regex pattern
-            for (model.RegexPattern regexPattern : rule.getRegexPatterns()) {
-                // Skip disabled patterns
-                if (!regexPattern.isEnabled()) {
-                    continue;
-                }
+        return false;
+    }
 
-                // Check if pattern should match this message type
-                if (isRequest && !regexPattern.isMatchRequests()) {
-                    continue;
-                }
-                if (!isRequest && !regexPattern.isMatchResponses()) {
-                    continue;
-                }
+    /**
+     * Run a bucket's compiled patterns over their sections of the message and add the extracted tokens.
+     *
+     * @param headersOnly Never look at the body: whole-message patterns see only the headers, body patterns are skipped
+     * @param literalPrefilter Prefilter for whole-message patterns, or null to run every pattern
+     * @param collected Where to put extracted tokens, or null to add them to the bucket straight away
+     */
+    private void collectWithPlan(RulePlan.CollectionPlan collectionPlan, MessageView view, MessageUrl url,
+                                 boolean headersOnly, LiteralPrefilter literalPrefilter, List<String> collected) {
+        Bucket bucket = collectionPlan.bucket;
 
-                try {
-                    // Build flags based on pattern settings
-                    int flags = 0;
-                    if (regexPattern.isDotallMode()) {
-                        flags |= Pattern.DOTALL;
-                    }
-                    if (regexPattern.isMultilineMode()) {
-                        flags |= Pattern.MULTILINE;
-                    }
+        for (RulePlan.PatternPlan patternPlan : collectionPlan.patternsFor(view.isRequest())) {
+            String content = sectionContent(patternPlan, view, url, headersOnly);
+            if (content == null) {
+                continue;
+            }
 
-                    Pattern pattern = Pattern.compile(regexPattern.getPattern(), flags);
-                    Matcher matcher = pattern.matcher(content);
+            // The pattern cannot match if its required literal is absent
+            if (literalPrefilter != null && patternPlan.literalId >= 0
+                    && !view.literalHits(literalPrefilter, headersOnly).get(patternPlan.literalId)) {
+                continue;
+            }
 
-                    while (matcher.find()) {
-                        // Extract the first capturing group, or the whole match if no groups
-                        String token = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group(0);
+            try {
+                Matcher matcher = patternPlan.pattern.matcher(content);
 
-                        // Apply pattern-specific post-processing script first
-                        if (regexPattern.getPostProcessingScript() != null && !regexPattern.getPostProcessingScript().isEmpty()) {
-                            token = jsProcessor.processToken(token, regexPattern.getPostProcessingScript());
-                        }
+                while (matcher.find()) {
+                    // Extract the first capturing group, or the whole match if no groups
+                    String token = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group(0);
 
-                        // Then apply collection-level post-processing script
-                        if (rule.getPostProcessingScript() != null && !rule.getPostProcessingScript().isEmpty()) {
-                            token = jsProcessor.processToken(token, rule.getPostProcessingScript());
-                        }
+                    // Apply pattern-specific post-processing first
+                    token = processToken(token, patternPlan.postTransforms, patternPlan.postProcessingScript);
+
+                    // Then apply collection-level post-processing
+                    token = processToken(token, collectionPlan.postTransforms, collectionPlan.postProcessingScript);
 
+                    if (collected != null) {
+                        collected.add(token);
+                    } else {
                         bucket.addToken(token);
                     }
-                } catch (Exception e) {
-                    logging.logToError("Error processing regex for bucket " + bucket.getName() + ": " + e.getMessage());
                 }
+            } catch (Exception e) {
+                logging.logToError("Error processing regex for bucket " + bucket.getName() + ": " + e.getMessage());
             }
         }
     }
 
-    private String performRegexReplacement(String content, String regex, int group, String value, boolean replaceAll) {
-        try {
-            if (regex == null || regex.isEmpty() || content == null) {
-                return content;
-            }
-
-            Pattern pattern = Pattern.compile(regex);
-            Matcher matcher = pattern.matcher(content);
-            StringBuffer result = new StringBuffer();
-
-            while (matcher.find()) {
-                // Validate group index
-                if (group < 0 || group > matcher.groupCount()) {
-                    logging.logToError("Invalid regex group " + group + " for pattern: " + regex);
-                    return content;
-                }
-
-                String groupContent = matcher.group(group);
-
-                if (groupContent == null) {
-                    logging.logToError("Regex group " + group + " is null for pattern: " + regex);
-                    continue;
-                }
-
-                String fullMatch = matcher.group(0);
-
-                // Replace the captured group within the full match
-                // Use replaceFirst with Pattern.quote to avoid replacing all occurrences
-                String replaced = fullMatch.replaceFirst(Pattern.quote(groupContent), Matcher.quoteReplacement(value));
-
-                matcher.appendReplacement(result, Matcher.quoteReplacement(replaced));
+    /**
+     * The slice of the message a pattern runs against, or null if the pattern should be skipped.
+     */
+    private String sectionContent(RulePlan.PatternPlan patternPlan, MessageView view, MessageUrl url, boolean headersOnly) {
+        switch (patternPlan.section) {
+            case START_LINE:
+                return view.isRequest() && url != null && url.url() != null ? url.url() : view.startLine();
+            case HEADERS:
+                return view.headerText();
+            case HEADER:
+                return patternPlan.sectionHeader.isEmpty() ? null : view.headerValues(patternPlan.sectionHeader);
+            case BODY:
+                return headersOnly ? null : view.bodyText();
+            case BODY_PREFIX:
+                return headersOnly ? null : view.bodyPrefix(patternPlan.bodyPrefixBytes);
+            case WHOLE_MESSAGE:
+            default:
+                return headersOnly ? view.headerText() : view.text();
+        }
+    }
 
-                // If not replaceAll mode, break after first match
-                if (!replaceAll) {
-                    break;
-                }
+    /**
+     * Run a token through its native transform chain, then its JavaScript, either of which may be null.
+     * A failing transform chain is logged and leaves the token unchanged, the same as a failing script.
+     */
+    private String processToken(String token, TransformStep[] transforms, String script) {
+        if (transforms != null) {
+            try {
+                token = TokenTransformer.apply(token, transforms);
+            } catch (Exception e) {
+                logging.logToError("Token transform error: " + e.getMessage());
             }
-
-            matcher.appendTail(result);
-            return result.toString();
-        } catch (Exception e) {
-            logging.logToError("Error applying regex replacement: " + e.getMessage());
-            e.printStackTrace();
-            return content;
         }
+        if (script != null) {
+            token = jsProcessor.processToken(token, script);
+        }
+        return token;
     }
 
     // New methods using Montoya API for proper HTTP message manipulation
-    public HttpRequest applyReplacementsToRequest(HttpRequest request, burp.api.montoya.core.ToolType toolType) {
+    /**
+     * Apply every matching bucket's request rules to a request.
+     *
+     * @return The (possibly) modified request, with a flag saying whether it changed
+     */
+    public ReplacementResult<HttpRequest> applyReplacementsToRequest(HttpRequest request, burp.api.montoya.core.ToolType toolType) {
+        return applyReplacementsToRequest(request, toolType, null);
+    }
+
+    /**
+     * Apply every matching bucket's request rules to a request.
+     *
+     * @param url The request's URL if the caller already wrapped it for collection, or null
+     * @return The (possibly) modified request, with a flag saying whether it changed
+     */
+    public ReplacementResult<HttpRequest> applyReplacementsToRequest(HttpRequest request, burp.api.montoya.core.ToolType toolType, MessageUrl url) {
+        RulePlan current = plan;
+
         // Check if buckets are globally enabled
-        if (!globalControls.isBucketsEnabled()) {
-            return request;
+        if (!current.bucketsEnabled) {
+            return ReplacementResult.unchanged(request);
         }
 
         // Global controls are a master switch - if disabled globally, skip entirely
-        if (!globalControls.isReplacementEnabledForTool(toolType)) {
-            return request;
+        if (!current.replacementTools.contains(toolType)) {
+            return ReplacementResult.unchanged(request);
         }
 
-        HttpRequest modifiedRequest = request;
+        // Created on first use by a content filter
+        MessageView view = null;
+        if (current.replacementGate != null) {
+            view = new MessageView(request, true);
+            if (!current.replacementGate.accepts(view)) {
+                return ReplacementResult.unchanged(request);
+            }
+        }
+        boolean globalHeadersOnly = current.replacementGate != null && current.replacementGate.headersOnly;
 
-        for (Bucket bucket : buckets) {
-            // Check if bucket is enabled (both global buckets enabled AND individual bucket enabled)
-            if (!bucket.isEnabled()) continue;
+        // Edits from every bucket are collected and applied to the request in one pass
+        MessageRewriter rewriter = null;
+        boolean flushed = false;
 
-            ReplacementConfig config = bucket.getReplacementConfig();
+        if (url == null) {
+            url = messageUrl(request.url());
+        }
+
+        // Only visit buckets whose URL rules could match this host, in configuration order
+        BitSet candidates = current.replacementHostIndex.candidates(url);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            RulePlan.ReplacementPlan replacementPlan = current.replacementPlans[i];
 
             // Check if this bucket is configured to replace in requests
-            if (!config.isReplaceInRequests()) continue;
+            if (!replacementPlan.replaceInRequests) continue;
 
             // Bucket must explicitly enable the tool (global is already checked above)
             // Both global AND bucket must be checked for the tool to be processed
-            if (!config.getEnabledTools().contains(toolType)) {
+            if (!replacementPlan.enabledTools.contains(toolType)) {
                 continue; // Tool not enabled at bucket level
             }
 
-            // Check URL matchers - always act as allow-list
-            // At least one of: in-scope match OR URL matcher match required
-            String url = request.url();
-            boolean urlMatches = false;
-
-            // Check in-scope first if enabled
-            if (config.isMatchInScopeUrls() && api.scope().isInScope(url)) {
-                urlMatches = true;
-            }
-
-            // If not matched yet, check URL matchers
-            if (!urlMatches && !config.getUrlMatchers().isEmpty()) {
-                for (UrlMatcher matcher : config.getUrlMatchers()) {
-                    if (matcher.isEnabled() && matcher.matches(url)) {
-                        urlMatches = true;
-                        break;
-                    }
-                }
-            }
-
-            // If no match found, skip this bucket
-            if (!urlMatches) {
+            // If no URL match found, skip this bucket
+            if (!matchesUrl(replacementPlan.matchInScopeUrls, replacementPlan.urlMatchers, url)) {
                 continue;
             }
 
-            // Check if there are any enabled replacement rules
-            boolean hasEnabledRules = false;
-            for (ReplacementRule rule : config.getReplacementRules()) {
-                if (rule.isEnabled()) {
-                    hasEnabledRules = true;
-                    break;
+            // Check the bucket's content filter before a token is taken
+            if (replacementPlan.gate != null) {
+                if (view == null) {
+                    view = new MessageView(request, true);
+                }
+                if (!replacementPlan.gate.accepts(view)) {
+                    continue;
                 }
             }
+            boolean headersOnly = globalHeadersOnly || (replacementPlan.gate != null && replacementPlan.gate.headersOnly);
 
-            // Skip this bucket if no enabled rules
-            if (!hasEnabledRules) {
-                continue;
+            if (!flushed) {
+                flushPendingCollections(current);
+                flushed = true;
             }
 
-            // Get a token from the bucket
-            boolean removeToken = config.getLastTokenBehavior() == LastTokenBehavior.REMOVE_FROM_BUCKET || bucket.getTokenCount() > 1;
-            String token = bucket.getToken(removeToken);
-
-            // Handle empty bucket scenarios
+            String token = acquireToken(replacementPlan);
             if (token == null) {
-                switch (config.getEmptyBucketBehavior()) {
-                    case DO_NOTHING:
-                        continue; // Skip this bucket
-                    case USE_STATIC_VALUE:
-                        token = config.getStaticValue();
-                        if (token == null || token.isEmpty()) continue;
-                        break;
-                    case GENERATE_FROM_REGEX:
-                        try {
-                            String regex = config.getGeneratorRegex();
-                            if (regex == null || regex.isEmpty()) continue;
-                            RgxGen rgxGen = RgxGen.parse(regex);
-                            token = rgxGen.generate();
-                        } catch (Exception e) {
-                            logging.logToError("Error generating string from regex: " + e.getMessage());
-                            continue;
-                        }
-                        break;
-                }
-            }
-
-            // Apply pre-replacement script if defined (runs before all replacement rules)
-            if (config.getPreReplacementScript() != null && !config.getPreReplacementScript().isEmpty()) {
-                token = jsProcessor.processToken(token, config.getPreReplacementScript());
+                continue;
             }
 
             // Apply each replacement rule
-            for (ReplacementRule rule : config.getReplacementRules()) {
-                // Skip disabled rules
-                if (!rule.isEnabled()) {
-                    continue;
-                }
+            for (RulePlan.RulePlanStep rule : replacementPlan.requestRules) {
+                // Apply pre-processing transforms and script if defined (runs for each individual rule)
+                String processedToken = processToken(token, rule.preTransforms, rule.preProcessingScript);
 
-                // Check if rule should apply to requests
-                if (!rule.isApplyToRequests()) {
-                    continue;
-                }
-
-                // Apply pre-processing script if defined (runs for each individual rule)
-                String processedToken = token;
-                if (rule.getPreProcessingScript() != null && !rule.getPreProcessingScript().isEmpty()) {
-                    processedToken = jsProcessor.processToken(token, rule.getPreProcessingScript());
+                if (rewriter == null) {
+                    rewriter = new MessageRewriter(logging);
                 }
-
-                modifiedRequest = applyReplacementRuleToRequest(modifiedRequest, processedToken, rule);
+                addRequestEdit(rewriter, processedToken, rule, headersOnly);
             }
         }
 
-        return modifiedRequest;
+        if (rewriter == null) {
+            return ReplacementResult.unchanged(request);
+        }
+        // The rewriter hands back the same instance when no edit changed the message
+        HttpRequest modifiedRequest = rewriter.applyTo(request);
+        return new ReplacementResult<>(modifiedRequest, modifiedRequest != request, rewriter.changedRules());
     }
 
-    public HttpResponse applyReplacementsToResponse(HttpResponse response, burp.api.montoya.core.ToolType toolType) {
+    /**
+     * Apply every matching bucket's response rules to a response.
+     *
+     * @return The (possibly) modified response, with a flag saying whether it changed
+     */
+    public ReplacementResult<HttpResponse> applyReplacementsToResponse(HttpResponse response, burp.api.montoya.core.ToolType toolType) {
+        RulePlan current = plan;
+
         // Check if buckets are globally enabled
-        if (!globalControls.isBucketsEnabled()) {
-            return response;
+        if (!current.bucketsEnabled) {
+            return ReplacementResult.unchanged(response);
         }
 
         // Global controls are a master switch - if disabled globally, skip entirely
-        if (!globalControls.isReplacementEnabledForTool(toolType)) {
-            return response;
+        if (!current.replacementTools.contains(toolType)) {
+            return ReplacementResult.unchanged(response);
         }
 
-        HttpResponse modifiedResponse = response;
-
-        for (Bucket bucket : buckets) {
-            // Check if bucket is enabled (both global buckets enabled AND individual bucket enabled)
-            if (!bucket.isEnabled()) continue;
+        // Created on first use by a content filter
+        MessageView view = null;
+        if (current.replacementGate != null) {
+            view = new MessageView(response, false);
+            if (!current.replacementGate.accepts(view)) {
+                return ReplacementResult.unchanged(response);
+            }
+        }
+        boolean globalHeadersOnly = current.replacementGate != null && current.replacementGate.headersOnly;
 
-            ReplacementConfig config = bucket.getReplacementConfig();
+        // Edits from every bucket are collected and applied to the response in one pass
+        MessageRewriter rewriter = null;
+        boolean flushed = false;
 
+        for (RulePlan.ReplacementPlan replacementPlan : current.replacementPlans) {
             // Check if this bucket is configured to replace in responses
-            if (!config.isReplaceInResponses()) continue;
+            if (!replacementPlan.replaceInResponses) continue;
 
             // Bucket must explicitly enable the tool (global is already checked above)
             // Both global AND bucket must be checked for the tool to be processed
-            if (!config.getEnabledTools().contains(toolType)) {
+            if (!replacementPlan.enabledTools.contains(toolType)) {
                 continue; // Tool not enabled at bucket level
             }
 
-            // Check if there are any enabled replacement rules
-            boolean hasEnabledRules = false;
-            for (ReplacementRule rule : config.getReplacementRules()) {
-                if (rule.isEnabled()) {
-                    hasEnabledRules = true;
-                    break;
+            // Check the bucket's content filter before a token is taken
+            if (replacementPlan.gate != null) {
+                if (view == null) {
+                    view = new MessageView(response, false);
+                }
+                if (!replacementPlan.gate.accepts(view)) {
+                    continue;
                 }
             }
+            boolean headersOnly = globalHeadersOnly || (replacementPlan.gate != null && replacementPlan.gate.headersOnly);
 
-            // Skip this bucket if no enabled rules
-            if (!hasEnabledRules) {
-                continue;
+            if (!flushed) {
+                flushPendingCollections(current);
+                flushed = true;
             }
 
-            // Get a token from the bucket
-            boolean removeToken = config.getLastTokenBehavior() == LastTokenBehavior.REMOVE_FROM_BUCKET || bucket.getTokenCount() > 1;
-            String token = bucket.getToken(removeToken);
-
-            // Handle empty bucket scenarios
+            String token = acquireToken(replacementPlan);
             if (token == null) {
-                switch (config.getEmptyBucketBehavior()) {
-                    case DO_NOTHING:
-                        continue; // Skip this bucket
-                    case USE_STATIC_VALUE:
-                        token = config.getStaticValue();
-                        if (token == null || token.isEmpty()) continue;
-                        break;
-                    case GENERATE_FROM_REGEX:
-                        try {
-                            String regex = config.getGeneratorRegex();
-                            if (regex == null || regex.isEmpty()) continue;
-                            RgxGen rgxGen = RgxGen.parse(regex);
-                            token = rgxGen.generate();
-                        } catch (Exception e) {
-                            logging.logToError("Error generating string from regex: " + e.getMessage());
-                            continue;
-                        }
-                        break;
-                }
-            }
-
-            // Apply pre-replacement script if defined (runs before all replacement rules)
-            if (config.getPreReplacementScript() != null && !config.getPreReplacementScript().isEmpty()) {
-                token = jsProcessor.processToken(token, config.getPreReplacementScript());
+                continue;
             }
 
             // Apply each replacement rule
-            for (ReplacementRule rule : config.getReplacementRules()) {
-                // Skip disabled rules
-                if (!rule.isEnabled()) {
-                    continue;
-                }
+            for (RulePlan.RulePlanStep rule : replacementPlan.responseRules) {
+                // Apply pre-processing transforms and script if defined (runs for each individual rule)
+                String processedToken = processToken(token, rule.preTransforms, rule.preProcessingScript);
 
-                // Check if rule should apply to responses
-                if (!rule.isApplyToResponses()) {
-                    continue;
+                if (rewriter == null) {
+                    rewriter = new MessageRewriter(logging);
                 }
+                addResponseEdit(rewriter, processedToken, rule, headersOnly);
+            }
+        }
 
-                // Apply pre-processing script if defined (runs for each individual rule)
-                String processedToken = token;
-                if (rule.getPreProcessingScript() != null && !rule.getPreProcessingScript().isEmpty()) {
-                    processedToken = jsProcessor.processToken(token, rule.getPreProcessingScript());
-                }
+        if (rewriter == null) {
+            return ReplacementResult.unchanged(response);
+        }
+        // The rewriter hands back the same instance when no edit changed the message
+        HttpResponse modifiedResponse = rewriter.applyTo(response);
+        return new ReplacementResult<>(modifiedResponse, modifiedResponse != response, rewriter.changedRules());
+    }
 
-                modifiedResponse = applyReplacementRuleToResponse(modifiedResponse, processedToken, rule);
+    /**
+     * Take a token from the bucket, falling back to the configured empty bucket behavior,
+     * and run the pre-replacement script on it.
+     *
+     * @return The token to inject, or null if this bucket should be skipped
+     */
+    private String acquireToken(RulePlan.ReplacementPlan replacementPlan) {
+        Bucket bucket = replacementPlan.bucket;
+
+        // Get a token from the bucket
+        boolean removeToken = replacementPlan.lastTokenBehavior == LastTokenBehavior.REMOVE_FROM_BUCKET || bucket.getTokenCount() > 1;
+        String token = bucket.getToken(removeToken);
+
+        // Handle empty bucket scenarios
+        if (token == null) {
+            switch (replacementPlan.emptyBucketBehavior) {
+                case DO_NOTHING:
+                    return null; // Skip this bucket
+                case USE_STATIC_VALUE:
+                    token = replacementPlan.staticValue;
+                    if (token == null || token.isEmpty()) return null;
+                    break;
+                case GENERATE_FROM_REGEX:
+                    try {
+                        String regex = replacementPlan.generatorRegex;
+                        if (regex == null || regex.isEmpty()) return null;
+                        RgxGen rgxGen = RgxGen.parse(regex);
+                        token = rgxGen.generate();
+                    } catch (Exception e) {
+                        logging.logToError("Error generating string from regex: " + e.getMessage());
+                        return null;
+                    }
+                    break;
             }
         }
 
-        return modifiedResponse;
+        // Apply pre-replacement transforms and script if defined (runs before all replacement rules)
+        token = processToken(token, replacementPlan.preTransforms, replacementPlan.preReplacementScript);
+
+        return token;
     }
 
-    private HttpRequest applyReplacementRuleToRequest(HttpRequest request, String token, ReplacementRule rule) {
-        switch (rule.getLocation()) {
+    private void addRequestEdit(MessageRewriter rewriter, String token, RulePlan.RulePlanStep rule, boolean headersOnly) {
+        switch (rule.location) {
             case HEADER:
-                return replaceOrAddHeader(request, rule.getFieldName(), token);
+                rewriter.setHeader(rule.rule, rule.fieldName, token);
+                break;
             case URL_PARAMETER:
-                return replaceOrAddUrlParameter(request, rule.getFieldName(), token);
+                rewriter.setUrlParameter(rule.rule, rule.fieldName, token);
+                break;
             case BODY_PARAMETER:
-                return replaceOrAddBodyParameter(request, rule.getFieldName(), token);
+                rewriter.setBodyParameter(rule.rule, rule.fieldName, token);
+                break;
             case COOKIE:
-                return replaceOrAddCookie(request, rule.getFieldName(), token);
+                rewriter.setCookie(rule.rule, rule.fieldName, token);
+                break;
             case GENERIC_REGEX:
-                // Apply regex to individual parts of the request
-                return applyRegexToRequest(request, rule.getRegexPattern(), rule.getRegexGroup(), token, rule.isReplaceAll());
-            default:
-                return request;
+                rewriter.addRegex(rule.rule, rule.regex, rule.regexGroup, token, rule.replaceAll, headersOnly);
+                break;
         }
     }
 
-    private HttpResponse applyReplacementRuleToResponse(HttpResponse response, String token, ReplacementRule rule) {
-        switch (rule.getLocation()) {
+    private void addResponseEdit(MessageRewriter rewriter, String token, RulePlan.RulePlanStep rule, boolean headersOnly) {
+        switch (rule.location) {
             case HEADER:
-                return replaceOrAddHeaderInResponse(response, rule.getFieldName(), token);
+                rewriter.setHeader(rule.rule, rule.fieldName, token);
+                break;
             case GENERIC_REGEX:
-                // Apply regex to individual parts of the response
-                return applyRegexToResponse(response, rule.getRegexPattern(), rule.getRegexGroup(), token, rule.isReplaceAll());
+                rewriter.addRegex(rule.rule, rule.regex, rule.regexGroup, token, rule.replaceAll, headersOnly);
+                break;
             default:
                 // URL_PARAMETER, BODY_PARAMETER, COOKIE don't apply to responses
-                return response;
-        }
-    }
-
-    private HttpRequest replaceOrAddHeader(HttpRequest request, String headerName, String value) {
-        // Check if header exists
-        if (request.hasHeader(headerName)) {
-            // Replace existing header
-            return request.withUpdatedHeader(headerName, value);
-        } else {
-            // Add new header
-            return request.withAddedHeader(headerName, value);
-        }
-    }
-
-    private HttpResponse replaceOrAddHeaderInResponse(HttpResponse response, String headerName, String value) {
-        // Check if header exists
-        if (response.hasHeader(headerName)) {
-            // Replace existing header
-            return response.withUpdatedHeader(headerName, value);
-        } else {
-            // Add new header
-            return response.withAddedHeader(headerName, value);
-        }
-    }
-
-    private HttpRequest replaceOrAddUrlParameter(HttpRequest request, String paramName, String value) {
-        // withParameter() adds the parameter if it doesn't exist, or updates it if it does
-        return request.withParameter(HttpParameter.urlParameter(paramName, value));
-    }
-
-    private HttpRequest replaceOrAddBodyParameter(HttpRequest request, String paramName, String value) {
-        // withParameter() adds the parameter if it doesn't exist, or updates it if it does
-        return request.withParameter(HttpParameter.bodyParameter(paramName, value));
-    }
-
-    private HttpRequest replaceOrAddCookie(HttpRequest request, String cookieName, String value) {
-        // withParameter() adds the parameter if it doesn't exist, or updates it if it does
-        return request.withParameter(HttpParameter.cookieParameter(cookieName, value));
-    }
-
-    /**
-     * Updates the Content-Length header in an HTTP message to match the actual body length.
-     * Handles both \r\n\r\n and \n\n separators between headers and body.
-     *
-     * @param httpMessage The HTTP request or response as a string
-     * @return The HTTP message with corrected Content-Length header
-     */
-    private String updateContentLength(String httpMessage) {
-        try {
-            // Find the separator between headers and body
-            int separatorIndex = -1;
-            String separator = null;
-
-            // Try \r\n\r\n first (standard HTTP)
-            separatorIndex = httpMessage.indexOf("\r\n\r\n");
-            if (separatorIndex != -1) {
-                separator = "\r\n\r\n";
-            } else {
-                // Try \n\n (some non-standard cases)
-                separatorIndex = httpMessage.indexOf("\n\n");
-                if (separatorIndex != -1) {
-                    separator = "\n\n";
-                }
-            }
-
-            // If no separator found, return as-is (no body)
-            if (separatorIndex == -1) {
-                return httpMessage;
-            }
-
-            // Split headers and body
-            String headersSection = httpMessage.substring(0, separatorIndex);
-            String body = httpMessage.substring(separatorIndex + separator.length());
-
-            // Calculate actual body length in bytes (UTF-8)
-            int actualBodyLength = body.getBytes(java.nio.charset.StandardCharsets.UTF_8).length;
-
-            // Determine line separator used in headers
-            String lineSeparator = headersSection.contains("\r\n") ? "\r\n" : "\n";
-
-            // Split headers into individual lines
-            String[] headerLines = headersSection.split(lineSeparator);
-            StringBuilder updatedHeaders = new StringBuilder();
-
-            boolean contentLengthFound = false;
-
-            // Process each header line
-            for (int i = 0; i < headerLines.length; i++) {
-                String line = headerLines[i];
-
-                // Check if this is a Content-Length header (case-insensitive)
-                if (line.toLowerCase().startsWith("content-length:")) {
-                    // Replace with correct Content-Length
-                    updatedHeaders.append("Content-Length: ").append(actualBodyLength);
-                    contentLengthFound = true;
-                } else {
-                    updatedHeaders.append(line);
-                }
-
-                // Add line separator after each line except the last
-                if (i < headerLines.length - 1) {
-                    updatedHeaders.append(lineSeparator);
-                }
-            }
-
-            // If Content-Length wasn't found but there's a body, add it
-            if (!contentLengthFound && actualBodyLength > 0) {
-                updatedHeaders.append(lineSeparator);
-                updatedHeaders.append("Content-Length: ").append(actualBodyLength);
-            }
-
-            // Reconstruct the HTTP message
-            return updatedHeaders.toString() + separator + body;
-
-        } catch (Exception e) {
-            logging.logToError("Error updating Content-Length: " + e.getMessage());
-            e.printStackTrace();
-            return httpMessage; // Return original on error
-        }
-    }
-
-    private HttpRequest applyRegexToRequest(HttpRequest request, String regex, int group, String value, boolean replaceAll) {
-        try {
-            // Get the entire request as a string
-            String fullRequest = request.toString();
-
-            // Apply regex replacement to the entire string
-            String modifiedRequestString = performRegexReplacement(fullRequest, regex, group, value, replaceAll);
-
-            // If no replacement was made, return original
-            if (modifiedRequestString.equals(fullRequest)) {
-                return request;
-            }
-
-            // Update Content-Length header if body was modified
-            modifiedRequestString = updateContentLength(modifiedRequestString);
-
-            // Rebuild the request from the modified string using Montoya API
-            // IMPORTANT: Preserve the original httpService so Burp knows where to send the request
-            return HttpRequest.httpRequest(request.httpService(), modifiedRequestString);
-        } catch (Exception e) {
-            logging.logToError("Error applying regex to request: " + e.getMessage());
-            e.printStackTrace();
-            return request;
-        }
-    }
-
-    private HttpResponse applyRegexToResponse(HttpResponse response, String regex, int group, String value, boolean replaceAll) {
-        try {
-            // Get the entire response as a string
-            String fullResponse = response.toString();
-
-            // Apply regex replacement to the entire string
-            String modifiedResponseString = performRegexReplacement(fullResponse, regex, group, value, replaceAll);
-
-            // If no replacement was made, return original
-            if (modifiedResponseString.equals(fullResponse)) {
-                return response;
-            }
-
-            // Update Content-Length header if body was modified
-            modifiedResponseString = updateContentLength(modifiedResponseString);
-
-            // Rebuild the response from the modified string using Montoya API
-            return HttpResponse.httpResponse(modifiedResponseString);
-        } catch (Exception e) {
-            logging.logToError("Error applying regex to response: " + e.getMessage());
-            e.printStackTrace();
-            return response;
+                break;
         }
     }
 
     /**
      * Collect tokens from content for a specific bucket only.
-     * This is used by parseProxyHistory to target a single bucket.
+     * This is used by parseProxyHistory to target the selected buckets.
      *
+     * @param collectionPlan The bucket's collection plan, built once per parse run
      * @param bypassRestrictions If true, bypasses bucket enabled and tool enabled checks
+     * @param literalPrefilter Prefilter built from the parsed buckets' patterns, or null to run every pattern
+     * @param collected Where to put extracted tokens, or null to add them to the bucket straight away
      */
-    private void collectTokensForBucket(Bucket bucket, String content, String url, burp.api.montoya.core.ToolType toolType, boolean isRequest, boolean bypassRestrictions) {
-        // Check if bucket is enabled (unless bypassing restrictions)
-        if (!bypassRestrictions && !bucket.isEnabled()) return;
+    private void collectTokensForBucket(RulePlan.CollectionPlan collectionPlan, MessageView view, MessageUrl url, burp.api.montoya.core.ToolType toolType, boolean bypassRestrictions,
+                                        LiteralPrefilter literalPrefilter, List<String> collected) {
+        boolean isRequest = view.isRequest();
 
-        CollectionRule rule = bucket.getCollectionRule();
+        // Check if bucket is enabled (unless bypassing restrictions)
+        if (!bypassRestrictions && !collectionPlan.bucket.isEnabled()) return;
 
         // Check if this bucket is configured to collect from this type
-        if (isRequest && !rule.isCollectFromRequests()) return;
-        if (!isRequest && !rule.isCollectFromResponses()) return;
+        if (isRequest && !collectionPlan.collectFromRequests) return;
+        if (!isRequest && !collectionPlan.collectFromResponses) return;
 
         // Bucket must explicitly enable the tool (unless bypassing restrictions)
-        if (!bypassRestrictions && !rule.getEnabledTools().contains(toolType)) {
+        if (!bypassRestrictions && !collectionPlan.enabledTools.contains(toolType)) {
             return;
         }
 
-        // Check URL matchers - always act as allow-list
-        // At least one of: in-scope match OR URL matcher match required
-        boolean urlMatches = false;
-
-        // Check in-scope first if enabled
-        if (rule.isMatchInScopeUrls() && api.scope().isInScope(url)) {
-            urlMatches = true;
-        }
-
-        // If not matched yet, check URL matchers
-        if (!urlMatches && !rule.getUrlMatchers().isEmpty()) {
-            for (UrlMatcher matcher : rule.getUrlMatchers()) {
-                if (matcher.isEnabled() && matcher.matches(url)) {
-                    urlMatches = true;
-                    break;
-                }
-            }
-        }
-
-        // If no match found, skip
-        if (!urlMatches) {
+        // If no URL match found, skip
+        if (!matchesUrl(collectionPlan.matchInScopeUrls, collectionPlan.urlMatchers, url)) {
             return;
         }
 
-        // Try each regex pattern
-        for (model.RegexPattern regexPattern : rule.getRegexPatterns()) {
-            // Skip disabled patterns
-            if (!regexPattern.isEnabled()) {
-                continue;
-            }
+        // Content filters still apply, since they describe what the bucket can match
+        ContentGate globalGate = plan.collectionGate;
+        if (globalGate != null && !globalGate.accepts(view)) return;
+        if (collectionPlan.gate != null && !collectionPlan.gate.accepts(view)) return;
 
-            // Check if pattern should match this message type
-            if (isRequest && !regexPattern.isMatchRequests()) {
-                continue;
-            }
-            if (!isRequest && !regexPattern.isMatchResponses()) {
-                continue;
-            }
-
-            try {
-                // Build flags based on pattern settings
-                int flags = 0;
-                if (regexPattern.isDotallMode()) {
-                    flags |= Pattern.DOTALL;
-                }
-                if (regexPattern.isMultilineMode()) {
-                    flags |= Pattern.MULTILINE;
-                }
-
-                Pattern pattern = Pattern.compile(regexPattern.getPattern(), flags);
-                Matcher matcher = pattern.matcher(content);
-
-                while (matcher.find()) {
-                    // Extract the first capturing group, or the whole match if no groups
-                    String token = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group(0);
-
-                    // Apply pattern-specific post-processing script first
-                    if (regexPattern.getPostProcessingScript() != null && !regexPattern.getPostProcessingScript().isEmpty()) {
-                        token = jsProcessor.processToken(token, regexPattern.getPostProcessingScript());
-                    }
-
-                    // Then apply collection-level post-processing script
-                    if (rule.getPostProcessingScript() != null && !rule.getPostProcessingScript().isEmpty()) {
-                        token = jsProcessor.processToken(token, rule.getPostProcessingScript());
-                    }
-
-                    bucket.addToken(token);
-                }
-            } catch (Exception e) {
-                logging.logToError("Error processing regex for bucket " + bucket.getName() + ": " + e.getMessage());
-            }
-        }
+        boolean headersOnly = (globalGate != null && globalGate.headersOnly)
+                || (collectionPlan.gate != null && collectionPlan.gate.headersOnly);
+        collectWithPlan(collectionPlan, view, url, headersOnly, literalPrefilter, collected);
     }
 
     /**
@@ -735,31 +670,98 @@ public class BucketManager {
                                   java.util.function.Consumer<Integer> progressCallback,
                                   java.util.function.BooleanSupplier cancelCheck,
                                   java.util.function.BooleanSupplier pauseCheck) {
-        int initialTokenCount = bucket.getTokenCount();
+        return parseProxyHistory(Collections.singletonList(bucket), maxItems, newestFirst, false,
+                progressCallback, cancelCheck, pauseCheck).get(bucket);
+    }
+
+    /**
+     * Number of proxy history items a parse of these buckets would scan, before any max items limit.
+     *
+     * @param onlyUnparsed If true, count only items not yet parsed into at least one of the buckets
+     */
+    public int countProxyHistoryToParse(List<Bucket> selectedBuckets, boolean onlyUnparsed) {
+        List<burp.api.montoya.proxy.ProxyHttpRequestResponse> historyItems = api.proxy().history();
+        if (!onlyUnparsed) {
+            return historyItems.size();
+        }
+
+        HistoryCheckpoint.Ranges[] parsed = new HistoryCheckpoint.Ranges[selectedBuckets.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = validateCheckpoint(selectedBuckets.get(i), historyItems);
+        }
+
+        int count = 0;
+        for (int index = HistoryCheckpoint.nextUnparsed(parsed, 0, false, historyItems.size());
+             index >= 0;
+             index = HistoryCheckpoint.nextUnparsed(parsed, index + 1, false, historyItems.size())) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Parse proxy history once and collect tokens for several buckets.
+     *
+     * Items are split into chunks that are collected in parallel, each message being converted
+     * and scanned once for all buckets. Tokens are buffered per chunk and added to the buckets
+     * in scan order, so each bucket ends up exactly as a sequential run would leave it.
+     *
+     * Every finished batch is recorded in each bucket's checkpoint, so with onlyUnparsed a later
+     * run skips what was already parsed: new items since the last run, or the rest of a cancelled run.
+     *
+     * @param selectedBuckets The buckets to collect tokens for
+     * @param maxItems Maximum number of history items to process (0 or negative = unlimited)
+     * @param newestFirst If true, process newest items first; if false, process oldest first
+     * @param onlyUnparsed If true, skip items already parsed into a bucket; if false, parse the whole history again
+     * @param progressCallback Callback to report progress (number of items processed so far)
+     * @param cancelCheck Function to check if operation should be cancelled
+     * @param pauseCheck Function to check if operation should be paused
+     * @return Number of tokens collected per bucket, in the order given
+     */
+    public Map<Bucket, Integer> parseProxyHistory(List<Bucket> selectedBuckets, int maxItems, boolean newestFirst,
+                                                  boolean onlyUnparsed,
+                                                  java.util.function.Consumer<Integer> progressCallback,
+                                                  java.util.function.BooleanSupplier cancelCheck,
+                                                  java.util.function.BooleanSupplier pauseCheck) {
+        Map<Bucket, Integer> initialTokenCounts = new LinkedHashMap<>();
+        for (Bucket bucket : selectedBuckets) {
+            initialTokenCounts.put(bucket, bucket.getTokenCount());
+        }
+
+        // Snapshot the buckets' collection settings once for the whole run, with a prefilter over just their patterns
+        LiteralPrefilter.Builder literals = new LiteralPrefilter.Builder();
+        RulePlan.CollectionPlan[] collectionPlans = new RulePlan.CollectionPlan[selectedBuckets.size()];
+        for (int i = 0; i < collectionPlans.length; i++) {
+            collectionPlans[i] = RulePlan.CollectionPlan.build(selectedBuckets.get(i), logging, literals);
+        }
+        LiteralPrefilter literalPrefilter = literals.isEmpty() ? null : literals.build();
+
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(parallelism);
 
         try {
             // Get all proxy history items
-            java.util.List<burp.api.montoya.proxy.ProxyHttpRequestResponse> historyItems = api.proxy().history();
-
-            // Determine items to process
-            int itemsToProcess = (maxItems > 0) ? Math.min(maxItems, historyItems.size()) : historyItems.size();
+            List<burp.api.montoya.proxy.ProxyHttpRequestResponse> historyItems = api.proxy().history();
+            int historySize = historyItems.size();
 
-            // Create list in the desired order
-            java.util.List<burp.api.montoya.proxy.ProxyHttpRequestResponse> itemsToScan = new java.util.ArrayList<>();
-            if (newestFirst) {
-                // Take from end of list (newest)
-                for (int i = historyItems.size() - 1; i >= Math.max(0, historyItems.size() - itemsToProcess); i--) {
-                    itemsToScan.add(historyItems.get(i));
-                }
-            } else {
-                // Take from beginning of list (oldest)
-                for (int i = 0; i < itemsToProcess; i++) {
-                    itemsToScan.add(historyItems.get(i));
+            // What each bucket had already parsed when the run started
+            HistoryCheckpoint[] checkpoints = new HistoryCheckpoint[collectionPlans.length];
+            HistoryCheckpoint.Ranges[] parsed = new HistoryCheckpoint.Ranges[collectionPlans.length];
+            for (int i = 0; i < checkpoints.length; i++) {
+                checkpoints[i] = historyCheckpoint(collectionPlans[i].bucket);
+                if (!onlyUnparsed) {
+                    checkpoints[i].clear();
                 }
+                parsed[i] = validateCheckpoint(collectionPlans[i].bucket, historyItems);
             }
 
-            // Process each item
-            for (int i = 0; i < itemsToScan.size(); i++) {
+            // Walk the history in place, newest first from the end of the list, skipping parsed stretches
+            int itemLimit = maxItems > 0 ? maxItems : Integer.MAX_VALUE;
+            int next = HistoryCheckpoint.nextUnparsed(parsed, newestFirst ? historySize - 1 : 0, newestFirst, historySize);
+
+            // Work through the items a batch at a time so pause and cancel stay responsive
+            int processed = 0;
+            while (next >= 0 && processed < itemLimit) {
                 // Check for pause
                 while (pauseCheck != null && pauseCheck.getAsBoolean()) {
                     // Sleep briefly while paused to avoid busy-waiting
@@ -771,8 +773,7 @@ public class BucketManager {
                     }
                     // Check for cancellation during pause
                     if (cancelCheck != null && cancelCheck.getAsBoolean()) {
-                        logging.logToOutput("Proxy history parsing cancelled by user");
-                        return bucket.getTokenCount() - initialTokenCount;
+                        break;
                     }
                 }
 
@@ -782,35 +783,129 @@ public class BucketManager {
                     break;
                 }
 
+                int batchSize = Math.min(itemLimit - processed, HISTORY_CHUNK_SIZE * parallelism);
+                List<int[]> batch = new ArrayList<>();
+                List<java.util.concurrent.Future<List<List<String>>>> chunks = new ArrayList<>();
+                int taken = 0;
+                while (next >= 0 && taken < batchSize) {
+                    int[] indices = new int[Math.min(HISTORY_CHUNK_SIZE, batchSize - taken)];
+                    int count = 0;
+                    while (next >= 0 && count < indices.length) {
+                        indices[count++] = next;
+                        next = HistoryCheckpoint.nextUnparsed(parsed, newestFirst ? next - 1 : next + 1, newestFirst, historySize);
+                    }
+                    int[] chunkIndices = count == indices.length ? indices : Arrays.copyOf(indices, count);
+                    taken += count;
+                    batch.add(chunkIndices);
+                    chunks.add(pool.submit(() -> collectHistoryChunk(historyItems, chunkIndices,
+                            collectionPlans, parsed, literalPrefilter)));
+                }
+
+                // Add each chunk's tokens in scan order, whichever chunk finished first
+                for (java.util.concurrent.Future<List<List<String>>> chunk : chunks) {
+                    List<List<String>> collected = chunk.get();
+                    for (int i = 0; i < collectionPlans.length; i++) {
+                        for (String token : collected.get(i)) {
+                            collectionPlans[i].bucket.addToken(token);
+                        }
+                    }
+                }
+
+                // The batch is done for every bucket, so a later run can skip it
+                for (int[] chunkIndices : batch) {
+                    markParsed(checkpoints, chunkIndices, historyItems);
+                }
+
+                processed += taken;
+
                 // Report progress
                 if (progressCallback != null) {
-                    progressCallback.accept(i + 1);
+                    progressCallback.accept(processed);
                 }
+            }
+        } catch (Exception e) {
+            logging.logToError("Error parsing proxy history: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<Bucket, Integer> tokensCollected = new LinkedHashMap<>();
+        for (Map.Entry<Bucket, Integer> entry : initialTokenCounts.entrySet()) {
+            tokensCollected.put(entry.getKey(), entry.getKey().getTokenCount() - entry.getValue());
+        }
+        return tokensCollected;
+    }
+
+    private HistoryCheckpoint historyCheckpoint(Bucket bucket) {
+        return historyCheckpoints.computeIfAbsent(bucket, b -> new HistoryCheckpoint());
+    }
+
+    // Ranges the bucket has already parsed, dropped if its rules were edited or its tokens cleared since
+    private HistoryCheckpoint.Ranges validateCheckpoint(Bucket bucket, List<burp.api.montoya.proxy.ProxyHttpRequestResponse> historyItems) {
+        return historyCheckpoint(bucket).validate(historyItems, bucket.getConfigChangeCount(), bucket.getTokenClearCount());
+    }
+
+    /**
+     * Record a chunk's indices, which run in one direction, as parsed ranges in every checkpoint.
+     */
+    private static void markParsed(HistoryCheckpoint[] checkpoints, int[] indices,
+                                   List<burp.api.montoya.proxy.ProxyHttpRequestResponse> historyItems) {
+        int runStart = 0;
+        for (int i = 1; i <= indices.length; i++) {
+            if (i < indices.length && Math.abs(indices[i] - indices[i - 1]) == 1) {
+                continue;
+            }
+            // indices[runStart..i-1] are consecutive history items
+            int low = Math.min(indices[runStart], indices[i - 1]);
+            int high = Math.max(indices[runStart], indices[i - 1]);
+            for (HistoryCheckpoint checkpoint : checkpoints) {
+                checkpoint.markParsed(low, high + 1, historyItems);
+            }
+            runStart = i;
+        }
+    }
 
-                burp.api.montoya.proxy.ProxyHttpRequestResponse item = itemsToScan.get(i);
+    /**
+     * Collect tokens from the given history items for every bucket that has not parsed them yet, without adding them.
+     * Each message gets one view and one URL, shared by all buckets.
+     *
+     * @return The tokens found for each bucket, in scan order, indexed like collectionPlans
+     */
+    private List<List<String>> collectHistoryChunk(List<burp.api.montoya.proxy.ProxyHttpRequestResponse> historyItems,
+                                                   int[] indices, RulePlan.CollectionPlan[] collectionPlans,
+                                                   HistoryCheckpoint.Ranges[] parsed, LiteralPrefilter literalPrefilter) {
+        List<List<String>> collected = new ArrayList<>(collectionPlans.length);
+        for (int i = 0; i < collectionPlans.length; i++) {
+            collected.add(new ArrayList<>());
+        }
+
+        for (int index : indices) {
+            burp.api.montoya.proxy.ProxyHttpRequestResponse item = historyItems.get(index);
+            try {
                 HttpRequest request = item.finalRequest();
                 HttpResponse response = item.originalResponse();
-                String url = request.url();
+                // Parsed and scope-checked once for both the request and the response
+                MessageUrl url = messageUrl(request.url());
+                MessageView requestView = new MessageView(request, true);
+                MessageView responseView = response != null ? new MessageView(response, false) : null;
 
-                // Process request if bucket collects from requests
                 // Pass true for bypassRestrictions to ignore bucket enabled and tool enabled checks
-                if (bucket.getCollectionRule().isCollectFromRequests()) {
-                    collectTokensForBucket(bucket, request.toString(), url, burp.api.montoya.core.ToolType.PROXY, true, true);
-                }
-
-                // Process response if bucket collects from responses and response exists
-                // Pass true for bypassRestrictions to ignore bucket enabled and tool enabled checks
-                if (response != null && bucket.getCollectionRule().isCollectFromResponses()) {
-                    collectTokensForBucket(bucket, response.toString(), url, burp.api.montoya.core.ToolType.PROXY, false, true);
+                for (int i = 0; i < collectionPlans.length; i++) {
+                    if (parsed[i].contains(index)) {
+                        continue;
+                    }
+                    collectTokensForBucket(collectionPlans[i], requestView, url, burp.api.montoya.core.ToolType.PROXY, true,
+                            literalPrefilter, collected.get(i));
+                    if (responseView != null) {
+                        collectTokensForBucket(collectionPlans[i], responseView, url, burp.api.montoya.core.ToolType.PROXY, true,
+                                literalPrefilter, collected.get(i));
+                    }
                 }
+            } catch (Exception e) {
+                logging.logToError("Error parsing proxy history item: " + e.getMessage());
             }
-
-            return bucket.getTokenCount() - initialTokenCount;
-
-        } catch (Exception e) {
-            logging.logToError("Error parsing proxy history: " + e.getMessage());
-            e.printStackTrace();
-            return bucket.getTokenCount() - initialTokenCount;
         }
+        return collected;
     }
 }
@@ -14,15 +14,15 @@ public class CollectorHttpHandler implements HttpHandler {
     @Override
     public RequestToBeSentAction handleHttpRequestToBeSent(HttpRequestToBeSent requestToBeSent) {
         // Collect tokens from requests
-        String url = requestToBeSent.url();
-        String requestContent = requestToBeSent.toString();
-        bucketManager.collectTokens(requestContent, url, requestToBeSent.toolSource().toolType(), true);
+        // The URL is parsed and scope-checked once for both collection and replacement
+        MessageUrl url = bucketManager.messageUrl(requestToBeSent.url());
+        bucketManager.collectTokensFromMessage(requestToBeSent, url, requestToBeSent.toolSource().toolType(), true);
 
         // Apply replacements to requests using Montoya API
-        HttpRequest modifiedRequest = bucketManager.applyReplacementsToRequest(requestToBeSent, requestToBeSent.toolSource().toolType());
+        ReplacementResult<HttpRequest> result = bucketManager.applyReplacementsToRequest(requestToBeSent, requestToBeSent.toolSource().toolType(), url);
 
-        if (!modifiedRequest.toString().equals(requestToBeSent.toString())) {
-            return RequestToBeSentAction.continueWith(modifiedRequest);
+        if (result.isModified()) {
+            return RequestToBeSentAction.continueWith(result.getMessage());
         }
 
         return RequestToBeSentAction.continueWith(requestToBeSent);
@@ -32,14 +32,13 @@ public class CollectorHttpHandler implements HttpHandler {
     public ResponseReceivedAction handleHttpResponseReceived(HttpResponseReceived responseReceived) {
         // Collect tokens from responses
         String url = responseReceived.initiatingRequest().url();
-        String responseContent = responseReceived.toString();
-        bucketManager.collectTokens(responseContent, url, responseReceived.toolSource().toolType(), false);
+        bucketManager.collectTokensFromMessage(responseReceived, url, responseReceived.toolSource().toolType(), false);
 
         // Apply replacements to responses using Montoya API
-        HttpResponse modifiedResponse = bucketManager.applyReplacementsToResponse(responseReceived, responseReceived.toolSource().toolType());
+        ReplacementResult<HttpResponse> result = bucketManager.applyReplacementsToResponse(responseReceived, responseReceived.toolSource().toolType());
 
-        if (!modifiedResponse.toString().equals(responseReceived.toString())) {
-            return ResponseReceivedAction.continueWith(modifiedResponse);
+        if (result.isModified()) {
+            return ResponseReceivedAction.continueWith(result.getMessage());
         }
 
         return ResponseReceivedAction.continueWith(responseReceived);
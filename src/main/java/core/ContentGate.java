@@ -0,0 +1,79 @@
+package core;
+
+import model.ContentFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compiled form of a ContentFilter, checked against a MessageView before any regex runs.
+ * Only the facts a gate needs are computed: a size-only gate never asks for MIME types.
+ */
+final class ContentGate {
+    final long maxBodyBytes; // 0 = no limit
+    final boolean headersOnly;
+    private final String[] allowed;
+    private final String[] denied;
+
+    private ContentGate(ContentFilter filter) {
+        this.maxBodyBytes = Math.max(0, filter.getMaxBodySizeKb()) * 1024L;
+        this.headersOnly = filter.isHeadersOnly();
+        this.allowed = normalize(filter.getAllowedMimeTypes());
+        this.denied = normalize(filter.getDeniedMimeTypes());
+    }
+
+    /**
+     * Compile a filter, or return null if it is missing or would never skip anything.
+     */
+    static ContentGate compile(ContentFilter filter) {
+        return filter == null || filter.isEmpty() ? null : new ContentGate(filter);
+    }
+
+    /**
+     * True if the message passes the size and MIME checks. headersOnly is left to the caller.
+     */
+    boolean accepts(MessageView view) {
+        if (maxBodyBytes > 0 && view.bodyLength() > maxBodyBytes) {
+            return false;
+        }
+        if (denied.length > 0 && matchesAny(denied, view)) {
+            return false;
+        }
+        return allowed.length == 0 || matchesAny(allowed, view);
+    }
+
+    private static boolean matchesAny(String[] entries, MessageView view) {
+        for (String entry : entries) {
+            if (entry.indexOf('/') >= 0) {
+                // Media type from the Content-Type header, "type/*" matches every subtype
+                String mediaType = view.mediaType();
+                if (entry.endsWith("/*")
+                        ? mediaType.startsWith(entry.substring(0, entry.length() - 1))
+                        : mediaType.equals(entry)) {
+                    return true;
+                }
+            } else {
+                // Burp MIME type name, a prefix matches the whole family (image -> image_png)
+                for (String type : view.burpMimeTypes()) {
+                    if (type.equals(entry) || type.startsWith(entry + "_")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String[] normalize(List<String> entries) {
+        List<String> normalized = new ArrayList<>();
+        if (entries != null) {
+            for (String entry : entries) {
+                if (entry != null && !entry.trim().isEmpty()) {
+                    normalized.add(entry.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return normalized.toArray(new String[0]);
+    }
+}
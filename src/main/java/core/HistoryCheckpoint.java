@@ -0,0 +1,140 @@
+package core;
+
+import burp.api.montoya.proxy.ProxyHttpRequestResponse;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Which Proxy history items have already been parsed into one bucket, kept as index ranges.
+ * Later runs only scan the gaps, so they pick up new items and a cancelled run continues
+ * where it stopped. The time of the last parsed item is remembered, so a history that was
+ * cleared or had items removed (which shifts every index) is noticed and parsed from scratch.
+ * So is a bucket whose configuration was edited or whose tokens were cleared since the ranges
+ * were recorded, since its earlier results no longer stand.
+ */
+final class HistoryCheckpoint {
+    // Parsed ranges, start -> end (exclusive), never overlapping or touching
+    private final TreeMap<Integer, Integer> ranges = new TreeMap<>();
+    private ZonedDateTime lastItemTime;
+    // The bucket's config change and token clear counts the ranges were recorded under
+    private long configChanges;
+    private long tokenClears;
+
+    /**
+     * Forget the ranges if the bucket changed or the history no longer lines up with them, then snapshot what is left.
+     *
+     * @param configChanges The bucket's current configuration change count
+     * @param tokenClears The bucket's current token clear count
+     */
+    synchronized Ranges validate(List<ProxyHttpRequestResponse> history, long configChanges, long tokenClears) {
+        if (configChanges != this.configChanges || tokenClears != this.tokenClears) {
+            clear();
+            this.configChanges = configChanges;
+            this.tokenClears = tokenClears;
+        }
+        if (!ranges.isEmpty()) {
+            int last = ranges.lastEntry().getValue() - 1;
+            if (last >= history.size() || !Objects.equals(history.get(last).time(), lastItemTime)) {
+                clear();
+            }
+        }
+
+        int[] starts = new int[ranges.size()];
+        int[] ends = new int[ranges.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> range : ranges.entrySet()) {
+            starts[i] = range.getKey();
+            ends[i++] = range.getValue();
+        }
+        return new Ranges(starts, ends);
+    }
+
+    /**
+     * Record items [start, end) as parsed, merging with neighbouring ranges.
+     */
+    synchronized void markParsed(int start, int end, List<ProxyHttpRequestResponse> history) {
+        Map.Entry<Integer, Integer> before = ranges.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+        }
+        for (Map.Entry<Integer, Integer> next = ranges.ceilingEntry(start);
+             next != null && next.getKey() <= end;
+             next = ranges.ceilingEntry(start)) {
+            end = Math.max(end, next.getValue());
+            ranges.remove(next.getKey());
+        }
+        ranges.put(start, end);
+
+        if (ranges.lastKey() == start) {
+            lastItemTime = history.get(end - 1).time();
+        }
+    }
+
+    synchronized void clear() {
+        ranges.clear();
+        lastItemTime = null;
+    }
+
+    /**
+     * The next index, walking from index in the given direction, that at least one bucket has not parsed yet.
+     *
+     * @return The index, or -1 if there is none before the end of the history
+     */
+    static int nextUnparsed(Ranges[] parsed, int index, boolean descending, int size) {
+        while (index >= 0 && index < size) {
+            // Skip straight past the stretch every bucket has already parsed
+            int skipTo = descending ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            for (Ranges ranges : parsed) {
+                int range = ranges.find(index);
+                if (range < 0) {
+                    return index;
+                }
+                skipTo = descending
+                        ? Math.max(skipTo, ranges.starts[range] - 1)
+                        : Math.min(skipTo, ranges.ends[range]);
+            }
+            if (parsed.length == 0) {
+                return -1;
+            }
+            index = skipTo;
+        }
+        return -1;
+    }
+
+    /**
+     * Immutable snapshot of a checkpoint, read by parser workers without locking.
+     */
+    static final class Ranges {
+        private final int[] starts;
+        private final int[] ends;
+
+        private Ranges(int[] starts, int[] ends) {
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        boolean contains(int index) {
+            return find(index) >= 0;
+        }
+
+        /**
+         * Position of the range containing index, or -1.
+         */
+        private int find(int index) {
+            int low = 0;
+            int high = starts.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] > index) {
+                    high = mid - 1;
+                } else if (ends[mid] <= index) {
+                    low = mid + 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+}
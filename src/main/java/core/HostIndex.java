@@ -0,0 +1,151 @@
+package core;
+
+import model.UrlMatcher;
+
+import java.util.*;
+
+/**
+ * Dispatch table from a message's host to the buckets whose URL rules could match it.
+ *
+ * Host patterns that pin the whole host ("^api\.example\.com$") are indexed by exact host,
+ * patterns that pin its end ("\.example\.com$") by suffix. Buckets with an unanchored or more
+ * complex host regex, a matcher without a host, or in-scope matching are always visited.
+ * The index only narrows the candidates; each candidate is still checked in full, so
+ * results and bucket order are unchanged.
+ */
+final class HostIndex {
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    // Buckets visited whatever the host
+    private final BitSet always;
+    private final Map<String, BitSet> exactHosts;
+    private final Map<String, BitSet> hostSuffixes;
+    private final int[] suffixLengths; // Ascending
+
+    private HostIndex(BitSet always, Map<String, BitSet> exactHosts, Map<String, BitSet> hostSuffixes) {
+        this.always = always;
+        this.exactHosts = exactHosts;
+        this.hostSuffixes = hostSuffixes;
+        Set<Integer> lengths = new TreeSet<>();
+        for (String suffix : hostSuffixes.keySet()) {
+            lengths.add(suffix.length());
+        }
+        this.suffixLengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Index buckets by position.
+     *
+     * @param matchInScopeUrls Per bucket, whether in-scope URLs match regardless of host
+     * @param urlMatchers Per bucket, its enabled URL matchers
+     */
+    static HostIndex build(boolean[] matchInScopeUrls, UrlMatcher.Compiled[][] urlMatchers) {
+        BitSet always = new BitSet(urlMatchers.length);
+        Map<String, BitSet> exactHosts = new HashMap<>();
+        Map<String, BitSet> hostSuffixes = new HashMap<>();
+
+        for (int i = 0; i < urlMatchers.length; i++) {
+            if (matchInScopeUrls[i]) {
+                always.set(i);
+                continue;
+            }
+
+            // Keys are only used if every matcher of the bucket is indexable
+            Map<String, Boolean> keys = new LinkedHashMap<>(); // Host or suffix -> is exact
+            for (UrlMatcher.Compiled matcher : urlMatchers[i]) {
+                if (!addKey(matcher.getHost(), keys)) {
+                    keys = null;
+                    break;
+                }
+            }
+
+            if (keys == null) {
+                always.set(i);
+            } else {
+                // A bucket without matchers matches no URL, so it is never a candidate
+                for (Map.Entry<String, Boolean> key : keys.entrySet()) {
+                    (key.getValue() ? exactHosts : hostSuffixes).computeIfAbsent(key.getKey(), k -> new BitSet()).set(i);
+                }
+            }
+        }
+
+        return new HostIndex(always, exactHosts, hostSuffixes);
+    }
+
+    /**
+     * Positions of the buckets that could match the URL. The result must not be modified.
+     */
+    BitSet candidates(MessageUrl url) {
+        if (exactHosts.isEmpty() && hostSuffixes.isEmpty()) {
+            return always;
+        }
+
+        String host = url.parsed().getHost();
+        BitSet candidates = (BitSet) always.clone();
+        BitSet hits = exactHosts.get(host);
+        if (hits != null) {
+            candidates.or(hits);
+        }
+        for (int length : suffixLengths) {
+            if (length > host.length()) {
+                break;
+            }
+            hits = hostSuffixes.get(host.substring(host.length() - length));
+            if (hits != null) {
+                candidates.or(hits);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Add the exact host or suffix a host pattern requires.
+     *
+     * @return false if the pattern can match hosts that no key describes
+     */
+    private static boolean addKey(String hostPattern, Map<String, Boolean> keys) {
+        if (hostPattern == null || hostPattern.isEmpty()) {
+            return false; // Matches every host
+        }
+
+        // Only patterns anchored at the end pin down the host; "\$" is a literal dollar
+        if (!hostPattern.endsWith("$") || hostPattern.endsWith("\\$")) {
+            return false;
+        }
+        String body = hostPattern.substring(0, hostPattern.length() - 1);
+        boolean exact = false;
+        if (body.startsWith("^")) {
+            exact = true;
+            body = body.substring(1);
+        } else if (body.startsWith(".*")) {
+            body = body.substring(2);
+        }
+
+        String literal = unescape(body);
+        if (literal == null) {
+            return false;
+        }
+        // The same string may be required exactly by one matcher and as a suffix by another
+        keys.merge(literal, exact, (a, b) -> a && b);
+        return true;
+    }
+
+    // The literal a regex matches, or null if it contains anything but literal and escaped characters
+    private static String unescape(String regex) {
+        StringBuilder literal = new StringBuilder(regex.length());
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                    return null; // \d, \w, \Q... are classes or quoting, not literals
+                }
+                literal.append(regex.charAt(++i));
+            } else if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.toString();
+    }
+}
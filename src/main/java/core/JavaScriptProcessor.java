@@ -4,17 +4,66 @@ import burp.api.montoya.MontoyaApi;
 import burp.api.montoya.logging.Logging;
 import org.mozilla.javascript.Context;
 import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.Script;
 import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class JavaScriptProcessor {
+    // Upper bound on cached scripts; the UI previews compile a script per keystroke
+    private static final int MAX_CACHED_SCRIPTS = 256;
+    // Executions after which an interpreted script is recompiled to bytecode
+    private static final int HOT_SCRIPT_THRESHOLD = 100;
+    public static final int INTERPRETED = -1;
+    // Idle Contexts kept for reuse; more threads than this running scripts at once just create extras
+    private static final int MAX_POOLED_CONTEXTS = 32;
+
     private final Logging logging;
     private final ContextFactory contextFactory;
     private final MontoyaApi api;
+    private final Map<String, CachedScript> scriptCache;
+    private final BlockingQueue<Context> idleContexts;
+    private volatile ScriptableObject sharedScope;
+    private volatile int optimizationLevel;
 
     public JavaScriptProcessor(Logging logging, MontoyaApi api) {
         this.logging = logging;
         this.contextFactory = new ContextFactory();
         this.api = api;
+        this.scriptCache = new ConcurrentHashMap<>();
+        this.idleContexts = new ArrayBlockingQueue<>(MAX_POOLED_CONTEXTS);
+        this.optimizationLevel = INTERPRETED;
+    }
+
+    /**
+     * Set the Rhino optimization level used for hot scripts.
+     * -1 keeps every script interpreted; 0-9 compiles scripts to bytecode once they become hot.
+     */
+    public void setOptimizationLevel(int level) {
+        int clamped = Math.max(INTERPRETED, Math.min(9, level));
+        if (clamped != optimizationLevel) {
+            optimizationLevel = clamped;
+            scriptCache.clear();
+        }
+    }
+
+    public int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    /**
+     * Drop the pooled Contexts, compiled scripts and shared scope. Called when the extension is
+     * unloaded, so nothing keeps the extension's classes reachable from Burp's threads.
+     */
+    public void shutdown() {
+        idleContexts.clear();
+        scriptCache.clear();
+        sharedScope = null;
     }
 
     /**
@@ -53,41 +102,25 @@ public class JavaScriptProcessor {
 
     /**
      * Core script execution logic shared by both public methods.
+     * Scripts are compiled once and cached; each invocation runs in a lightweight scope
+     * holding only the token, whose prototype is the shared sealed scope.
      */
     private String executeScript(String token, String script) throws Exception {
-        Context cx = contextFactory.enterContext();
+        Context cx = enterContext();
         try {
-            // Set optimization level for better compatibility
-            cx.setOptimizationLevel(-1);
-
-            // Create a scope for the script execution
-            Scriptable scope = cx.initStandardObjects();
+            Scriptable sharedScope = getSharedScope(cx);
+            Script compiled = getCompiledScript(cx, script);
 
-            // Remove Java packages.
-            scope.delete("Packages");
-            scope.delete("java");
-            scope.delete("javax");
-            scope.delete("org");
-            scope.delete("com");
+            // Per-invocation scope: reads fall through to the shared scope, writes stay here
+            Scriptable scope = cx.newObject(sharedScope);
+            scope.setPrototype(sharedScope);
+            scope.setParentScope(null);
 
             // Make the token available to the script
             scope.put("token", scope, token);
 
-            // Make utilities available as a function
-            String utilitiesFunction = "function utilities() { return __utilities; }";
-            scope.put("__utilities", scope, api.utilities());
-            cx.evaluateString(scope, utilitiesFunction, "utilitiesFunction", 1, null);
-
-            // Make logging available as a function
-            String loggingFunction = "function logging() { return __logging; }";
-            scope.put("__logging", scope, api.logging());
-            cx.evaluateString(scope, loggingFunction, "loggingFunction", 1, null);
-
-            // Wrap the script in a function to allow return statements
-            String wrappedScript = "(function() { " + script + " })()";
-
             // Execute the script - expect it to return the modified token
-            Object result = cx.evaluateString(scope, wrappedScript, "JavaScriptProcessor", 1, null);
+            Object result = compiled.exec(cx, scope);
 
             if (result != null && result != org.mozilla.javascript.Undefined.instance) {
                 return Context.toString(result);
@@ -96,6 +129,103 @@ public class JavaScriptProcessor {
             return token;
         } finally {
             Context.exit();
+            // Only a Context that is no longer entered on any thread can be handed to another one
+            if (Context.getCurrentContext() == null) {
+                idleContexts.offer(cx);
+            }
+        }
+    }
+
+    /**
+     * Enter a pooled Context, or a new one if none is idle.
+     * Reusing Contexts avoids allocating and configuring one for every token, and unlike a
+     * per-thread cache the pool does not pin a Context to each of Burp's long-lived threads.
+     */
+    private Context enterContext() {
+        Context cx = idleContexts.poll();
+        return cx != null ? contextFactory.enterContext(cx) : contextFactory.enterContext();
+    }
+
+    /**
+     * Get the compiled form of a script, compiling and caching it on first use.
+     * Scripts start out interpreted; once a script has run HOT_SCRIPT_THRESHOLD times and an
+     * optimization level is configured, it is recompiled to bytecode. If that fails the
+     * interpreted version is kept. Scripts that fail to compile are not cached so the error
+     * is reported every time.
+     */
+    private Script getCompiledScript(Context cx, String script) {
+        CachedScript cached = scriptCache.get(script);
+        if (cached == null) {
+            cached = new CachedScript(compile(cx, script, INTERPRETED), false);
+            if (scriptCache.size() >= MAX_CACHED_SCRIPTS) {
+                scriptCache.clear();
+            }
+            scriptCache.put(script, cached);
+            return cached.script;
+        }
+
+        int level = optimizationLevel;
+        if (!cached.optimized && level > INTERPRETED && cached.executions.incrementAndGet() == HOT_SCRIPT_THRESHOLD) {
+            try {
+                CachedScript optimized = new CachedScript(compile(cx, script, level), true);
+                scriptCache.replace(script, cached, optimized);
+                return optimized.script;
+            } catch (Exception e) {
+                logging.logToError("JavaScript bytecode compilation failed, keeping interpreted mode: " + e.getMessage());
+            }
+        }
+        return cached.script;
+    }
+
+    private Script compile(Context cx, String script, int level) {
+        cx.setOptimizationLevel(level);
+        // Wrap the script in a function to allow return statements
+        String wrappedScript = "(function() { " + script + " })()";
+        return cx.compileString(wrappedScript, "JavaScriptProcessor", 1, null);
+    }
+
+    /**
+     * Build the shared standard scope once: standard objects without Java access,
+     * plus the utilities()/logging() helpers, sealed against modification.
+     */
+    private Scriptable getSharedScope(Context cx) {
+        ScriptableObject scope = sharedScope;
+        if (scope == null) {
+            synchronized (this) {
+                scope = sharedScope;
+                if (scope == null) {
+                    // Safe standard objects never define the Java packages (Packages, java, javax, org, com).
+                    // Deleting them from a full scope doesn't survive sealing, which re-creates them.
+                    cx.setOptimizationLevel(INTERPRETED);
+                    scope = cx.initSafeStandardObjects(null, true);
+
+                    // Make utilities available as a function
+                    String utilitiesFunction = "function utilities() { return __utilities; }";
+                    scope.put("__utilities", scope, api.utilities());
+                    cx.evaluateString(scope, utilitiesFunction, "utilitiesFunction", 1, null);
+
+                    // Make logging available as a function
+                    String loggingFunction = "function logging() { return __logging; }";
+                    scope.put("__logging", scope, api.logging());
+                    cx.evaluateString(scope, loggingFunction, "loggingFunction", 1, null);
+
+                    scope.sealObject();
+                    sharedScope = scope;
+                }
+            }
+        }
+        return scope;
+    }
+
+    private static final class CachedScript {
+        final Script script;
+        final boolean optimized;
+        final AtomicInteger executions;
+
+        CachedScript(Script script, boolean optimized) {
+            this.script = script;
+            this.optimized = optimized;
+            this.executions = new AtomicInteger();
         }
     }
 }
@@ -0,0 +1,427 @@
+package core;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Aho-Corasick automaton over the literal substrings that collection regexes require.
+ * One pass over a message reports which literals occur in it, so patterns whose required
+ * literal is absent can be skipped without running the full regex.
+ */
+public final class LiteralPrefilter {
+    // Literals shorter than this filter too little to be worth tracking
+    private static final int MIN_LITERAL_LENGTH = 3;
+    private static final int ASCII_SIZE = 128;
+
+    private final int[][] asciiTransitions;
+    private final List<Map<Character, Integer>> otherTransitions;
+    private final int[][] outputs;
+    private final int[] failure;
+    private final int literalCount;
+
+    private LiteralPrefilter(int[][] asciiTransitions, List<Map<Character, Integer>> otherTransitions,
+                             int[][] outputs, int[] failure, int literalCount) {
+        this.asciiTransitions = asciiTransitions;
+        this.otherTransitions = otherTransitions;
+        this.outputs = outputs;
+        this.failure = failure;
+        this.literalCount = literalCount;
+    }
+
+    public int getLiteralCount() {
+        return literalCount;
+    }
+
+    /**
+     * Scan the content once and return the ids of all literals found in it.
+     */
+    public BitSet scan(CharSequence content) {
+        BitSet found = new BitSet(literalCount);
+        int remaining = literalCount;
+        int state = 0;
+
+        for (int i = 0, length = content.length(); i < length; i++) {
+            state = next(state, content.charAt(i));
+            for (int id : outputs[state]) {
+                if (!found.get(id)) {
+                    found.set(id);
+                    if (--remaining == 0) {
+                        return found; // Every literal seen, nothing left to learn
+                    }
+                }
+            }
+        }
+
+        return found;
+    }
+
+    private int next(int state, char c) {
+        if (c < ASCII_SIZE) {
+            return asciiTransitions[state][c];
+        }
+        while (true) {
+            Map<Character, Integer> other = otherTransitions.get(state);
+            Integer target = other != null ? other.get(c) : null;
+            if (target != null) {
+                return target;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = failure[state];
+        }
+    }
+
+    /**
+     * Extract a literal substring that every match of the regex must contain.
+     * The analysis is deliberately conservative: anything it does not fully understand
+     * (top-level alternation, inline flags, quoting) yields null, meaning "always run".
+     *
+     * @param regex The regex source
+     * @param flags The Pattern flags the regex is compiled with
+     * @return The longest required literal, or null if none could be determined
+     */
+    public static String requiredLiteral(String regex, int flags) {
+        if (regex == null || regex.isEmpty()) {
+            return null;
+        }
+        if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.LITERAL | Pattern.CANON_EQ)) != 0) {
+            return null;
+        }
+        if (regex.contains("\\Q")) {
+            return null;
+        }
+
+        String best = null;
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        int length = regex.length();
+
+        while (i < length) {
+            char c = regex.charAt(i);
+            int atomEnd;
+            boolean literal = false;
+            char literalChar = 0;
+
+            if (c == '\\') {
+                if (i + 1 >= length) {
+                    return null;
+                }
+                char escaped = regex.charAt(i + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    atomEnd = skipEscape(regex, i);
+                } else {
+                    literal = true;
+                    literalChar = escaped;
+                    atomEnd = i + 2;
+                }
+            } else if (c == '[') {
+                atomEnd = skipClass(regex, i);
+            } else if (c == '(') {
+                if (i + 2 < length && regex.charAt(i + 1) == '?'
+                        && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                    return null; // Inline flags can change how the rest of the pattern matches
+                }
+                atomEnd = skipGroup(regex, i);
+            } else if (c == '|') {
+                return null; // Top-level alternation: no single literal is required
+            } else if (c == ')' || c == '*' || c == '+' || c == '?' || c == '{') {
+                return null; // Malformed at this position; let the regex engine decide
+            } else if (c == '.' || c == '^' || c == '$') {
+                atomEnd = i + 1;
+            } else {
+                literal = true;
+                literalChar = c;
+                atomEnd = i + 1;
+            }
+
+            if (atomEnd < 0) {
+                return null;
+            }
+
+            // A following quantifier makes the atom optional or repeated, ending the run
+            int quantifierEnd = skipQuantifier(regex, atomEnd);
+            if (quantifierEnd < 0) {
+                return null;
+            }
+            boolean quantified = quantifierEnd != atomEnd;
+
+            if (literal && !quantified) {
+                run.append(literalChar);
+            } else {
+                best = longer(best, run);
+                run.setLength(0);
+            }
+
+            i = quantifierEnd;
+        }
+
+        best = longer(best, run);
+        return best != null && best.length() >= MIN_LITERAL_LENGTH ? best : null;
+    }
+
+    private static String longer(String best, StringBuilder run) {
+        if (run.length() > 0 && (best == null || run.length() > best.length())) {
+            return run.toString();
+        }
+        return best;
+    }
+
+    /**
+     * End of the escape sequence starting at start (the backslash), consuming every character
+     * that belongs to it, or -1 for an escape that is not understood.
+     */
+    private static int skipEscape(String regex, int start) {
+        if (start + 1 >= regex.length()) {
+            return -1;
+        }
+        char escaped = regex.charAt(start + 1);
+        int i = start + 2;
+        int length = regex.length();
+
+        if (!Character.isLetterOrDigit(escaped)) {
+            return i; // Escaped punctuation stands for itself
+        }
+        if (escaped >= '1' && escaped <= '9') {
+            // Back-reference: the engine may take several digits, none of them are literal text
+            while (i < length && Character.isDigit(regex.charAt(i))) {
+                i++;
+            }
+            return i;
+        }
+
+        switch (escaped) {
+            case 'x':
+                if (i < length && regex.charAt(i) == '{') {
+                    return closing(regex, i, '}');
+                }
+                return hexDigits(regex, i, 2);
+            case 'u':
+                return hexDigits(regex, i, 4);
+            case '0': {
+                // Octal: \0n, \0nn or \0mnn with m <= 3
+                int digits = 0;
+                int max = i < length && regex.charAt(i) >= '0' && regex.charAt(i) <= '3' ? 3 : 2;
+                while (digits < max && i < length && regex.charAt(i) >= '0' && regex.charAt(i) <= '7') {
+                    i++;
+                    digits++;
+                }
+                return digits > 0 ? i : -1;
+            }
+            case 'c':
+                return i < length ? i + 1 : -1;
+            case 'p':
+            case 'P':
+                if (i < length && regex.charAt(i) == '{') {
+                    return closing(regex, i, '}');
+                }
+                return i < length ? i + 1 : -1; // One-letter class such as \pL
+            case 'N':
+                return i < length && regex.charAt(i) == '{' ? closing(regex, i, '}') : -1;
+            case 'k':
+                return i < length && regex.charAt(i) == '<' ? closing(regex, i, '>') : -1;
+            case 't': case 'n': case 'r': case 'f': case 'a': case 'e':
+            case 'd': case 'D': case 's': case 'S': case 'w': case 'W':
+            case 'h': case 'H': case 'v': case 'V': case 'R': case 'X':
+            case 'b': case 'B': case 'A': case 'G': case 'Z': case 'z':
+                return i;
+            default:
+                return -1;
+        }
+    }
+
+    private static int closing(String regex, int open, char close) {
+        int end = regex.indexOf(close, open);
+        return end < 0 ? -1 : end + 1;
+    }
+
+    private static int hexDigits(String regex, int start, int count) {
+        if (start + count > regex.length()) {
+            return -1;
+        }
+        for (int i = start; i < start + count; i++) {
+            if (Character.digit(regex.charAt(i), 16) < 0) {
+                return -1;
+            }
+        }
+        return start + count;
+    }
+
+    private static int skipClass(String regex, int start) {
+        // A leading ']' is ambiguous between engines, so don't try to analyse it
+        int first = start + 1;
+        if (first < regex.length() && regex.charAt(first) == '^') {
+            first++;
+        }
+        if (first < regex.length() && regex.charAt(first) == ']') {
+            return -1;
+        }
+
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                int end = skipEscape(regex, i);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end - 1;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                int end = skipEscape(regex, i);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end - 1;
+            } else if (c == '[') {
+                int end = skipClass(regex, i);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end - 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int skipQuantifier(String regex, int start) {
+        if (start >= regex.length()) {
+            return start;
+        }
+        int i = start;
+        char c = regex.charAt(i);
+        if (c == '*' || c == '+' || c == '?') {
+            i++;
+        } else if (c == '{') {
+            int end = regex.indexOf('}', i);
+            if (end < 0) {
+                return -1;
+            }
+            i = end + 1;
+        } else {
+            return start;
+        }
+        // Lazy or possessive modifier
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Collects literals and builds the automaton. Identical literals share an id.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> ids = new LinkedHashMap<>();
+
+        /**
+         * Register a literal and return its id.
+         */
+        public int add(String literal) {
+            return ids.computeIfAbsent(literal, key -> ids.size());
+        }
+
+        public boolean isEmpty() {
+            return ids.isEmpty();
+        }
+
+        public LiteralPrefilter build() {
+            // Trie construction
+            List<Map<Character, Integer>> children = new ArrayList<>();
+            List<List<Integer>> nodeOutputs = new ArrayList<>();
+            children.add(new HashMap<>());
+            nodeOutputs.add(new ArrayList<>());
+
+            for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+                int node = 0;
+                for (char c : entry.getKey().toCharArray()) {
+                    Integer child = children.get(node).get(c);
+                    if (child == null) {
+                        child = children.size();
+                        children.add(new HashMap<>());
+                        nodeOutputs.add(new ArrayList<>());
+                        children.get(node).put(c, child);
+                    }
+                    node = child;
+                }
+                nodeOutputs.get(node).add(entry.getValue());
+            }
+
+            // Breadth-first failure links, merging outputs along them
+            int nodeCount = children.size();
+            int[] failure = new int[nodeCount];
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int child : children.get(0).values()) {
+                failure[child] = 0;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                    char c = edge.getKey();
+                    int child = edge.getValue();
+                    int fallback = failure[node];
+                    while (fallback != 0 && !children.get(fallback).containsKey(c)) {
+                        fallback = failure[fallback];
+                    }
+                    Integer target = children.get(fallback).get(c);
+                    failure[child] = target != null && target != child ? target : 0;
+                    nodeOutputs.get(child).addAll(nodeOutputs.get(failure[child]));
+                    queue.add(child);
+                }
+            }
+
+            // Dense transition table for ASCII, goto maps with failure fallback for everything else
+            int[][] asciiTransitions = new int[nodeCount][ASCII_SIZE];
+            List<Map<Character, Integer>> otherTransitions = new ArrayList<>(Collections.nCopies(nodeCount, null));
+            int[][] outputs = new int[nodeCount][];
+            List<Integer> order = new ArrayList<>();
+            order.add(0);
+            for (int index = 0; index < order.size(); index++) {
+                int node = order.get(index);
+                for (char c = 0; c < ASCII_SIZE; c++) {
+                    Integer child = children.get(node).get(c);
+                    if (child != null) {
+                        asciiTransitions[node][c] = child;
+                    } else {
+                        asciiTransitions[node][c] = node == 0 ? 0 : asciiTransitions[failure[node]][c];
+                    }
+                }
+                Map<Character, Integer> other = null;
+                for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                    if (edge.getKey() >= ASCII_SIZE) {
+                        if (other == null) {
+                            other = new HashMap<>();
+                        }
+                        other.put(edge.getKey(), edge.getValue());
+                    }
+                }
+                otherTransitions.set(node, other);
+                outputs[node] = nodeOutputs.get(node).stream().distinct().mapToInt(Integer::intValue).toArray();
+                order.addAll(children.get(node).values());
+            }
+
+            return new LiteralPrefilter(asciiTransitions, otherTransitions, outputs, failure, ids.size());
+        }
+    }
+}
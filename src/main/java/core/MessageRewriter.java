@@ -0,0 +1,712 @@
+package core;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.http.message.params.HttpParameter;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+import burp.api.montoya.logging.Logging;
+import model.ReplacementRule;
+import util.ByteCharSequence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collects every replacement edit for one HTTP message (from all buckets and rules) and
+ * applies them in the order they were added, which is bucket order and then rule order,
+ * the same order rules used to be applied one by one. Each edit sees the result of the
+ * earlier ones, and a later edit to the same field wins.
+ *
+ * HTTP/1.x messages are rewritten in a single pass over the raw message, producing one new
+ * message with Content-Length fixed once at the end. Regexes are matched against the headers
+ * and the body separately, directly over the message bytes (one char per byte), and only the
+ * matched ranges are spliced, so binary and non-UTF-8 bodies survive untouched; injected
+ * values are written as UTF-8. Framing is only touched when the body changes. Chunked bodies
+ * are decoded before body edits and re-encoded afterwards, and keep Transfer-Encoding
+ * instead of gaining a Content-Length.
+ *
+ * HTTP/2 messages, and requests with body parameter edits on a body that is not url-encoded
+ * (JSON, XML, multipart), are edited one edit at a time through Montoya's header and
+ * parameter methods, which understand those formats. Regex edits on them use the raw
+ * rewrite, which never adds a Content-Length to an HTTP/2 message since its frames carry the length.
+ */
+final class MessageRewriter {
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    private final Logging logging;
+    private final List<Edit> edits = new ArrayList<>();
+
+    MessageRewriter(Logging logging) {
+        this.logging = logging;
+    }
+
+    void setHeader(ReplacementRule rule, String name, String value) {
+        edits.add(new Edit(rule, EditType.HEADER, name, value));
+    }
+
+    void setUrlParameter(ReplacementRule rule, String name, String value) {
+        edits.add(new Edit(rule, EditType.URL_PARAMETER, name, value));
+    }
+
+    void setBodyParameter(ReplacementRule rule, String name, String value) {
+        edits.add(new Edit(rule, EditType.BODY_PARAMETER, name, value));
+    }
+
+    void setCookie(ReplacementRule rule, String name, String value) {
+        edits.add(new Edit(rule, EditType.COOKIE, name, value));
+    }
+
+    /**
+     * @param headersOnly Match only the start line and headers, leaving the body untouched
+     */
+    void addRegex(ReplacementRule rule, Pattern regex, int group, String value, boolean replaceAll, boolean headersOnly) {
+        if (regex != null) {
+            edits.add(new RegexEdit(rule, regex, group, value, replaceAll, headersOnly));
+        }
+    }
+
+    boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    /**
+     * Rules whose edits changed the message in the last applyTo, in the order they were applied.
+     */
+    List<ReplacementRule> changedRules() {
+        List<ReplacementRule> rules = new ArrayList<>();
+        for (Edit edit : edits) {
+            if (edit.changed && !rules.contains(edit.rule)) {
+                rules.add(edit.rule);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Apply all collected edits to a request.
+     *
+     * @return A new request, or the original if nothing changed or the rewrite failed
+     */
+    HttpRequest applyTo(HttpRequest request) {
+        if (isEmpty()) {
+            return request;
+        }
+        try {
+            if (isHttp2(request.httpVersion())
+                    || (hasEdit(EditType.BODY_PARAMETER) && !isFormBody(request.headerValue("Content-Type")))) {
+                return applyNatively(request);
+            }
+
+            byte[] rewritten = rewrite(request.toByteArray().getBytes(), request.bodyOffset(), true, edits);
+            if (rewritten == null) {
+                return request;
+            }
+            // Preserve the original httpService so Burp knows where to send the request
+            return HttpRequest.httpRequest(request.httpService(), ByteArray.byteArray(rewritten));
+        } catch (Exception e) {
+            logging.logToError("Error applying replacements to request: " + e.getMessage());
+            return request;
+        }
+    }
+
+    /**
+     * Apply the collected header and regex edits to a response.
+     *
+     * @return A new response, or the original if nothing changed or the rewrite failed
+     */
+    HttpResponse applyTo(HttpResponse response) {
+        if (isEmpty()) {
+            return response;
+        }
+        try {
+            if (isHttp2(response.httpVersion())) {
+                return applyNatively(response);
+            }
+
+            byte[] rewritten = rewrite(response.toByteArray().getBytes(), response.bodyOffset(), false, edits);
+            if (rewritten == null) {
+                return response;
+            }
+            return HttpResponse.httpResponse(ByteArray.byteArray(rewritten));
+        } catch (Exception e) {
+            logging.logToError("Error applying replacements to response: " + e.getMessage());
+            return response;
+        }
+    }
+
+    /**
+     * Apply the edits one at a time through Montoya, for messages the raw rewrite should not frame itself.
+     */
+    private HttpRequest applyNatively(HttpRequest request) {
+        HttpRequest current = request;
+        for (Edit edit : edits) {
+            HttpRequest before = current;
+            switch (edit.type) {
+                case HEADER:
+                    current = current.hasHeader(edit.name)
+                            ? current.withUpdatedHeader(edit.name, edit.value)
+                            : current.withAddedHeader(edit.name, edit.value);
+                    break;
+                case URL_PARAMETER:
+                    current = current.withParameter(HttpParameter.urlParameter(edit.name, edit.value));
+                    break;
+                case BODY_PARAMETER:
+                    current = current.withParameter(HttpParameter.bodyParameter(edit.name, edit.value));
+                    break;
+                case COOKIE:
+                    current = current.withParameter(HttpParameter.cookieParameter(edit.name, edit.value));
+                    break;
+                case REGEX:
+                    byte[] rewritten = rewrite(current.toByteArray().getBytes(), current.bodyOffset(), true,
+                            Collections.singletonList(edit));
+                    if (rewritten != null) {
+                        current = HttpRequest.httpRequest(current.httpService(), ByteArray.byteArray(rewritten));
+                    }
+                    break;
+            }
+            edit.changed = current != before && !sameBytes(current.toByteArray(), before.toByteArray());
+        }
+        return sameBytes(current.toByteArray(), request.toByteArray()) ? request : current;
+    }
+
+    private HttpResponse applyNatively(HttpResponse response) {
+        HttpResponse current = response;
+        for (Edit edit : edits) {
+            HttpResponse before = current;
+            if (edit.type == EditType.HEADER) {
+                current = current.hasHeader(edit.name)
+                        ? current.withUpdatedHeader(edit.name, edit.value)
+                        : current.withAddedHeader(edit.name, edit.value);
+            } else if (edit.type == EditType.REGEX) {
+                byte[] rewritten = rewrite(current.toByteArray().getBytes(), current.bodyOffset(), false,
+                        Collections.singletonList(edit));
+                if (rewritten != null) {
+                    current = HttpResponse.httpResponse(ByteArray.byteArray(rewritten));
+                }
+            }
+            edit.changed = current != before && !sameBytes(current.toByteArray(), before.toByteArray());
+        }
+        return sameBytes(current.toByteArray(), response.toByteArray()) ? response : current;
+    }
+
+    /**
+     * Rewrite the raw message bytes with all collected edits, in order.
+     *
+     * @return The rewritten message, or null if no edit changed it
+     */
+    byte[] rewrite(byte[] raw, int bodyOffset, boolean isRequest) {
+        return rewrite(raw, bodyOffset, isRequest, edits);
+    }
+
+    private byte[] rewrite(byte[] raw, int bodyOffset, boolean isRequest, List<Edit> edits) {
+        bodyOffset = Math.max(0, Math.min(bodyOffset, raw.length));
+        String originalHead = new String(raw, 0, bodyOffset, StandardCharsets.ISO_8859_1);
+        String lineSeparator = originalHead.contains("\r\n") ? "\r\n" : "\n";
+        List<String> lines = splitHead(originalHead);
+
+        // The body stays a range of the original array until an edit actually changes it
+        byte[] body = raw;
+        int bodyStart = bodyOffset;
+        int bodyLength = raw.length - bodyOffset;
+        boolean bodyChanged = false;
+
+        // Edit a chunked body's content rather than its framing, which is rebuilt at the end
+        Chunked chunked = null;
+        if (hasBodyEdits(edits, isRequest) && isChunked(lines)) {
+            chunked = Chunked.decode(raw, bodyOffset, bodyLength);
+            if (chunked != null) {
+                body = chunked.data;
+                bodyStart = 0;
+                bodyLength = body.length;
+            }
+        }
+
+        for (Edit edit : edits) {
+            edit.changed = false;
+            switch (edit.type) {
+                case HEADER:
+                    edit.changed = setHeaderLine(lines, edit.name, latin1(edit.value));
+                    break;
+                case URL_PARAMETER:
+                    if (isRequest && !lines.isEmpty()) {
+                        String requestLine = applyUrlParameter(lines.get(0), edit.name, edit.value);
+                        edit.changed = !requestLine.equals(lines.get(0));
+                        lines.set(0, requestLine);
+                    }
+                    break;
+                case BODY_PARAMETER:
+                    if (isRequest) {
+                        String form = new String(body, bodyStart, bodyLength, StandardCharsets.ISO_8859_1);
+                        String updated = setParameter(form, "&", edit.name, edit.value);
+                        if (!updated.equals(form)) {
+                            body = updated.getBytes(StandardCharsets.ISO_8859_1);
+                            bodyStart = 0;
+                            bodyLength = body.length;
+                            bodyChanged = true;
+                            edit.changed = true;
+                        }
+                    }
+                    break;
+                case COOKIE:
+                    if (isRequest) {
+                        edit.changed = applyCookie(lines, edit.name, edit.value);
+                    }
+                    break;
+                case REGEX: {
+                    // Headers and body are matched separately; a first-only edit that hits the headers skips the body
+                    RegexEdit regexEdit = (RegexEdit) edit;
+                    String currentHead = join(lines, lineSeparator);
+                    int[] headSpans = regexEdit.find(currentHead, logging);
+                    if (headSpans != null) {
+                        String spliced = regexEdit.splice(currentHead, headSpans);
+                        if (!spliced.equals(currentHead)) {
+                            lines = splitHead(spliced);
+                            edit.changed = true;
+                        }
+                        if (!regexEdit.replaceAll) {
+                            break;
+                        }
+                    }
+                    if (regexEdit.headersOnly) {
+                        break;
+                    }
+                    int[] bodySpans = regexEdit.find(new ByteCharSequence(body, bodyStart, bodyLength), logging);
+                    if (bodySpans != null) {
+                        byte[] spliced = regexEdit.splice(body, bodyStart, bodyLength, bodySpans);
+                        // Replacing a match with the text it already had is not a change
+                        if (!Arrays.equals(spliced, 0, spliced.length, body, bodyStart, bodyStart + bodyLength)) {
+                            body = spliced;
+                            bodyStart = 0;
+                            bodyLength = body.length;
+                            bodyChanged = true;
+                            edit.changed = true;
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+
+        if (chunked != null) {
+            if (bodyChanged) {
+                body = chunked.encode(body, bodyStart, bodyLength);
+                bodyStart = 0;
+                bodyLength = body.length;
+            } else {
+                // No edit matched, keep the original framing
+                body = raw;
+                bodyStart = bodyOffset;
+                bodyLength = raw.length - bodyOffset;
+            }
+        }
+
+        if (bodyChanged) {
+            fixContentLength(lines, bodyLength);
+        }
+
+        String head = join(lines, lineSeparator);
+        if (!bodyChanged && head.equals(originalHead)) {
+            return null;
+        }
+
+        byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] result = new byte[headBytes.length + bodyLength];
+        System.arraycopy(headBytes, 0, result, 0, headBytes.length);
+        System.arraycopy(body, bodyStart, result, headBytes.length, bodyLength);
+        return result;
+    }
+
+    /**
+     * Split the header section into the start line and header lines, without the blank terminator.
+     */
+    private static List<String> splitHead(String head) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < head.length()) {
+            int end = head.indexOf('\n', start);
+            if (end < 0) {
+                end = head.length();
+            }
+            int lineEnd = end > start && head.charAt(end - 1) == '\r' ? end - 1 : end;
+            lines.add(head.substring(start, lineEnd));
+            start = end + 1;
+        }
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    private static String join(List<String> lines, String lineSeparator) {
+        StringBuilder head = new StringBuilder();
+        for (String line : lines) {
+            head.append(line).append(lineSeparator);
+        }
+        return head.append(lineSeparator).toString();
+    }
+
+    private static int findHeader(List<String> lines, String name) {
+        for (int i = 1; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Returns whether the header line changed
+    private static boolean setHeaderLine(List<String> lines, String name, String value) {
+        int index = findHeader(lines, name);
+        if (index >= 0) {
+            String line = lines.get(index);
+            String updated = line.substring(0, line.indexOf(':')).trim() + ": " + value;
+            lines.set(index, updated);
+            return !updated.equals(line);
+        }
+        lines.add(name + ": " + value);
+        return true;
+    }
+
+    // Returns whether the Cookie header changed
+    private static boolean applyCookie(List<String> lines, String name, String cookieValue) {
+        int index = findHeader(lines, "Cookie");
+        String existing = index >= 0 ? lines.get(index).substring(lines.get(index).indexOf(':') + 1).trim() : "";
+
+        List<String> pairs = new ArrayList<>();
+        for (String pair : existing.split(";")) {
+            if (!pair.trim().isEmpty()) {
+                pairs.add(pair.trim());
+            }
+        }
+        setPair(pairs, name, latin1(cookieValue));
+
+        String value = String.join("; ", pairs);
+        if (index >= 0) {
+            String line = lines.get(index);
+            String updated = line.substring(0, line.indexOf(':')) + ": " + value;
+            lines.set(index, updated);
+            return !updated.equals(line);
+        }
+        lines.add("Cookie: " + value);
+        return true;
+    }
+
+    private static String applyUrlParameter(String requestLine, String name, String value) {
+        int firstSpace = requestLine.indexOf(' ');
+        int lastSpace = requestLine.lastIndexOf(' ');
+        if (firstSpace < 0 || lastSpace <= firstSpace) {
+            return requestLine;
+        }
+
+        String target = requestLine.substring(firstSpace + 1, lastSpace);
+        int queryStart = target.indexOf('?');
+        String path = queryStart >= 0 ? target.substring(0, queryStart) : target;
+        String query = queryStart >= 0 ? target.substring(queryStart + 1) : "";
+
+        return requestLine.substring(0, firstSpace + 1) + path + "?" + setParameter(query, "&", name, value)
+                + requestLine.substring(lastSpace);
+    }
+
+    // Update the first parameter with this name in a separated list, appending it if missing
+    private static String setParameter(String encoded, String separator, String name, String value) {
+        List<String> pairs = new ArrayList<>();
+        for (String pair : encoded.split(separator)) {
+            if (!pair.isEmpty()) {
+                pairs.add(pair);
+            }
+        }
+        setPair(pairs, name, latin1(value));
+        return String.join(separator, pairs);
+    }
+
+    private static void setPair(List<String> pairs, String name, String value) {
+        for (int i = 0; i < pairs.size(); i++) {
+            String pair = pairs.get(i);
+            int equals = pair.indexOf('=');
+            String pairName = (equals >= 0 ? pair.substring(0, equals) : pair).trim();
+            if (pairName.equals(name)) {
+                pairs.set(i, pairName + "=" + value);
+                return;
+            }
+        }
+        pairs.add(name + "=" + value);
+    }
+
+    /**
+     * Set Content-Length to the new body length after a body edit. Chunked messages are left
+     * alone, and HTTP/2 messages only have an existing header updated.
+     */
+    private static void fixContentLength(List<String> lines, int bodyLength) {
+        if (findHeader(lines, "Transfer-Encoding") >= 0) {
+            return;
+        }
+        int index = findHeader(lines, "Content-Length");
+        if (index >= 0) {
+            String line = lines.get(index);
+            lines.set(index, line.substring(0, line.indexOf(':')).trim() + ": " + bodyLength);
+        } else if (bodyLength > 0 && !isHttp2(lines)) {
+            lines.add("Content-Length: " + bodyLength);
+        }
+    }
+
+    private static boolean hasBodyEdits(List<Edit> edits, boolean isRequest) {
+        for (Edit edit : edits) {
+            if ((edit.type == EditType.BODY_PARAMETER && isRequest)
+                    || (edit.type == EditType.REGEX && !((RegexEdit) edit).headersOnly)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasEdit(EditType type) {
+        for (Edit edit : edits) {
+            if (edit.type == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isChunked(List<String> lines) {
+        int index = findHeader(lines, "Transfer-Encoding");
+        return index >= 0 && lines.get(index).toLowerCase(Locale.ROOT).contains("chunked");
+    }
+
+    // "HTTP/2" is the last token of a request line and the first of a status line
+    private static boolean isHttp2(List<String> lines) {
+        if (lines.isEmpty()) {
+            return false;
+        }
+        String startLine = lines.get(0).trim();
+        return startLine.startsWith("HTTP/2") || startLine.endsWith(" HTTP/2");
+    }
+
+    private static boolean isHttp2(String httpVersion) {
+        return httpVersion != null && httpVersion.startsWith("HTTP/2");
+    }
+
+    private static boolean sameBytes(ByteArray a, ByteArray b) {
+        return a.length() == b.length() && Arrays.equals(a.getBytes(), b.getBytes());
+    }
+
+    private static boolean isFormBody(String contentType) {
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).contains(FORM_CONTENT_TYPE);
+    }
+
+    // Represent the UTF-8 encoding of a value as ISO-8859-1 chars, one char per byte
+    private static String latin1(String value) {
+        if (value == null) {
+            return "";
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7F) {
+                return new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * A chunked body decoded to its content, plus the trailer needed to re-encode it.
+     */
+    private static final class Chunked {
+        private static final byte[] CRLF = {'\r', '\n'};
+
+        final byte[] data;
+        // Trailer fields and the final blank line, after the last-chunk line
+        private final byte[] trailer;
+
+        private Chunked(byte[] data, byte[] trailer) {
+            this.data = data;
+            this.trailer = trailer;
+        }
+
+        /**
+         * @return The decoded body, or null if the framing is malformed or truncated
+         */
+        static Chunked decode(byte[] raw, int start, int length) {
+            java.io.ByteArrayOutputStream data = new java.io.ByteArrayOutputStream(length);
+            int end = start + length;
+            int position = start;
+            while (position < end) {
+                int lineEnd = indexOf(raw, (byte) '\n', position, end);
+                if (lineEnd < 0) {
+                    return null;
+                }
+                String sizeLine = new String(raw, position, lineEnd - position, StandardCharsets.ISO_8859_1);
+                int extension = sizeLine.indexOf(';');
+                long size;
+                try {
+                    size = Long.parseLong((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                position = lineEnd + 1;
+
+                if (size == 0) {
+                    byte[] trailer = position < end ? Arrays.copyOfRange(raw, position, end) : CRLF;
+                    return new Chunked(data.toByteArray(), trailer);
+                }
+                if (size < 0 || size > end - position) {
+                    return null;
+                }
+                data.write(raw, position, (int) size);
+                position += (int) size;
+
+                // Each chunk's data is followed by a line ending
+                if (position < end && raw[position] == '\r') {
+                    position++;
+                }
+                if (position >= end || raw[position] != '\n') {
+                    return null;
+                }
+                position++;
+            }
+            return null;
+        }
+
+        /**
+         * Frame new content as a single chunk followed by the original trailer.
+         */
+        byte[] encode(byte[] content, int offset, int length) {
+            java.io.ByteArrayOutputStream encoded = new java.io.ByteArrayOutputStream(length + trailer.length + 16);
+            if (length > 0) {
+                byte[] size = Integer.toHexString(length).getBytes(StandardCharsets.ISO_8859_1);
+                encoded.write(size, 0, size.length);
+                encoded.write(CRLF, 0, CRLF.length);
+                encoded.write(content, offset, length);
+                encoded.write(CRLF, 0, CRLF.length);
+            }
+            encoded.write('0');
+            encoded.write(CRLF, 0, CRLF.length);
+            encoded.write(trailer, 0, trailer.length);
+            return encoded.toByteArray();
+        }
+
+        private static int indexOf(byte[] bytes, byte value, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private enum EditType {
+        HEADER, URL_PARAMETER, BODY_PARAMETER, COOKIE, REGEX
+    }
+
+    /**
+     * One header, parameter or cookie edit: set the named field to the value, adding it if missing.
+     */
+    private static class Edit {
+        final ReplacementRule rule;
+        final EditType type;
+        final String name;
+        final String value;
+        // Whether this edit changed the message when it was last applied
+        boolean changed;
+
+        Edit(ReplacementRule rule, EditType type, String name, String value) {
+            this.rule = rule;
+            this.type = type;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    private static final class RegexEdit extends Edit {
+        final Pattern regex;
+        final int group;
+        final String latin1Value;
+        final byte[] valueBytes;
+        final boolean replaceAll;
+        final boolean headersOnly;
+
+        RegexEdit(ReplacementRule rule, Pattern regex, int group, String value, boolean replaceAll, boolean headersOnly) {
+            super(rule, EditType.REGEX, null, value);
+            this.regex = regex;
+            this.group = group;
+            this.latin1Value = latin1(value);
+            this.valueBytes = this.latin1Value.getBytes(StandardCharsets.ISO_8859_1);
+            this.replaceAll = replaceAll;
+            this.headersOnly = headersOnly;
+        }
+
+        /**
+         * Find the ranges of the chosen group in the first (or every) match.
+         *
+         * @return Start/end pairs, or null if nothing matched
+         */
+        int[] find(CharSequence content, Logging logging) {
+            Matcher matcher = regex.matcher(content);
+            if (group < 0 || group > matcher.groupCount()) {
+                logging.logToError("Invalid regex group " + group + " for pattern: " + regex.pattern());
+                return null;
+            }
+
+            int[] spans = null;
+            int count = 0;
+            while (matcher.find()) {
+                int start = matcher.start(group);
+                if (start < 0) {
+                    logging.logToError("Regex group " + group + " is null for pattern: " + regex.pattern());
+                    continue;
+                }
+                if (spans == null) {
+                    spans = new int[2];
+                } else if (count == spans.length) {
+                    spans = Arrays.copyOf(spans, count * 2);
+                }
+                spans[count++] = start;
+                spans[count++] = matcher.end(group);
+
+                // If not replaceAll mode, stop after first replacement
+                if (!replaceAll) {
+                    break;
+                }
+            }
+            return spans == null ? null : Arrays.copyOf(spans, count);
+        }
+
+        String splice(String content, int[] spans) {
+            StringBuilder result = new StringBuilder(content.length() + latin1Value.length() * (spans.length / 2));
+            int copied = 0;
+            for (int i = 0; i < spans.length; i += 2) {
+                result.append(content, copied, spans[i]).append(latin1Value);
+                copied = spans[i + 1];
+            }
+            return result.append(content, copied, content.length()).toString();
+        }
+
+        /**
+         * Copy the byte range with every span replaced by the value; unmatched bytes are copied as-is.
+         */
+        byte[] splice(byte[] content, int offset, int length, int[] spans) {
+            int resultLength = length;
+            for (int i = 0; i < spans.length; i += 2) {
+                resultLength += valueBytes.length - (spans[i + 1] - spans[i]);
+            }
+
+            byte[] result = new byte[resultLength];
+            int copied = 0;
+            int position = 0;
+            for (int i = 0; i < spans.length; i += 2) {
+                int unchanged = spans[i] - copied;
+                System.arraycopy(content, offset + copied, result, position, unchanged);
+                position += unchanged;
+                System.arraycopy(valueBytes, 0, result, position, valueBytes.length);
+                position += valueBytes.length;
+                copied = spans[i + 1];
+            }
+            System.arraycopy(content, offset + copied, result, position, length - copied);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package core;
+
+import util.ParsedUrl;
+
+import java.util.function.Predicate;
+
+/**
+ * The URL of one message, parsed at most once and checked against Burp's scope at most once,
+ * however many buckets look at it. A request's MessageUrl is shared by its collection and
+ * replacement passes. Safe to hand to another thread: both values are recomputed identically
+ * if two threads race to fill them.
+ */
+public final class MessageUrl {
+    private final String url;
+    private final Predicate<String> scope;
+    private volatile ParsedUrl parsed;
+    private volatile Boolean inScope;
+
+    MessageUrl(String url, Predicate<String> scope) {
+        this.url = url;
+        this.scope = scope;
+    }
+
+    public String url() {
+        return url;
+    }
+
+    ParsedUrl parsed() {
+        ParsedUrl result = parsed;
+        if (result == null) {
+            result = ParsedUrl.parse(url);
+            parsed = result;
+        }
+        return result;
+    }
+
+    boolean isInScope() {
+        Boolean result = inScope;
+        if (result == null) {
+            result = url != null && scope.test(url);
+            inScope = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+package core;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.http.message.HttpHeader;
+import burp.api.montoya.http.message.HttpMessage;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.http.message.responses.HttpResponse;
+
+import java.util.*;
+
+/**
+ * Lazily computed facts about one HTTP message, shared by every bucket that looks at it.
+ * Each value (serialized text, header section, body or body prefix, header values, body
+ * length, MIME types) is computed at most once and only if some bucket actually needs it,
+ * so a message that every gate rejects is never serialized and a pattern that targets one
+ * section never converts the rest of the message. Not thread-safe; a view belongs to the
+ * thread processing the message.
+ */
+final class MessageView {
+    private final HttpMessage message;
+    private final boolean isRequest;
+
+    private ByteArray bytes;
+    private String text;
+    private String headerText;
+    private int bodyLength = -1;
+    private String mediaType;
+    private List<String> burpMimeTypes;
+    private String bodyText;
+    private Map<Integer, String> bodyPrefixes;
+    private Map<String, String> headerValues;
+    private BitSet literalHits;
+    private BitSet headerLiteralHits;
+
+    MessageView(HttpMessage message, boolean isRequest) {
+        this.message = message;
+        this.isRequest = isRequest;
+    }
+
+    HttpMessage message() {
+        return message;
+    }
+
+    boolean isRequest() {
+        return isRequest;
+    }
+
+    /**
+     * The whole message as text.
+     */
+    String text() {
+        if (text == null) {
+            text = message.toString();
+        }
+        return text;
+    }
+
+    /**
+     * The start line and headers, including the blank line that ends them.
+     */
+    String headerText() {
+        if (headerText == null) {
+            if (text != null) {
+                headerText = text.substring(0, Math.min(text.length(), message.bodyOffset()));
+            } else {
+                ByteArray all = bytes();
+                headerText = all.subArray(0, Math.min(all.length(), message.bodyOffset())).toString();
+            }
+        }
+        return headerText;
+    }
+
+    /**
+     * The request line or status line, without the line ending.
+     */
+    String startLine() {
+        String headers = headerText();
+        int end = headers.indexOf('\n');
+        if (end < 0) {
+            return headers;
+        }
+        return headers.substring(0, end > 0 && headers.charAt(end - 1) == '\r' ? end - 1 : end);
+    }
+
+    /**
+     * Values of every header with the given name (case-insensitive), one per line, or "" if absent.
+     */
+    String headerValues(String name) {
+        if (headerValues == null) {
+            headerValues = new HashMap<>();
+        }
+        String key = name.toLowerCase(Locale.ROOT);
+        String values = headerValues.get(key);
+        if (values == null) {
+            StringBuilder joined = new StringBuilder();
+            for (HttpHeader header : message.headers()) {
+                if (header.name().equalsIgnoreCase(name)) {
+                    if (joined.length() > 0) {
+                        joined.append('\n');
+                    }
+                    joined.append(header.value());
+                }
+            }
+            values = joined.toString();
+            headerValues.put(key, values);
+        }
+        return values;
+    }
+
+    String bodyText() {
+        if (bodyText == null) {
+            if (text != null) {
+                bodyText = text.substring(Math.min(text.length(), message.bodyOffset()));
+            } else {
+                ByteArray all = bytes();
+                bodyText = all.subArray(Math.min(all.length(), message.bodyOffset()), all.length()).toString();
+            }
+        }
+        return bodyText;
+    }
+
+    /**
+     * The first maxBytes bytes of the body, without converting the rest of it.
+     */
+    String bodyPrefix(int maxBytes) {
+        if (bodyText != null) {
+            return bodyText.substring(0, Math.min(bodyText.length(), maxBytes));
+        }
+        if (bodyPrefixes == null) {
+            bodyPrefixes = new HashMap<>();
+        }
+        String prefix = bodyPrefixes.get(maxBytes);
+        if (prefix == null) {
+            ByteArray all = bytes();
+            int start = Math.min(all.length(), message.bodyOffset());
+            int end = (int) Math.min(all.length(), (long) start + maxBytes);
+            prefix = all.subArray(start, end).toString();
+            bodyPrefixes.put(maxBytes, prefix);
+        }
+        return prefix;
+    }
+
+    /**
+     * Literals present in the whole message (or just its headers), scanned once and shared by all buckets.
+     */
+    BitSet literalHits(LiteralPrefilter prefilter, boolean headersOnly) {
+        if (headersOnly) {
+            if (headerLiteralHits == null) {
+                headerLiteralHits = prefilter.scan(headerText());
+            }
+            return headerLiteralHits;
+        }
+        if (literalHits == null) {
+            literalHits = prefilter.scan(text());
+        }
+        return literalHits;
+    }
+
+    int bodyLength() {
+        if (bodyLength < 0) {
+            // Reuse the raw bytes if another check already fetched them, otherwise just ask for the body
+            bodyLength = bytes != null
+                    ? Math.max(0, bytes.length() - message.bodyOffset())
+                    : message.body().length();
+        }
+        return bodyLength;
+    }
+
+    /**
+     * Media type from the Content-Type header, lower-cased and without parameters, or "" if absent.
+     */
+    String mediaType() {
+        if (mediaType == null) {
+            String contentType = message.headerValue("Content-Type");
+            if (contentType == null) {
+                mediaType = "";
+            } else {
+                int semicolon = contentType.indexOf(';');
+                mediaType = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType)
+                        .trim().toLowerCase(Locale.ROOT);
+            }
+        }
+        return mediaType;
+    }
+
+    /**
+     * Burp's names for the message type, lower-cased: the stated and inferred MIME types for
+     * responses, the content type for requests.
+     */
+    List<String> burpMimeTypes() {
+        if (burpMimeTypes == null) {
+            List<String> types = new ArrayList<>(2);
+            if (isRequest && message instanceof HttpRequest) {
+                types.add(((HttpRequest) message).contentType().name().toLowerCase(Locale.ROOT));
+            } else if (message instanceof HttpResponse) {
+                HttpResponse response = (HttpResponse) message;
+                types.add(response.statedMimeType().name().toLowerCase(Locale.ROOT));
+                String inferred = response.inferredMimeType().name().toLowerCase(Locale.ROOT);
+                if (!types.contains(inferred)) {
+                    types.add(inferred);
+                }
+            }
+            burpMimeTypes = types;
+        }
+        return burpMimeTypes;
+    }
+
+    private ByteArray bytes() {
+        if (bytes == null) {
+            bytes = message.toByteArray();
+        }
+        return bytes;
+    }
+}
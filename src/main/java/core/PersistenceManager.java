@@ -3,60 +3,199 @@ package core;
 import burp.api.montoya.MontoyaApi;
 import burp.api.montoya.persistence.PersistedObject;
 import burp.api.montoya.persistence.Preferences;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import model.Bucket;
 import model.BucketDefaults;
+import model.GlobalControls;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class PersistenceManager {
+    // Legacy single-string bucket list, still read if the per-bucket configs are missing
     private static final String BUCKETS_KEY = "collector_buckets";
+    // One compact JSON string per bucket, keyed by bucket id, plus the ids in bucket order
+    static final String BUCKET_CONFIGS_KEY = "collector_bucket_configs";
+    private static final String BUCKET_ORDER_KEY = "order";
     private static final String GLOBAL_CONTROLS_KEY = "collector_global_controls";
     private static final String BUCKET_DEFAULTS_KEY = "collector_bucket_defaults";
+    // Optional per-bucket token list in exported files
+    private static final String TOKENS_FIELD = "tokens";
+
+    // Edits within this delay of each other are saved together, but never later than the maximum
+    private static final long SAVE_DELAY_MS = 500;
+    private static final long MAX_SAVE_DELAY_MS = 3000;
 
     private final Preferences preferences;
     private final PersistedObject extensionData;
     private final Gson gson;
+    private final Gson exportGson;
     private final MontoyaApi api;
+    private final ScheduledExecutorService saver;
+
+    // Pending scheduled save and when the first edit it covers was made, guarded by this
+    private ScheduledFuture<?> pendingSave;
+    private long pendingSince;
+
+    // What was last written, so unchanged buckets and settings are not written again; guarded by saveLock
+    private final Object saveLock = new Object();
+    private final Map<String, SavedBucket> savedBuckets = new HashMap<>();
+    private String savedBucketOrder;
+    private String savedGlobalControlsJson;
+    private String savedBucketDefaultsJson;
 
     public PersistenceManager(MontoyaApi api) {
         this.api = api;
         this.preferences = api.persistence().preferences();
         this.extensionData = api.persistence().extensionData();
-        // Use LinkedHashMap to preserve insertion order during serialization
+        // Stored configuration is compact; exported files are pretty-printed for people to read
         this.gson = new GsonBuilder()
+                .enableComplexMapKeySerialization()
+                .create();
+        this.exportGson = new GsonBuilder()
                 .setPrettyPrinting()
                 .enableComplexMapKeySerialization()
                 .create();
+        this.saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Collector config saver");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    public void saveBucketManager(BucketManager bucketManager) {
+    /**
+     * Save the configuration shortly, on a background thread. Bursts of edits (typing in a
+     * field fires one per keystroke) are coalesced into a single save.
+     */
+    public synchronized void scheduleSave(BucketManager bucketManager, BucketDefaults bucketDefaults) {
+        long now = System.currentTimeMillis();
+        if (pendingSave != null) {
+            if (now - pendingSince >= MAX_SAVE_DELAY_MS) {
+                return; // Already due, let it run
+            }
+            pendingSave.cancel(false);
+        } else {
+            pendingSince = now;
+        }
+        long delay = Math.min(SAVE_DELAY_MS, Math.max(0, pendingSince + MAX_SAVE_DELAY_MS - now));
+        pendingSave = saver.schedule(() -> runScheduledSave(bucketManager, bucketDefaults), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void runScheduledSave(BucketManager bucketManager, BucketDefaults bucketDefaults) {
+        synchronized (this) {
+            pendingSave = null;
+        }
         try {
-            // Save buckets to project-specific storage (maintaining insertion order)
-            List<Bucket> buckets = new ArrayList<>(bucketManager.getBuckets());
-            String bucketsJson = gson.toJson(buckets);
-            extensionData.setString(BUCKETS_KEY, bucketsJson);
-
-            // Save global controls to Burp-level preferences
-            String globalControlsJson = gson.toJson(bucketManager.getGlobalControls());
-            preferences.setString(GLOBAL_CONTROLS_KEY, globalControlsJson);
-        } catch (Exception e) {
-            api.logging().logToError("Error saving bucket manager: " + e.getMessage());
-            e.printStackTrace();
+            saveBucketManager(bucketManager);
+            saveBucketDefaults(bucketDefaults);
+        } catch (ConcurrentModificationException e) {
+            // The UI edited a list while it was being serialized; the edit scheduled another save anyway
+            scheduleSave(bucketManager, bucketDefaults);
         }
     }
 
-    public void saveBucketDefaults(BucketDefaults bucketDefaults) {
+    /**
+     * Write any pending save now and stop the background saver. Called when the extension is unloaded.
+     */
+    public void shutdown(BucketManager bucketManager, BucketDefaults bucketDefaults) {
+        boolean pending;
+        synchronized (this) {
+            pending = pendingSave != null && pendingSave.cancel(false);
+            pendingSave = null;
+        }
+        saver.shutdown();
         try {
-            String bucketDefaultsJson = gson.toJson(bucketDefaults);
-            preferences.setString(BUCKET_DEFAULTS_KEY, bucketDefaultsJson);
-        } catch (Exception e) {
-            api.logging().logToError("Error saving bucket defaults: " + e.getMessage());
-            e.printStackTrace();
+            saver.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pending) {
+            saveBucketManager(bucketManager);
+            saveBucketDefaults(bucketDefaults);
+        }
+    }
+
+    public void saveBucketManager(BucketManager bucketManager) {
+        synchronized (saveLock) {
+            try {
+                // Save each bucket under its id in project-specific storage; only new and edited ones are serialized
+                List<Bucket> buckets = bucketManager.getBuckets();
+                PersistedObject configs = bucketConfigs();
+                Map<String, SavedBucket> written = new HashMap<>();
+                List<String> order = new ArrayList<>(buckets.size());
+                for (Bucket bucket : buckets) {
+                    // Read before serializing, so an edit made meanwhile is written by the next save
+                    long changes = bucket.getConfigChangeCount();
+                    SavedBucket saved = savedBuckets.get(bucket.getId());
+                    if (saved == null || saved.bucket != bucket || saved.changes != changes) {
+                        configs.setString(bucket.getId(), gson.toJson(bucket));
+                        saved = new SavedBucket(bucket, changes);
+                    }
+                    written.put(bucket.getId(), saved);
+                    order.add(bucket.getId());
+                }
+                for (String id : savedBuckets.keySet()) {
+                    if (!written.containsKey(id)) {
+                        configs.deleteString(id);
+                    }
+                }
+                savedBuckets.clear();
+                savedBuckets.putAll(written);
+
+                String bucketOrder = gson.toJson(order);
+                if (!bucketOrder.equals(savedBucketOrder)) {
+                    configs.setString(BUCKET_ORDER_KEY, bucketOrder);
+                    savedBucketOrder = bucketOrder;
+                }
+                extensionData.deleteString(BUCKETS_KEY);
+
+                // Save global controls to Burp-level preferences
+                String globalControlsJson = gson.toJson(bucketManager.getGlobalControls());
+                if (!globalControlsJson.equals(savedGlobalControlsJson)) {
+                    preferences.setString(GLOBAL_CONTROLS_KEY, globalControlsJson);
+                    savedGlobalControlsJson = globalControlsJson;
+                }
+            } catch (ConcurrentModificationException e) {
+                throw e;
+            } catch (Exception e) {
+                api.logging().logToError("Error saving bucket manager: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void saveBucketDefaults(BucketDefaults bucketDefaults) {
+        synchronized (saveLock) {
+            try {
+                String bucketDefaultsJson = gson.toJson(bucketDefaults);
+                if (!bucketDefaultsJson.equals(savedBucketDefaultsJson)) {
+                    preferences.setString(BUCKET_DEFAULTS_KEY, bucketDefaultsJson);
+                    savedBucketDefaultsJson = bucketDefaultsJson;
+                }
+            } catch (ConcurrentModificationException e) {
+                throw e;
+            } catch (Exception e) {
+                api.logging().logToError("Error saving bucket defaults: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private PersistedObject bucketConfigs() {
+        PersistedObject configs = extensionData.getChildObject(BUCKET_CONFIGS_KEY);
+        if (configs == null) {
+            extensionData.setChildObject(BUCKET_CONFIGS_KEY, PersistedObject.persistedObject());
+            configs = extensionData.getChildObject(BUCKET_CONFIGS_KEY);
         }
+        return configs;
     }
 
     public void loadBucketManager(BucketManager bucketManager) {
@@ -68,21 +207,83 @@ public class PersistenceManager {
                 if (loadedControls != null) {
                     bucketManager.getGlobalControls().setCollectionEnabledTools(loadedControls.getCollectionEnabledTools());
                     bucketManager.getGlobalControls().setReplacementEnabledTools(loadedControls.getReplacementEnabledTools());
+                    bucketManager.getGlobalControls().setAsyncCollectionEnabled(loadedControls.isAsyncCollectionEnabled());
+                    bucketManager.getGlobalControls().setAsyncQueueCapacity(loadedControls.getAsyncQueueCapacity());
+                    if (loadedControls.getAsyncQueueFullBehavior() != null) {
+                        bucketManager.getGlobalControls().setAsyncQueueFullBehavior(loadedControls.getAsyncQueueFullBehavior());
+                    }
+                    bucketManager.getGlobalControls().setFlushBeforeReplacement(loadedControls.isFlushBeforeReplacement());
+                    bucketManager.getGlobalControls().setScriptOptimizationLevel(loadedControls.getScriptOptimizationLevel());
+                    bucketManager.getGlobalControls().setPersistTokens(loadedControls.isPersistTokens());
+                    if (loadedControls.getCollectionFilter() != null) {
+                        bucketManager.getGlobalControls().setCollectionFilter(loadedControls.getCollectionFilter());
+                    }
+                    if (loadedControls.getReplacementFilter() != null) {
+                        bucketManager.getGlobalControls().setReplacementFilter(loadedControls.getReplacementFilter());
+                    }
                 }
             }
 
-            // Load buckets from project-specific storage
-            String bucketsJson = extensionData.getString(BUCKETS_KEY);
-            if (bucketsJson != null) {
-                Bucket[] loadedBuckets = gson.fromJson(bucketsJson, Bucket[].class);
-                if (loadedBuckets != null) {
-                    for (Bucket bucket : loadedBuckets) {
+            // Load buckets from project-specific storage, one string per bucket or the older single list
+            List<Bucket> buckets = new ArrayList<>();
+            // Set when a bucket's id is not stored yet, so the ids are written before tokens are saved under them
+            boolean unsavedIds = false;
+            PersistedObject configs = extensionData.getChildObject(BUCKET_CONFIGS_KEY);
+            String bucketOrder = configs != null ? configs.getString(BUCKET_ORDER_KEY) : null;
+            if (bucketOrder != null) {
+                String[] ids = gson.fromJson(bucketOrder, String[].class);
+                for (String id : ids != null ? ids : new String[0]) {
+                    String bucketJson = configs.getString(id);
+                    Bucket bucket = bucketJson != null ? gson.fromJson(bucketJson, Bucket.class) : null;
+                    if (bucket != null) {
+                        unsavedIds |= bucket.getId() == null;
                         // Initialize transient fields after deserialization
                         bucket.initializeTransientFields();
-                        bucketManager.addBucket(bucket);
+                        buckets.add(bucket);
+                    }
+                }
+            } else {
+                String bucketsJson = extensionData.getString(BUCKETS_KEY);
+                if (bucketsJson != null) {
+                    Bucket[] loadedBuckets = gson.fromJson(bucketsJson, Bucket[].class);
+                    if (loadedBuckets != null) {
+                        // Saved before buckets had ids; they get new ones now
+                        unsavedIds = loadedBuckets.length > 0;
+                        for (Bucket bucket : loadedBuckets) {
+                            // Initialize transient fields after deserialization
+                            bucket.initializeTransientFields();
+                            buckets.add(bucket);
+                        }
                     }
                 }
             }
+            unsavedIds |= ensureUniqueIds(buckets);
+
+            synchronized (saveLock) {
+                // Stored entries that still match a loaded bucket don't need writing again; anything else is stale
+                savedBuckets.clear();
+                savedBucketOrder = bucketOrder;
+                if (configs != null) {
+                    for (Bucket bucket : buckets) {
+                        if (configs.getString(bucket.getId()) != null) {
+                            savedBuckets.put(bucket.getId(), new SavedBucket(bucket, bucket.getConfigChangeCount()));
+                        }
+                    }
+                    for (String key : new ArrayList<>(configs.stringKeys())) {
+                        if (!key.equals(BUCKET_ORDER_KEY) && !savedBuckets.containsKey(key)) {
+                            configs.deleteString(key);
+                        }
+                    }
+                }
+            }
+
+            // Added in one step, which also builds the rule plan once for the loaded global controls
+            bucketManager.replaceBuckets(buckets);
+
+            // New ids must be stored now: saved tokens are keyed by them, and the next load would otherwise generate different ones
+            if (unsavedIds) {
+                saveBucketManager(bucketManager);
+            }
         } catch (Exception e) {
             api.logging().logToError("Error loading bucket manager: " + e.getMessage());
             e.printStackTrace();
@@ -106,61 +307,221 @@ public class PersistenceManager {
         return new BucketDefaults(); // Return new defaults if loading fails
     }
 
-    public void exportToFile(BucketManager bucketManager, BucketDefaults bucketDefaults, File file) throws IOException {
-        ExportData data = new ExportData();
-        data.buckets = bucketManager.getBuckets();
-        data.globalControls = bucketManager.getGlobalControls();
-        data.bucketDefaults = bucketDefaults;
+    /**
+     * Export the configuration, optionally with every bucket's tokens, writing it as it goes
+     * instead of building the whole document in memory first.
+     */
+    public void exportToFile(BucketManager bucketManager, BucketDefaults bucketDefaults, File file, boolean includeTokens) throws IOException {
+        try (JsonWriter writer = exportGson.newJsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            writer.beginObject();
+
+            writer.name("buckets").beginArray();
+            for (Bucket bucket : bucketManager.getBuckets()) {
+                writeBucket(writer, bucket, includeTokens);
+            }
+            writer.endArray();
+
+            writer.name("globalControls");
+            exportGson.toJson(bucketManager.getGlobalControls(), GlobalControls.class, writer);
+            writer.name("bucketDefaults");
+            exportGson.toJson(bucketDefaults, BucketDefaults.class, writer);
+
+            writer.endObject();
+        }
+    }
 
-        try (FileWriter writer = new FileWriter(file)) {
-            gson.toJson(data, writer);
+    // Bucket settings, then its tokens last so an import can create the bucket before reading them
+    private void writeBucket(JsonWriter writer, Bucket bucket, boolean includeTokens) throws IOException {
+        JsonObject config = exportGson.toJsonTree(bucket, Bucket.class).getAsJsonObject();
+        writer.beginObject();
+        for (Map.Entry<String, JsonElement> field : config.entrySet()) {
+            writer.name(field.getKey());
+            exportGson.toJson(field.getValue(), writer);
+        }
+        if (includeTokens) {
+            writer.name(TOKENS_FIELD).beginArray();
+            for (String token : bucket.getAllTokens()) {
+                writer.value(token);
+            }
+            writer.endArray();
         }
+        writer.endObject();
     }
 
+    /**
+     * Import a configuration exported by exportToFile, including tokens if it has them.
+     * The file is read as a stream and tokens go straight into their buckets. The current
+     * configuration is only replaced, in one step, once the whole file has been read.
+     */
     public BucketDefaults importFromFile(BucketManager bucketManager, File file) throws IOException {
-        try (FileReader reader = new FileReader(file)) {
-            ExportData data = gson.fromJson(reader, ExportData.class);
-
-            if (data != null) {
-                // Clear existing buckets
-                List<Bucket> existingBuckets = new ArrayList<>(bucketManager.getBuckets());
-                for (Bucket bucket : existingBuckets) {
-                    bucketManager.removeBucket(bucket);
-                }
+        List<Bucket> buckets = new ArrayList<>();
+        GlobalControls globalControls = null;
+        BucketDefaults bucketDefaults = null;
 
-                // Import global controls
-                if (data.globalControls != null) {
-                    bucketManager.getGlobalControls().setCollectionEnabledTools(data.globalControls.getCollectionEnabledTools());
-                    bucketManager.getGlobalControls().setReplacementEnabledTools(data.globalControls.getReplacementEnabledTools());
+        try (JsonReader reader = gson.newJsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "buckets":
+                        readBuckets(reader, buckets);
+                        break;
+                    case "globalControls":
+                        globalControls = gson.fromJson(reader, GlobalControls.class);
+                        break;
+                    case "bucketDefaults":
+                        bucketDefaults = gson.fromJson(reader, BucketDefaults.class);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
                 }
+            }
+            reader.endObject();
+        }
 
-                // Import buckets
-                if (data.buckets != null) {
-                    for (Bucket bucket : data.buckets) {
-                        bucket.initializeTransientFields();
-                        bucketManager.addBucket(bucket);
+        // Import global controls
+        if (globalControls != null) {
+            bucketManager.getGlobalControls().setCollectionEnabledTools(globalControls.getCollectionEnabledTools());
+            bucketManager.getGlobalControls().setReplacementEnabledTools(globalControls.getReplacementEnabledTools());
+            bucketManager.getGlobalControls().setAsyncCollectionEnabled(globalControls.isAsyncCollectionEnabled());
+            bucketManager.getGlobalControls().setAsyncQueueCapacity(globalControls.getAsyncQueueCapacity());
+            if (globalControls.getAsyncQueueFullBehavior() != null) {
+                bucketManager.getGlobalControls().setAsyncQueueFullBehavior(globalControls.getAsyncQueueFullBehavior());
+            }
+            bucketManager.getGlobalControls().setFlushBeforeReplacement(globalControls.isFlushBeforeReplacement());
+            bucketManager.getGlobalControls().setScriptOptimizationLevel(globalControls.getScriptOptimizationLevel());
+            bucketManager.getGlobalControls().setPersistTokens(globalControls.isPersistTokens());
+            if (globalControls.getCollectionFilter() != null) {
+                bucketManager.getGlobalControls().setCollectionFilter(globalControls.getCollectionFilter());
+            }
+            if (globalControls.getReplacementFilter() != null) {
+                bucketManager.getGlobalControls().setReplacementFilter(globalControls.getReplacementFilter());
+            }
+        }
+
+        // Swap in the imported buckets; this also refreshes the rule plan for the new global controls
+        ensureUniqueIds(buckets);
+        bucketManager.replaceBuckets(buckets);
+
+        // Return imported defaults (or new defaults if none)
+        return bucketDefaults != null ? bucketDefaults : new BucketDefaults();
+    }
+
+    private void readBuckets(JsonReader reader, List<Bucket> buckets) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Bucket bucket = readBucket(reader);
+            if (bucket != null) {
+                buckets.add(bucket);
+            }
+        }
+        reader.endArray();
+    }
+
+    private Bucket readBucket(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        JsonObject config = new JsonObject();
+        Bucket bucket = null;
+        boolean settingsAfterTokens = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (TOKENS_FIELD.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                // Settings such as max size and unique mode decide how tokens are added
+                if (bucket == null) {
+                    bucket = toBucket(config);
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        bucket.addToken(reader.nextString());
                     }
                 }
+                reader.endArray();
+            } else {
+                config.add(name, JsonParser.parseReader(reader));
+                settingsAfterTokens |= bucket != null;
+            }
+        }
+        reader.endObject();
 
-                // Return imported defaults (or new defaults if none)
-                return data.bucketDefaults != null ? data.bucketDefaults : new BucketDefaults();
+        if (bucket == null) {
+            return toBucket(config);
+        }
+        if (settingsAfterTokens) {
+            // Hand-edited file with settings after the tokens: rebuild the bucket with all of them
+            Bucket complete = toBucket(config);
+            for (String token : bucket.getAllTokens()) {
+                complete.addToken(token);
+            }
+            return complete;
+        }
+        return bucket;
+    }
+
+    // A hand-edited or duplicated entry can repeat an id; later copies get a fresh one. Returns whether any id changed.
+    private static boolean ensureUniqueIds(List<Bucket> buckets) {
+        Set<String> ids = new HashSet<>();
+        boolean changed = false;
+        for (Bucket bucket : buckets) {
+            if (!ids.add(bucket.getId())) {
+                bucket.assignNewId();
+                ids.add(bucket.getId());
+                changed = true;
             }
         }
-        return new BucketDefaults();
+        return changed;
+    }
+
+    private Bucket toBucket(JsonObject config) {
+        Bucket bucket = gson.fromJson(config, Bucket.class);
+        // Initialize transient fields after deserialization
+        bucket.initializeTransientFields();
+        return bucket;
     }
 
     public void clearAllData() {
-        // Clear project-specific data
-        extensionData.deleteString(BUCKETS_KEY);
+        synchronized (saveLock) {
+            // Clear project-specific data
+            extensionData.deleteString(BUCKETS_KEY);
+            extensionData.deleteChildObject(BUCKET_CONFIGS_KEY);
+            extensionData.deleteChildObject(TokenPersistence.TOKENS_KEY);
+
+            // Clear Burp-level preferences
+            preferences.deleteString(GLOBAL_CONTROLS_KEY);
+            preferences.deleteString(BUCKET_DEFAULTS_KEY);
 
-        // Clear Burp-level preferences
-        preferences.deleteString(GLOBAL_CONTROLS_KEY);
-        preferences.deleteString(BUCKET_DEFAULTS_KEY);
+            // Nothing is saved any more, so the next save writes everything
+            savedBuckets.clear();
+            savedBucketOrder = null;
+            savedGlobalControlsJson = null;
+            savedBucketDefaultsJson = null;
+        }
     }
 
-    private static class ExportData {
-        List<Bucket> buckets;
-        model.GlobalControls globalControls;
-        BucketDefaults bucketDefaults;
+    /**
+     * A bucket as last written: which instance it was and how many edits it had by then.
+     */
+    private static final class SavedBucket {
+        final Bucket bucket;
+        final long changes;
+
+        SavedBucket(Bucket bucket, long changes) {
+            this.bucket = bucket;
+            this.changes = changes;
+        }
     }
 }
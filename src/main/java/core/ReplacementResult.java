@@ -0,0 +1,38 @@
+package core;
+
+import model.ReplacementRule;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of applying replacement rules to one HTTP message: the message to forward,
+ * whether it differs from the original, and which rules changed it.
+ */
+public class ReplacementResult<T> {
+    private final T message;
+    private final boolean modified;
+    private final List<ReplacementRule> appliedRules;
+
+    public ReplacementResult(T message, boolean modified, List<ReplacementRule> appliedRules) {
+        this.message = message;
+        this.modified = modified;
+        this.appliedRules = appliedRules != null ? Collections.unmodifiableList(appliedRules) : Collections.emptyList();
+    }
+
+    /**
+     * Result for a message that no rule applied to.
+     */
+    public static <T> ReplacementResult<T> unchanged(T message) {
+        return new ReplacementResult<>(message, false, null);
+    }
+
+    public T getMessage() { return message; }
+    public boolean isModified() { return modified; }
+
+    /**
+     * Rules whose edits changed this message, in the order they were applied.
+     * Rules that matched nothing or wrote back the value already there are left out.
+     */
+    public List<ReplacementRule> getAppliedRules() { return appliedRules; }
+}
@@ -0,0 +1,367 @@
+package core;
+
+import burp.api.montoya.core.ToolType;
+import burp.api.montoya.logging.Logging;
+import model.*;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, precompiled snapshot of the bucket configuration used by the HTTP hot path.
+ * A new plan is built by BucketManager whenever the configuration changes and swapped in
+ * atomically, so per-message processing only walks flat arrays of ready-to-run entries
+ * without re-checking enabled flags or recompiling patterns.
+ */
+public final class RulePlan {
+    final boolean bucketsEnabled;
+    final Set<ToolType> collectionTools;
+    final Set<ToolType> replacementTools;
+    final CollectionPlan[] collectionPlans;
+    final ReplacementPlan[] replacementPlans;
+    // Host dispatch tables over collectionPlans and replacementPlans (for requests)
+    final HostIndex collectionHostIndex;
+    final HostIndex replacementHostIndex;
+    // Required literals of every collection pattern across all buckets, null if none could be extracted
+    final LiteralPrefilter literalPrefilter;
+    final boolean asyncCollection;
+    final int asyncQueueCapacity;
+    final QueueFullBehavior asyncQueueFullBehavior;
+    final boolean flushBeforeReplacement;
+    // Global content filters, null when they would never skip a message
+    final ContentGate collectionGate;
+    final ContentGate replacementGate;
+
+    private RulePlan(GlobalControls globalControls, Set<ToolType> collectionTools, Set<ToolType> replacementTools,
+                     CollectionPlan[] collectionPlans, ReplacementPlan[] replacementPlans,
+                     LiteralPrefilter literalPrefilter) {
+        this.bucketsEnabled = globalControls.isBucketsEnabled();
+        this.collectionTools = collectionTools;
+        this.replacementTools = replacementTools;
+        this.collectionPlans = collectionPlans;
+        this.replacementPlans = replacementPlans;
+        this.collectionHostIndex = buildHostIndex(collectionPlans.length, i -> collectionPlans[i].matchInScopeUrls,
+                i -> collectionPlans[i].urlMatchers);
+        this.replacementHostIndex = buildHostIndex(replacementPlans.length, i -> replacementPlans[i].matchInScopeUrls,
+                i -> replacementPlans[i].urlMatchers);
+        this.literalPrefilter = literalPrefilter;
+        this.asyncCollection = globalControls.isAsyncCollectionEnabled();
+        this.asyncQueueCapacity = globalControls.getAsyncQueueCapacity();
+        this.asyncQueueFullBehavior = globalControls.getAsyncQueueFullBehavior() != null
+                ? globalControls.getAsyncQueueFullBehavior() : QueueFullBehavior.RUN_INLINE;
+        this.flushBeforeReplacement = globalControls.isFlushBeforeReplacement();
+        this.collectionGate = ContentGate.compile(globalControls.getCollectionFilter());
+        this.replacementGate = ContentGate.compile(globalControls.getReplacementFilter());
+    }
+
+    /**
+     * Build a plan from the current buckets and global controls.
+     * Disabled buckets, and buckets with nothing to collect or replace, are left out entirely.
+     */
+    static RulePlan build(List<Bucket> buckets, GlobalControls globalControls, Logging logging) {
+        List<CollectionPlan> collectionPlans = new ArrayList<>();
+        List<ReplacementPlan> replacementPlans = new ArrayList<>();
+        LiteralPrefilter.Builder literals = new LiteralPrefilter.Builder();
+
+        for (Bucket bucket : buckets) {
+            if (!bucket.isEnabled()) continue;
+
+            CollectionPlan collectionPlan = CollectionPlan.build(bucket, logging, literals);
+            if (collectionPlan.hasPatterns()) {
+                collectionPlans.add(collectionPlan);
+            }
+
+            ReplacementPlan replacementPlan = ReplacementPlan.build(bucket, logging);
+            if (replacementPlan != null) {
+                replacementPlans.add(replacementPlan);
+            }
+        }
+
+        return new RulePlan(
+                globalControls,
+                copyTools(globalControls.getCollectionEnabledTools()),
+                copyTools(globalControls.getReplacementEnabledTools()),
+                collectionPlans.toArray(new CollectionPlan[0]),
+                replacementPlans.toArray(new ReplacementPlan[0]),
+                literals.isEmpty() ? null : literals.build());
+    }
+
+    private static HostIndex buildHostIndex(int count, java.util.function.IntPredicate matchInScopeUrls,
+                                            java.util.function.IntFunction<UrlMatcher.Compiled[]> urlMatchers) {
+        boolean[] inScope = new boolean[count];
+        UrlMatcher.Compiled[][] matchers = new UrlMatcher.Compiled[count][];
+        for (int i = 0; i < count; i++) {
+            inScope[i] = matchInScopeUrls.test(i);
+            matchers[i] = urlMatchers.apply(i);
+        }
+        return HostIndex.build(inScope, matchers);
+    }
+
+    private static Set<ToolType> copyTools(Set<ToolType> tools) {
+        Set<ToolType> copy = EnumSet.noneOf(ToolType.class);
+        if (tools != null) {
+            copy.addAll(tools);
+        }
+        return Collections.unmodifiableSet(copy);
+    }
+
+    /**
+     * Compile the enabled matchers once, so the plan never reads the editable UrlMatcher objects.
+     */
+    private static UrlMatcher.Compiled[] enabledMatchers(List<UrlMatcher> matchers) {
+        List<UrlMatcher.Compiled> enabled = new ArrayList<>();
+        if (matchers != null) {
+            for (UrlMatcher matcher : matchers) {
+                if (matcher.isEnabled()) {
+                    enabled.add(matcher.compile());
+                }
+            }
+        }
+        return enabled.toArray(new UrlMatcher.Compiled[0]);
+    }
+
+    private static String scriptOrNull(String script) {
+        return script != null && !script.isEmpty() ? script : null;
+    }
+
+    // Snapshot of a transform chain so later UI edits cannot change a plan in use, null if empty
+    private static TransformStep[] transformsOrNull(List<TransformStep> steps) {
+        if (steps == null || steps.isEmpty()) {
+            return null;
+        }
+        List<TransformStep> copy = new ArrayList<>(steps.size());
+        for (TransformStep step : steps) {
+            if (step != null && step.getType() != null) {
+                copy.add(step.copy());
+            }
+        }
+        return copy.isEmpty() ? null : copy.toArray(new TransformStep[0]);
+    }
+
+    /**
+     * Precompiled collection settings for one bucket.
+     */
+    static final class CollectionPlan {
+        final Bucket bucket;
+        final boolean collectFromRequests;
+        final boolean collectFromResponses;
+        final Set<ToolType> enabledTools;
+        final boolean matchInScopeUrls;
+        final UrlMatcher.Compiled[] urlMatchers;
+        final PatternPlan[] requestPatterns;
+        final PatternPlan[] responsePatterns;
+        final TransformStep[] postTransforms;
+        final String postProcessingScript;
+        final ContentGate gate;
+
+        private CollectionPlan(Bucket bucket, CollectionRule rule, PatternPlan[] requestPatterns, PatternPlan[] responsePatterns) {
+            this.bucket = bucket;
+            this.collectFromRequests = rule.isCollectFromRequests();
+            this.collectFromResponses = rule.isCollectFromResponses();
+            this.enabledTools = copyTools(rule.getEnabledTools());
+            this.matchInScopeUrls = rule.isMatchInScopeUrls();
+            this.urlMatchers = enabledMatchers(rule.getUrlMatchers());
+            this.requestPatterns = requestPatterns;
+            this.responsePatterns = responsePatterns;
+            this.postTransforms = transformsOrNull(rule.getPostTransforms());
+            this.postProcessingScript = scriptOrNull(rule.getPostProcessingScript());
+            this.gate = ContentGate.compile(rule.getContentFilter());
+        }
+
+        /**
+         * Build the collection plan for a single bucket, ignoring its enabled flag.
+         * Patterns that fail to compile are logged and left out.
+         *
+         * @param literals Builder collecting required literals for the shared prefilter, or null to always run every pattern
+         */
+        static CollectionPlan build(Bucket bucket, Logging logging, LiteralPrefilter.Builder literals) {
+            CollectionRule rule = bucket.getCollectionRule();
+            List<PatternPlan> requestPatterns = new ArrayList<>();
+            List<PatternPlan> responsePatterns = new ArrayList<>();
+
+            for (RegexPattern regexPattern : rule.getRegexPatterns()) {
+                if (!regexPattern.isEnabled()) continue;
+
+                PatternPlan patternPlan;
+                try {
+                    Pattern compiled = regexPattern.getCompiledPattern();
+                    MessageSection section = regexPattern.getSection() != null ? regexPattern.getSection() : MessageSection.WHOLE_MESSAGE;
+                    int literalId = -1;
+                    // The shared prefilter scans the whole message, so it only helps whole-message patterns
+                    if (literals != null && section == MessageSection.WHOLE_MESSAGE) {
+                        String literal = LiteralPrefilter.requiredLiteral(compiled.pattern(), compiled.flags());
+                        if (literal != null) {
+                            literalId = literals.add(literal);
+                        }
+                    }
+                    patternPlan = new PatternPlan(compiled, literalId, section,
+                            regexPattern.getSectionHeader(), regexPattern.getBodyPrefixBytes(),
+                            transformsOrNull(regexPattern.getPostTransforms()),
+                            scriptOrNull(regexPattern.getPostProcessingScript()));
+                } catch (Exception e) {
+                    logging.logToError("Error processing regex for bucket " + bucket.getName() + ": " + e.getMessage());
+                    continue;
+                }
+
+                if (rule.isCollectFromRequests() && regexPattern.isMatchRequests()) {
+                    requestPatterns.add(patternPlan);
+                }
+                if (rule.isCollectFromResponses() && regexPattern.isMatchResponses()) {
+                    responsePatterns.add(patternPlan);
+                }
+            }
+
+            return new CollectionPlan(bucket, rule,
+                    requestPatterns.toArray(new PatternPlan[0]),
+                    responsePatterns.toArray(new PatternPlan[0]));
+        }
+
+        boolean hasPatterns() {
+            return requestPatterns.length > 0 || responsePatterns.length > 0;
+        }
+
+        PatternPlan[] patternsFor(boolean isRequest) {
+            return isRequest ? requestPatterns : responsePatterns;
+        }
+    }
+
+    /**
+     * A compiled collection pattern, the part of the message it scans, and its optional
+     * post-processing transforms and script.
+     */
+    static final class PatternPlan {
+        final Pattern pattern;
+        // Id of the pattern's required literal in the plan's LiteralPrefilter, -1 to always run
+        final int literalId;
+        final MessageSection section;
+        final String sectionHeader;
+        final int bodyPrefixBytes;
+        final TransformStep[] postTransforms;
+        final String postProcessingScript;
+
+        PatternPlan(Pattern pattern, int literalId, MessageSection section, String sectionHeader, int bodyPrefixBytes,
+                    TransformStep[] postTransforms, String postProcessingScript) {
+            this.pattern = pattern;
+            this.literalId = literalId;
+            this.section = section;
+            this.sectionHeader = sectionHeader != null ? sectionHeader.trim() : "";
+            this.bodyPrefixBytes = Math.max(0, bodyPrefixBytes);
+            this.postTransforms = postTransforms;
+            this.postProcessingScript = postProcessingScript;
+        }
+    }
+
+    /**
+     * Precompiled replacement settings for one bucket.
+     */
+    static final class ReplacementPlan {
+        final Bucket bucket;
+        final boolean replaceInRequests;
+        final boolean replaceInResponses;
+        final Set<ToolType> enabledTools;
+        final boolean matchInScopeUrls;
+        final UrlMatcher.Compiled[] urlMatchers;
+        final RulePlanStep[] requestRules;
+        final RulePlanStep[] responseRules;
+        final LastTokenBehavior lastTokenBehavior;
+        final EmptyBucketBehavior emptyBucketBehavior;
+        final String staticValue;
+        final String generatorRegex;
+        final TransformStep[] preTransforms;
+        final String preReplacementScript;
+        final ContentGate gate;
+
+        private ReplacementPlan(Bucket bucket, ReplacementConfig config, RulePlanStep[] requestRules, RulePlanStep[] responseRules) {
+            this.bucket = bucket;
+            this.replaceInRequests = config.isReplaceInRequests();
+            this.replaceInResponses = config.isReplaceInResponses();
+            this.enabledTools = copyTools(config.getEnabledTools());
+            this.matchInScopeUrls = config.isMatchInScopeUrls();
+            this.urlMatchers = enabledMatchers(config.getUrlMatchers());
+            this.requestRules = requestRules;
+            this.responseRules = responseRules;
+            this.lastTokenBehavior = config.getLastTokenBehavior();
+            this.emptyBucketBehavior = config.getEmptyBucketBehavior();
+            this.staticValue = config.getStaticValue();
+            this.generatorRegex = config.getGeneratorRegex();
+            this.preTransforms = transformsOrNull(config.getPreTransforms());
+            this.preReplacementScript = scriptOrNull(config.getPreReplacementScript());
+            this.gate = ContentGate.compile(config.getContentFilter());
+        }
+
+        /**
+         * Build the replacement plan for a single bucket, or null if it has no enabled rules
+         * or replaces in neither direction.
+         */
+        static ReplacementPlan build(Bucket bucket, Logging logging) {
+            ReplacementConfig config = bucket.getReplacementConfig();
+            if (!config.isReplaceInRequests() && !config.isReplaceInResponses()) {
+                return null;
+            }
+
+            boolean hasEnabledRules = false;
+            List<RulePlanStep> requestRules = new ArrayList<>();
+            List<RulePlanStep> responseRules = new ArrayList<>();
+
+            for (ReplacementRule rule : config.getReplacementRules()) {
+                if (!rule.isEnabled()) continue;
+                hasEnabledRules = true;
+
+                Pattern compiledRegex = null;
+                if (rule.getLocation() == ReplacementLocation.GENERIC_REGEX) {
+                    if (rule.getRegexPattern() == null || rule.getRegexPattern().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        compiledRegex = util.PatternCache.compile(rule.getRegexPattern());
+                    } catch (Exception e) {
+                        logging.logToError("Error applying regex replacement: " + e.getMessage());
+                        continue;
+                    }
+                }
+
+                RulePlanStep step = new RulePlanStep(rule, compiledRegex,
+                        transformsOrNull(rule.getPreTransforms()), scriptOrNull(rule.getPreProcessingScript()));
+                if (rule.isApplyToRequests()) {
+                    requestRules.add(step);
+                }
+                if (rule.isApplyToResponses()) {
+                    responseRules.add(step);
+                }
+            }
+
+            if (!hasEnabledRules) {
+                return null;
+            }
+
+            return new ReplacementPlan(bucket, config,
+                    requestRules.toArray(new RulePlanStep[0]),
+                    responseRules.toArray(new RulePlanStep[0]));
+        }
+    }
+
+    /**
+     * A single enabled replacement rule with its regex (for GENERIC_REGEX) already compiled.
+     */
+    static final class RulePlanStep {
+        final ReplacementRule rule;
+        final ReplacementLocation location;
+        final String fieldName;
+        final Pattern regex;
+        final int regexGroup;
+        final boolean replaceAll;
+        final TransformStep[] preTransforms;
+        final String preProcessingScript;
+
+        RulePlanStep(ReplacementRule rule, Pattern regex, TransformStep[] preTransforms, String preProcessingScript) {
+            this.rule = rule;
+            this.location = rule.getLocation();
+            this.fieldName = rule.getFieldName();
+            this.regex = regex;
+            this.regexGroup = rule.getRegexGroup();
+            this.replaceAll = rule.isReplaceAll();
+            this.preTransforms = preTransforms;
+            this.preProcessingScript = preProcessingScript;
+        }
+    }
+}
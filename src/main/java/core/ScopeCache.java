@@ -0,0 +1,69 @@
+package core;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Bounded cache of Burp scope decisions, so repeated traffic to the same endpoints does not
+ * call into Burp's scope engine for every message. Scope rules only look at the protocol,
+ * host, port and path, so keys are URLs with the scheme and host lower-cased and the query
+ * and fragment dropped; Intruder or Scanner traffic that only varies the query shares one entry.
+ * Lookups don't lock. The cache must be cleared whenever the scope changes.
+ */
+final class ScopeCache {
+    private static final int MAX_ENTRIES = 4096;
+
+    private final Predicate<String> scope;
+    // Replaced rather than emptied by clear(), so a lookup that raced with a scope change
+    // stores its result in the discarded map instead of caching a stale decision
+    private volatile ConcurrentHashMap<String, Boolean> decisions = new ConcurrentHashMap<>();
+
+    ScopeCache(Predicate<String> scope) {
+        this.scope = scope;
+    }
+
+    boolean isInScope(String url) {
+        String key = normalize(url);
+        ConcurrentHashMap<String, Boolean> current = decisions;
+        Boolean cached = current.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Ask Burp about the same URL the decision is cached under
+        boolean inScope = scope.test(key);
+
+        if (current.size() >= MAX_ENTRIES) {
+            // Start over rather than track recency on the read path
+            current = new ConcurrentHashMap<>();
+            decisions = current;
+        }
+        current.put(key, inScope);
+        return inScope;
+    }
+
+    void clear() {
+        decisions = new ConcurrentHashMap<>();
+    }
+
+    static String normalize(String url) {
+        int end = url.length();
+        int schemeEnd = url.indexOf("://");
+        for (int i = schemeEnd < 0 ? 0 : schemeEnd + 3; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        if (schemeEnd < 0) {
+            return url.substring(0, end);
+        }
+        int hostEnd = url.indexOf('/', schemeEnd + 3);
+        if (hostEnd < 0 || hostEnd > end) {
+            hostEnd = end;
+        }
+        return url.substring(0, hostEnd).toLowerCase(Locale.ROOT) + url.substring(hostEnd, end);
+    }
+}
@@ -0,0 +1,284 @@
+package core;
+
+import burp.api.montoya.MontoyaApi;
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.persistence.PersistedObject;
+import model.Bucket;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Saves bucket tokens in the project file so they survive a Burp restart.
+ *
+ * Each bucket's tokens are stored under its id as one compressed, length-prefixed binary
+ * record. A background thread checks every few seconds which buckets changed since they were
+ * last written and rewrites only those, so token traffic never triggers a save directly.
+ * A bucket whose record is slow to encode is rewritten less often, keeping the saver's work
+ * to a small share of its time however large the bucket grows.
+ *
+ * On load the records are only attached to their buckets; each is decoded straight into its
+ * bucket, one token at a time, when that bucket's tokens are first used.
+ */
+public class TokenPersistence {
+    static final String TOKENS_KEY = "collector_tokens";
+    private static final long SAVE_INTERVAL_SECONDS = 5;
+    // A bucket that took t to write is not written again for this many times t
+    private static final long REWRITE_BACKOFF_FACTOR = 20;
+
+    // Record header: magic "CT" and a format version; everything after it is deflated
+    private static final byte MAGIC_0 = 'C';
+    private static final byte MAGIC_1 = 'T';
+    private static final byte FORMAT_VERSION = 1;
+
+    private final MontoyaApi api;
+    private final BucketManager bucketManager;
+    private final PersistedObject extensionData;
+    private final ScheduledExecutorService saver;
+
+    // Change count and id of each bucket at its last save, and when it may be written next; guarded by this
+    private final Map<Bucket, Long> savedChanges = new IdentityHashMap<>();
+    private final Map<Bucket, String> savedIds = new IdentityHashMap<>();
+    private final Map<Bucket, Long> nextSaveNanos = new IdentityHashMap<>();
+
+    public TokenPersistence(MontoyaApi api, BucketManager bucketManager) {
+        this.api = api;
+        this.bucketManager = bucketManager;
+        this.extensionData = api.persistence().extensionData();
+        this.saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Collector token saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Attach saved tokens to the buckets with matching ids, to be decoded when each bucket is
+     * first used, and drop records no bucket owns. Call once after the buckets are loaded.
+     */
+    public synchronized void restore() {
+        PersistedObject store = extensionData.getChildObject(TOKENS_KEY);
+        if (store == null) {
+            return;
+        }
+
+        // Unmatched records are only deleted once every bucket's id is stored. Until then a bucket
+        // may carry an id generated this session, and its tokens may sit under an id it never saved
+        PersistedObject configs = extensionData.getChildObject(PersistenceManager.BUCKET_CONFIGS_KEY);
+        boolean idsStored = configs != null;
+        Set<String> liveIds = new HashSet<>();
+        for (Bucket bucket : bucketManager.getBuckets()) {
+            liveIds.add(bucket.getId());
+            idsStored &= configs != null && configs.getString(bucket.getId()) != null;
+            ByteArray record = store.getByteArray(bucket.getId());
+            if (record == null) {
+                continue;
+            }
+            byte[] bytes = record.getBytes();
+            bucket.restoreTokensLater(sink -> {
+                try {
+                    int restored = readTokens(bytes, sink);
+                    api.logging().logToOutput("Restored " + restored + " tokens for bucket " + bucket.getName());
+                } catch (IOException e) {
+                    api.logging().logToError("Error restoring tokens for bucket " + bucket.getName() + ": " + e.getMessage());
+                }
+            });
+            // Restored tokens don't count as changes, so the record is not rewritten until the bucket changes
+            savedChanges.put(bucket, bucket.getTokenChangeCount());
+            savedIds.put(bucket, bucket.getId());
+        }
+
+        if (!idsStored) {
+            return;
+        }
+        for (String key : new ArrayList<>(store.byteArrayKeys())) {
+            if (!liveIds.contains(key)) {
+                store.deleteByteArray(key);
+            }
+        }
+    }
+
+    /**
+     * Start saving changed buckets in the background.
+     */
+    public void start() {
+        saver.scheduleWithFixedDelay(() -> saveChanged(false), SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the background saver and write any remaining changes. Called when the extension is unloaded.
+     */
+    public void shutdown() {
+        saver.shutdown();
+        try {
+            saver.awaitTermination(SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveChanged(true);
+    }
+
+    /**
+     * Write every bucket whose tokens changed since it was last saved, and drop records of
+     * removed buckets. Removes all saved tokens when token persistence is off.
+     *
+     * @param force Write changed buckets now, even ones still backing off after a slow write
+     */
+    public synchronized void saveChanged(boolean force) {
+        try {
+            if (!bucketManager.getGlobalControls().isPersistTokens()) {
+                if (!savedIds.isEmpty() || extensionData.getChildObject(TOKENS_KEY) != null) {
+                    clear();
+                }
+                return;
+            }
+
+            List<Bucket> buckets = bucketManager.getBuckets();
+            Set<Bucket> current = Collections.newSetFromMap(new IdentityHashMap<>());
+            current.addAll(buckets);
+            PersistedObject store = null;
+
+            // Forget buckets that were removed since they were saved
+            Set<String> liveIds = new HashSet<>();
+            for (Bucket bucket : buckets) {
+                liveIds.add(bucket.getId());
+            }
+            for (Iterator<Map.Entry<Bucket, String>> it = savedIds.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Bucket, String> saved = it.next();
+                if (current.contains(saved.getKey()) && saved.getKey().getId().equals(saved.getValue())) {
+                    continue;
+                }
+                if (!liveIds.contains(saved.getValue())) {
+                    store = store != null ? store : tokenStore();
+                    store.deleteByteArray(saved.getValue());
+                }
+                savedChanges.remove(saved.getKey());
+                nextSaveNanos.remove(saved.getKey());
+                it.remove();
+            }
+
+            for (Bucket bucket : buckets) {
+                long changes = bucket.getTokenChangeCount();
+                Long saved = savedChanges.get(bucket);
+                if (saved != null && saved == changes) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                Long next = nextSaveNanos.get(bucket);
+                if (!force && next != null && start - next < 0) {
+                    continue;
+                }
+                store = store != null ? store : tokenStore();
+                store.setByteArray(bucket.getId(), ByteArray.byteArray(writeTokens(bucket.getAllTokens())));
+                savedChanges.put(bucket, changes);
+                savedIds.put(bucket, bucket.getId());
+                long now = System.nanoTime();
+                nextSaveNanos.put(bucket, now + (now - start) * REWRITE_BACKOFF_FACTOR);
+            }
+        } catch (Exception e) {
+            api.logging().logToError("Error saving tokens: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remove all saved tokens.
+     */
+    public synchronized void clear() {
+        extensionData.deleteChildObject(TOKENS_KEY);
+        savedChanges.clear();
+        savedIds.clear();
+        nextSaveNanos.clear();
+    }
+
+    private PersistedObject tokenStore() {
+        PersistedObject store = extensionData.getChildObject(TOKENS_KEY);
+        if (store == null) {
+            extensionData.setChildObject(TOKENS_KEY, PersistedObject.persistedObject());
+            store = extensionData.getChildObject(TOKENS_KEY);
+        }
+        return store;
+    }
+
+    /**
+     * Encode tokens as a header followed by a deflated token count and length-prefixed UTF-8 tokens.
+     */
+    static byte[] writeTokens(List<String> tokens) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + tokens.size() * 16);
+        bytes.write(MAGIC_0);
+        bytes.write(MAGIC_1);
+        bytes.write(FORMAT_VERSION);
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 8192))) {
+            writeVarInt(out, tokens.size());
+            for (String token : tokens) {
+                byte[] encoded = token.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, encoded.length);
+                out.write(encoded);
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a record token by token into the sink, without building an intermediate list.
+     *
+     * @return Number of tokens read
+     */
+    static int readTokens(byte[] record, Consumer<String> sink) throws IOException {
+        if (record.length < 3 || record[0] != MAGIC_0 || record[1] != MAGIC_1) {
+            throw new IOException("Not a token record");
+        }
+        if (record[2] != FORMAT_VERSION) {
+            throw new IOException("Unsupported token record version " + record[2]);
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(record, 3, record.length - 3)), 8192))) {
+            int count = readVarInt(in);
+            byte[] buffer = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = readVarInt(in);
+                if (length > buffer.length) {
+                    buffer = new byte[Math.max(length, buffer.length * 2)];
+                }
+                in.readFully(buffer, 0, length);
+                sink.accept(new String(buffer, 0, length, StandardCharsets.UTF_8));
+            }
+            return count;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Corrupt token record");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Corrupt token record");
+    }
+}
@@ -1,25 +1,50 @@
 package model;
 
+import util.RingBuffer;
+
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 public class Bucket implements Serializable {
+    // Stable identity for saved configuration and tokens, kept across renames and reorders
+    private String id;
     private String name;
     private boolean enabled;
     private BucketType bucketType;
     private int maxSize; // -1 for infinite
     private BucketFullBehavior fullBehavior;
     private boolean uniqueOnly; // Only allow unique tokens
+    private boolean lockFree; // Lock-free token storage for high-concurrency buckets
     private CollectionRule collectionRule;
     private ReplacementConfig replacementConfig;
 
-    // Thread-safe token storage
-    private transient Deque<String> tokens;
+    // Preallocation for bounded buckets is capped so a huge maxSize doesn't reserve memory up front
+    private static final int MAX_PREALLOCATED_CAPACITY = 1 << 16;
+
+    // Thread-safe token storage (indexed ring buffer, guarded by lock)
+    private transient RingBuffer<String> tokens;
     private transient ReadWriteLock lock;
+    // Occurrence count per token, maintained only while uniqueOnly is on (null otherwise).
+    // Counts rather than a plain set because manual edits can still introduce duplicates.
+    private transient Map<String, Integer> uniqueIndex;
+    // Replaces tokens/uniqueIndex while lockFree is on (null otherwise)
+    private transient volatile LockFreeTokenStore concurrentTokens;
+    // Bumped on every token change so persistence can skip buckets that haven't changed
+    private transient LongAdder tokenChanges;
+    // Saved tokens still to be decoded into this bucket, run on first token access (null once done)
+    private transient volatile Consumer<Consumer<String>> pendingTokens;
+    // Bumped whenever all tokens are cleared, so work based on the old contents can be redone
+    private transient volatile long tokenClears;
+    // Bumped on every configuration edit so persistence only rewrites edited buckets; written by the UI thread only
+    private transient volatile long configChanges;
 
     public Bucket(String name) {
+        this.id = UUID.randomUUID().toString();
         this.name = name;
         this.enabled = true; // Enabled by default
         this.bucketType = BucketType.FIFO;
@@ -28,15 +53,40 @@ public class Bucket implements Serializable {
         this.uniqueOnly = false;
         this.collectionRule = new CollectionRule();
         this.replacementConfig = new ReplacementConfig();
-        this.tokens = new LinkedList<>();
+        this.tokens = new RingBuffer<>();
         this.lock = new ReentrantReadWriteLock();
+        this.tokenChanges = new LongAdder();
     }
 
     public void addToken(String token) {
+        ensureRestored();
+        add(token, true);
+    }
+
+    // Restored tokens are not counted as changes, since they are already saved
+    private void add(String token, boolean countChange) {
+        LockFreeTokenStore store = concurrentTokens;
+        if (store != null) {
+            store.add(token, maxSize, fullBehavior);
+            if (countChange) {
+                tokenChanges.increment();
+            }
+            return;
+        }
+
         lock.writeLock().lock();
         try {
+            // Storage mode may have switched while waiting for the lock
+            if (concurrentTokens != null) {
+                concurrentTokens.add(token, maxSize, fullBehavior);
+                if (countChange) {
+                    tokenChanges.increment();
+                }
+                return;
+            }
+
             // Check if unique only mode is enabled and token already exists
-            if (uniqueOnly && tokens.contains(token)) {
+            if (uniqueIndex != null && uniqueIndex.containsKey(token)) {
                 return; // Don't add duplicate token
             }
 
@@ -46,25 +96,40 @@ public class Bucket implements Serializable {
                         return; // Don't add the token
                     case REPLACE_LAST:
                         if (!tokens.isEmpty()) {
-                            tokens.removeLast();
+                            unindexToken(tokens.removeLast());
                         }
                         break;
                     case REPLACE_OLDEST:
                         if (!tokens.isEmpty()) {
-                            tokens.removeFirst();
+                            unindexToken(tokens.removeFirst());
                         }
                         break;
                 }
             }
             tokens.addLast(token);
+            indexToken(token);
+            if (countChange) {
+                tokenChanges.increment();
+            }
         } finally {
             lock.writeLock().unlock();
         }
     }
 
     public String getToken(boolean remove) {
-        lock.writeLock().lock();
+        ensureRestored();
+        LockFreeTokenStore store = concurrentTokens;
+        if (store != null) {
+            return getToken(store, remove);
+        }
+
+        // Peeking doesn't modify the buffer, so concurrent peeks can share the read lock
+        Lock tokenLock = remove ? lock.writeLock() : lock.readLock();
+        tokenLock.lock();
         try {
+            if (concurrentTokens != null) {
+                return getToken(concurrentTokens, remove);
+            }
             if (tokens.isEmpty()) {
                 return null;
             }
@@ -74,20 +139,44 @@ public class Bucket implements Serializable {
                 return tokens.getFirst();
             }
 
+            String token;
             switch (bucketType) {
                 case FIFO: // First In First Out - remove from front (queue behavior)
-                    return remove ? tokens.removeFirst() : tokens.getFirst();
+                    token = remove ? tokens.removeFirst() : tokens.getFirst();
+                    break;
                 case LIFO: // Last In First Out - remove from back (stack behavior)
-                    return remove ? tokens.removeLast() : tokens.getLast();
+                    token = remove ? tokens.removeLast() : tokens.getLast();
+                    break;
                 default:
-                    return remove ? tokens.removeFirst() : tokens.getFirst();
+                    token = remove ? tokens.removeFirst() : tokens.getFirst();
+                    break;
+            }
+            if (remove) {
+                unindexToken(token);
+                tokenChanges.increment();
             }
+            return token;
         } finally {
-            lock.writeLock().unlock();
+            tokenLock.unlock();
         }
     }
 
+    private String getToken(LockFreeTokenStore store, boolean remove) {
+        String token = store.get(remove, bucketType == BucketType.LIFO,
+                replacementConfig.getLastTokenBehavior() == LastTokenBehavior.KEEP_IN_BUCKET);
+        if (remove && token != null) {
+            tokenChanges.increment();
+        }
+        return token;
+    }
+
     public int getTokenCount() {
+        ensureRestored();
+        LockFreeTokenStore store = concurrentTokens;
+        if (store != null) {
+            return store.size();
+        }
+
         lock.readLock().lock();
         try {
             return tokens.size();
@@ -97,124 +186,306 @@ public class Bucket implements Serializable {
     }
 
     public List<String> getAllTokens() {
+        ensureRestored();
+        LockFreeTokenStore store = concurrentTokens;
+        if (store != null) {
+            return store.snapshot();
+        }
+
         lock.readLock().lock();
         try {
-            return new ArrayList<>(tokens);
+            return tokens.toList();
         } finally {
             lock.readLock().unlock();
         }
     }
 
     public void clearTokens() {
+        // Saved tokens that were never loaded are cleared by not loading them
+        pendingTokens = null;
         lock.writeLock().lock();
         try {
+            if (concurrentTokens != null) {
+                concurrentTokens.clear();
+                return;
+            }
             tokens.clear();
+            preallocate();
+            if (uniqueIndex != null) {
+                uniqueIndex.clear();
+            }
         } finally {
+            tokenChanges.increment();
+            tokenClears++;
             lock.writeLock().unlock();
         }
     }
 
     public void removeTokenAt(int index) {
+        ensureRestored();
         lock.writeLock().lock();
         try {
+            if (concurrentTokens != null) {
+                editConcurrentTokens(tokenList -> {
+                    if (index >= 0 && index < tokenList.size()) {
+                        tokenList.remove(index);
+                    }
+                });
+                return;
+            }
             if (index >= 0 && index < tokens.size()) {
-                List<String> tokenList = new ArrayList<>(tokens);
-                tokenList.remove(index);
-                tokens.clear();
-                tokens.addAll(tokenList);
+                unindexToken(tokens.remove(index));
             }
         } finally {
+            tokenChanges.increment();
             lock.writeLock().unlock();
         }
     }
 
     public void setTokenAt(int index, String newValue) {
+        ensureRestored();
         lock.writeLock().lock();
         try {
+            if (concurrentTokens != null) {
+                editConcurrentTokens(tokenList -> {
+                    if (index >= 0 && index < tokenList.size()) {
+                        tokenList.set(index, newValue);
+                    }
+                });
+                return;
+            }
             if (index >= 0 && index < tokens.size()) {
-                List<String> tokenList = new ArrayList<>(tokens);
-                tokenList.set(index, newValue);
-                tokens.clear();
-                tokens.addAll(tokenList);
+                unindexToken(tokens.set(index, newValue));
+                indexToken(newValue);
             }
         } finally {
+            tokenChanges.increment();
             lock.writeLock().unlock();
         }
     }
 
     public void insertTokenAt(int index, String token) {
+        ensureRestored();
         lock.writeLock().lock();
         try {
-            List<String> tokenList = new ArrayList<>(tokens);
-            if (index >= 0 && index <= tokenList.size()) {
-                tokenList.add(index, token);
+            if (concurrentTokens != null) {
+                editConcurrentTokens(tokenList -> {
+                    if (index >= 0 && index <= tokenList.size()) {
+                        tokenList.add(index, token);
+                    } else {
+                        tokenList.add(token);
+                    }
+                });
+                return;
+            }
+            if (index >= 0 && index <= tokens.size()) {
+                tokens.add(index, token);
             } else {
-                tokenList.add(token);
+                tokens.addLast(token);
             }
-            tokens.clear();
-            tokens.addAll(tokenList);
+            indexToken(token);
         } finally {
+            tokenChanges.increment();
             lock.writeLock().unlock();
         }
     }
 
     public void moveToken(int fromIndex, int toIndex) {
+        ensureRestored();
         lock.writeLock().lock();
         try {
+            if (concurrentTokens != null) {
+                editConcurrentTokens(tokenList -> {
+                    if (fromIndex >= 0 && fromIndex < tokenList.size() && toIndex >= 0 && toIndex < tokenList.size()) {
+                        tokenList.add(toIndex, tokenList.remove(fromIndex));
+                    }
+                });
+                return;
+            }
             if (fromIndex >= 0 && fromIndex < tokens.size() && toIndex >= 0 && toIndex < tokens.size()) {
-                List<String> tokenList = new ArrayList<>(tokens);
-                String token = tokenList.remove(fromIndex);
-                tokenList.add(toIndex, token);
-                tokens.clear();
-                tokens.addAll(tokenList);
+                tokens.move(fromIndex, toIndex);
             }
         } finally {
+            tokenChanges.increment();
             lock.writeLock().unlock();
         }
     }
 
     public int deduplicateTokens() {
+        ensureRestored();
         lock.writeLock().lock();
         try {
-            List<String> tokenList = new ArrayList<>(tokens);
-            List<String> uniqueTokens = new ArrayList<>();
-            java.util.Set<String> seen = new java.util.LinkedHashSet<>();
-
-            for (String token : tokenList) {
-                if (seen.add(token)) {
-                    uniqueTokens.add(token);
+            if (concurrentTokens != null) {
+                List<String> tokenList = concurrentTokens.snapshot();
+                List<String> uniqueTokens = new ArrayList<>(new LinkedHashSet<>(tokenList));
+                if (uniqueTokens.size() < tokenList.size()) {
+                    concurrentTokens.replaceAll(uniqueTokens);
                 }
+                return tokenList.size() - uniqueTokens.size();
             }
 
-            int removedCount = tokenList.size() - uniqueTokens.size();
-            tokens.clear();
-            tokens.addAll(uniqueTokens);
-            return removedCount;
+            Map<String, Integer> counts = uniqueIndex != null ? uniqueIndex : countTokens();
+            int duplicateCount = tokens.size() - counts.size();
+            if (duplicateCount == 0) {
+                return 0;
+            }
+
+            // Keep the first occurrence of each duplicated token and compact the rest away in place;
+            // only tokens that actually have duplicates are tracked
+            Set<String> kept = new HashSet<>();
+            return tokens.removeIf(token -> {
+                if (counts.get(token) > 1 && !kept.add(token)) {
+                    counts.merge(token, -1, Integer::sum);
+                    return true;
+                }
+                return false;
+            });
         } finally {
+            tokenChanges.increment();
             lock.writeLock().unlock();
         }
     }
 
     public boolean hasToken(String token) {
+        ensureRestored();
+        LockFreeTokenStore store = concurrentTokens;
+        if (store != null) {
+            return store.contains(token);
+        }
+
         lock.readLock().lock();
         try {
-            return tokens.contains(token);
+            return uniqueIndex != null ? uniqueIndex.containsKey(token) : tokens.contains(token);
         } finally {
             lock.readLock().unlock();
         }
     }
 
+    /**
+     * Load saved tokens only when this bucket's tokens are first used, so restoring a project
+     * doesn't decode every bucket up front. The source is handed a sink that adds each token
+     * like addToken, without counting it as a change.
+     */
+    public void restoreTokensLater(Consumer<Consumer<String>> source) {
+        pendingTokens = source;
+    }
+
+    // Token access waits here while another thread runs the pending restore
+    private void ensureRestored() {
+        if (pendingTokens == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Consumer<Consumer<String>> source = pendingTokens;
+            if (source != null) {
+                source.accept(token -> add(token, false));
+                pendingTokens = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // UI edits in lock-free mode work on a snapshot that then replaces the contents.
+    // Must be called with the write lock held, which serializes UI edits but not traffic.
+    private void editConcurrentTokens(Consumer<List<String>> edit) {
+        List<String> tokenList = concurrentTokens.snapshot();
+        edit.accept(tokenList);
+        concurrentTokens.replaceAll(tokenList);
+    }
+
+    // Reserve room for bounded buckets so they never grow while collecting
+    private void preallocate() {
+        if (maxSize > 0 && !lockFree) {
+            tokens.ensureCapacity(Math.min(maxSize, MAX_PREALLOCATED_CAPACITY));
+        }
+    }
+
+    // Must be called with the write lock held
+    private void indexToken(String token) {
+        if (uniqueIndex != null) {
+            uniqueIndex.merge(token, 1, Integer::sum);
+        }
+    }
+
+    // Must be called with the write lock held
+    private void unindexToken(String token) {
+        if (uniqueIndex != null) {
+            uniqueIndex.computeIfPresent(token, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    // Must be called with a lock held
+    private Map<String, Integer> countTokens() {
+        Map<String, Integer> counts = new HashMap<>(Math.max(16, tokens.size() * 4 / 3 + 1));
+        for (String token : tokens) {
+            counts.merge(token, 1, Integer::sum);
+        }
+        return counts;
+    }
+
     // Called after deserialization to reinitialize transient fields
     public void initializeTransientFields() {
+        if (id == null) {
+            // Saved before buckets had ids
+            id = UUID.randomUUID().toString();
+        }
         if (tokens == null) {
-            tokens = new LinkedList<>();
+            tokens = new RingBuffer<>();
+            preallocate();
         }
         if (lock == null) {
             lock = new ReentrantReadWriteLock();
         }
+        if (tokenChanges == null) {
+            tokenChanges = new LongAdder();
+        }
+        if (lockFree && concurrentTokens == null) {
+            LockFreeTokenStore store = new LockFreeTokenStore();
+            store.setUniqueIndexEnabled(uniqueOnly);
+            concurrentTokens = store;
+        } else if (!lockFree && uniqueOnly && uniqueIndex == null) {
+            uniqueIndex = countTokens();
+        }
+    }
+
+    /**
+     * Number of token changes so far. Only useful for telling whether the tokens changed since an earlier call.
+     */
+    public long getTokenChangeCount() {
+        return tokenChanges.sum();
+    }
+
+    /**
+     * Number of times all tokens were cleared. Only useful for telling whether they were cleared since an earlier call.
+     */
+    public long getTokenClearCount() {
+        return tokenClears;
+    }
+
+    /**
+     * Record that the bucket's configuration was edited, so it is saved again.
+     */
+    public void markConfigChanged() {
+        configChanges++;
+    }
+
+    /**
+     * Number of configuration edits so far. Only useful for telling whether the configuration changed since an earlier call.
+     */
+    public long getConfigChangeCount() {
+        return configChanges;
     }
 
     // Getters and setters
+    public String getId() { return id; }
+
+    /**
+     * Give the bucket a fresh id, for an imported or loaded bucket whose id is already taken.
+     */
+    public void assignNewId() { this.id = UUID.randomUUID().toString(); }
+
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
 
@@ -225,13 +496,70 @@ public class Bucket implements Serializable {
     public void setBucketType(BucketType bucketType) { this.bucketType = bucketType; }
 
     public int getMaxSize() { return maxSize; }
-    public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+    public void setMaxSize(int maxSize) {
+        lock.writeLock().lock();
+        try {
+            this.maxSize = maxSize;
+            preallocate();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
     public BucketFullBehavior getFullBehavior() { return fullBehavior; }
     public void setFullBehavior(BucketFullBehavior fullBehavior) { this.fullBehavior = fullBehavior; }
 
     public boolean isUniqueOnly() { return uniqueOnly; }
-    public void setUniqueOnly(boolean uniqueOnly) { this.uniqueOnly = uniqueOnly; }
+    public void setUniqueOnly(boolean uniqueOnly) {
+        lock.writeLock().lock();
+        try {
+            this.uniqueOnly = uniqueOnly;
+            if (concurrentTokens != null) {
+                concurrentTokens.setUniqueIndexEnabled(uniqueOnly);
+                return;
+            }
+            // Build the index when unique mode is switched on, drop it when switched off
+            if (!uniqueOnly) {
+                uniqueIndex = null;
+            } else if (uniqueIndex == null) {
+                uniqueIndex = countTokens();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean isLockFree() { return lockFree; }
+    public void setLockFree(boolean lockFree) {
+        lock.writeLock().lock();
+        try {
+            if (this.lockFree == lockFree) {
+                return;
+            }
+            this.lockFree = lockFree;
+
+            // Move the existing tokens across; writers blocked on the lock re-check the mode
+            if (lockFree) {
+                LockFreeTokenStore store = new LockFreeTokenStore();
+                store.setUniqueIndexEnabled(uniqueOnly);
+                store.replaceAll(tokens.toList());
+                tokens.clear();
+                uniqueIndex = null;
+                concurrentTokens = store;
+            } else {
+                LockFreeTokenStore store = concurrentTokens;
+                concurrentTokens = null;
+                if (store != null) {
+                    for (String token : store.snapshot()) {
+                        tokens.addLast(token);
+                    }
+                }
+                uniqueIndex = uniqueOnly ? countTokens() : null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
     public CollectionRule getCollectionRule() { return collectionRule; }
     public void setCollectionRule(CollectionRule collectionRule) { this.collectionRule = collectionRule; }
@@ -14,7 +14,9 @@ public class CollectionRule implements Serializable {
     private boolean matchInScopeUrls;
     private List<UrlMatcher> urlMatchers;
     private List<RegexPattern> regexPatterns;
+    private List<TransformStep> postTransforms;
     private String postProcessingScript;
+    private ContentFilter contentFilter;
 
     public CollectionRule() {
         this.collectFromRequests = false;
@@ -23,7 +25,9 @@ public class CollectionRule implements Serializable {
         this.matchInScopeUrls = false;
         this.urlMatchers = new ArrayList<>();
         this.regexPatterns = new ArrayList<>();
+        this.postTransforms = new ArrayList<>();
         this.postProcessingScript = "";
+        this.contentFilter = new ContentFilter();
     }
 
     // Getters and setters
@@ -45,6 +49,12 @@ public class CollectionRule implements Serializable {
     public List<RegexPattern> getRegexPatterns() { return regexPatterns; }
     public void setRegexPatterns(List<RegexPattern> regexPatterns) { this.regexPatterns = regexPatterns; }
 
+    public List<TransformStep> getPostTransforms() { return postTransforms; }
+    public void setPostTransforms(List<TransformStep> postTransforms) { this.postTransforms = postTransforms; }
+
     public String getPostProcessingScript() { return postProcessingScript; }
     public void setPostProcessingScript(String postProcessingScript) { this.postProcessingScript = postProcessingScript; }
+
+    public ContentFilter getContentFilter() { return contentFilter; }
+    public void setContentFilter(ContentFilter contentFilter) { this.contentFilter = contentFilter; }
 }
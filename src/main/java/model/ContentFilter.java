@@ -0,0 +1,58 @@
+package model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cheap checks run on a message before any regex: a body size limit, MIME type allow/deny
+ * lists and a headers-only mode. Used per bucket for collection and replacement, and globally.
+ *
+ * MIME entries are either media types from the Content-Type header ("image/png", "image/*")
+ * or Burp MIME type names, where a prefix matches a whole family ("IMAGE" matches IMAGE_PNG,
+ * "FONT" matches FONT_WOFF2).
+ */
+public class ContentFilter implements Serializable {
+    private int maxBodySizeKb; // 0 = no limit
+    private List<String> allowedMimeTypes;
+    private List<String> deniedMimeTypes;
+    private boolean headersOnly; // Only look at the start line and headers, never the body
+
+    public ContentFilter() {
+        this.maxBodySizeKb = 0;
+        this.allowedMimeTypes = new ArrayList<>();
+        this.deniedMimeTypes = new ArrayList<>();
+        this.headersOnly = false;
+    }
+
+    /**
+     * True if every setting is at its default, so the filter never skips a message.
+     */
+    public boolean isEmpty() {
+        return maxBodySizeKb <= 0 && !headersOnly
+                && (allowedMimeTypes == null || allowedMimeTypes.isEmpty())
+                && (deniedMimeTypes == null || deniedMimeTypes.isEmpty());
+    }
+
+    public ContentFilter copy() {
+        ContentFilter copy = new ContentFilter();
+        copy.setMaxBodySizeKb(maxBodySizeKb);
+        copy.setAllowedMimeTypes(allowedMimeTypes != null ? new ArrayList<>(allowedMimeTypes) : new ArrayList<>());
+        copy.setDeniedMimeTypes(deniedMimeTypes != null ? new ArrayList<>(deniedMimeTypes) : new ArrayList<>());
+        copy.setHeadersOnly(headersOnly);
+        return copy;
+    }
+
+    // Getters and setters
+    public int getMaxBodySizeKb() { return maxBodySizeKb; }
+    public void setMaxBodySizeKb(int maxBodySizeKb) { this.maxBodySizeKb = maxBodySizeKb; }
+
+    public List<String> getAllowedMimeTypes() { return allowedMimeTypes; }
+    public void setAllowedMimeTypes(List<String> allowedMimeTypes) { this.allowedMimeTypes = allowedMimeTypes; }
+
+    public List<String> getDeniedMimeTypes() { return deniedMimeTypes; }
+    public void setDeniedMimeTypes(List<String> deniedMimeTypes) { this.deniedMimeTypes = deniedMimeTypes; }
+
+    public boolean isHeadersOnly() { return headersOnly; }
+    public void setHeadersOnly(boolean headersOnly) { this.headersOnly = headersOnly; }
+}
@@ -11,9 +11,25 @@ public class GlobalControls implements Serializable {
     private boolean bucketsEnabled;
     private Set<ToolType> collectionEnabledTools;
     private Set<ToolType> replacementEnabledTools;
+    private boolean asyncCollectionEnabled; // Collect on background workers instead of the HTTP thread
+    private int asyncQueueCapacity;
+    private QueueFullBehavior asyncQueueFullBehavior;
+    private boolean flushBeforeReplacement; // Wait for pending collections before taking a token
+    private int scriptOptimizationLevel; // -1 = interpreted, 0-9 = compile hot scripts to bytecode
+    private ContentFilter collectionFilter; // Applied to every bucket in addition to its own filter
+    private ContentFilter replacementFilter;
+    private boolean persistTokens; // Save bucket tokens in the project file
 
     public GlobalControls() {
         this.bucketsEnabled = true; // Enabled by default
+        this.asyncCollectionEnabled = false;
+        this.asyncQueueCapacity = 1000;
+        this.asyncQueueFullBehavior = QueueFullBehavior.RUN_INLINE;
+        this.flushBeforeReplacement = true;
+        this.scriptOptimizationLevel = -1;
+        this.collectionFilter = new ContentFilter();
+        this.replacementFilter = new ContentFilter();
+        this.persistTokens = true;
         this.collectionEnabledTools = new HashSet<>();
         this.replacementEnabledTools = new HashSet<>();
 
@@ -82,4 +98,68 @@ public class GlobalControls implements Serializable {
     public void setBucketsEnabled(boolean bucketsEnabled) {
         this.bucketsEnabled = bucketsEnabled;
     }
+
+    public boolean isAsyncCollectionEnabled() {
+        return asyncCollectionEnabled;
+    }
+
+    public void setAsyncCollectionEnabled(boolean asyncCollectionEnabled) {
+        this.asyncCollectionEnabled = asyncCollectionEnabled;
+    }
+
+    public int getAsyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+        this.asyncQueueCapacity = asyncQueueCapacity;
+    }
+
+    public QueueFullBehavior getAsyncQueueFullBehavior() {
+        return asyncQueueFullBehavior;
+    }
+
+    public void setAsyncQueueFullBehavior(QueueFullBehavior asyncQueueFullBehavior) {
+        this.asyncQueueFullBehavior = asyncQueueFullBehavior;
+    }
+
+    public boolean isFlushBeforeReplacement() {
+        return flushBeforeReplacement;
+    }
+
+    public void setFlushBeforeReplacement(boolean flushBeforeReplacement) {
+        this.flushBeforeReplacement = flushBeforeReplacement;
+    }
+
+    public boolean isPersistTokens() {
+        return persistTokens;
+    }
+
+    public void setPersistTokens(boolean persistTokens) {
+        this.persistTokens = persistTokens;
+    }
+
+    public int getScriptOptimizationLevel() {
+        return scriptOptimizationLevel;
+    }
+
+    public void setScriptOptimizationLevel(int scriptOptimizationLevel) {
+        this.scriptOptimizationLevel = scriptOptimizationLevel;
+    }
+
+    public ContentFilter getCollectionFilter() {
+        return collectionFilter;
+    }
+
+    public void setCollectionFilter(ContentFilter collectionFilter) {
+        this.collectionFilter = collectionFilter;
+    }
+
+    public ContentFilter getReplacementFilter() {
+        return replacementFilter;
+    }
+
+    public void setReplacementFilter(ContentFilter replacementFilter) {
+        this.replacementFilter = replacementFilter;
+    }
 }
@@ -0,0 +1,175 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free multi-producer/multi-consumer token storage for buckets in lock-free mode.
+ * Collection and replacement threads add and take tokens without any shared lock; the
+ * size is tracked with an atomic counter so maxSize and last-token behaviour are still
+ * enforced exactly. Bulk edits (used by the UI) are not atomic with respect to concurrent
+ * traffic, which is the trade-off for not locking the hot path.
+ */
+public class LockFreeTokenStore {
+    private final ConcurrentLinkedDeque<String> tokens;
+    // Number of tokens reserved or stored; incremented before an add and decremented before a take
+    private final AtomicInteger size;
+    // Occurrence count per token while uniqueOnly is on, null otherwise
+    private volatile ConcurrentHashMap<String, Integer> uniqueIndex;
+
+    public LockFreeTokenStore() {
+        this.tokens = new ConcurrentLinkedDeque<>();
+        this.size = new AtomicInteger();
+    }
+
+    /**
+     * Add a token, applying the bucket's uniqueness and full-bucket rules.
+     */
+    public void add(String token, int maxSize, BucketFullBehavior fullBehavior) {
+        ConcurrentHashMap<String, Integer> index = uniqueIndex;
+        // Claim the token first so two threads can't both add the same value
+        if (index != null && index.putIfAbsent(token, 1) != null) {
+            return;
+        }
+
+        if (maxSize <= 0) {
+            size.incrementAndGet();
+            tokens.addLast(token);
+            return;
+        }
+
+        while (true) {
+            int current = size.get();
+            if (current < maxSize) {
+                if (size.compareAndSet(current, current + 1)) {
+                    tokens.addLast(token);
+                    return;
+                }
+                continue;
+            }
+
+            String evicted;
+            switch (fullBehavior) {
+                case REPLACE_LAST:
+                    evicted = tokens.pollLast();
+                    break;
+                case REPLACE_OLDEST:
+                    evicted = tokens.pollFirst();
+                    break;
+                case REJECT_NEW:
+                default:
+                    unindex(index, token);
+                    return;
+            }
+
+            if (evicted != null) {
+                // Swap in place: the evicted slot is reused, so size is unchanged
+                unindex(index, evicted);
+                tokens.addLast(token);
+                return;
+            }
+            // Full by count but a concurrent add hasn't linked its node yet
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Peek or take a token from the head (FIFO) or tail (LIFO).
+     *
+     * @param keepLastToken Leave the final token in place instead of removing it
+     * @return The token, or null if the store is empty
+     */
+    public String get(boolean remove, boolean fromTail, boolean keepLastToken) {
+        if (!remove) {
+            return fromTail ? tokens.peekLast() : tokens.peekFirst();
+        }
+
+        while (true) {
+            int current = size.get();
+            if (current <= 0) {
+                return null;
+            }
+            if (current == 1 && keepLastToken) {
+                String token = tokens.peekFirst();
+                if (token != null) {
+                    return token;
+                }
+            } else if (size.compareAndSet(current, current - 1)) {
+                String token = fromTail ? tokens.pollLast() : tokens.pollFirst();
+                if (token != null) {
+                    unindex(uniqueIndex, token);
+                    return token;
+                }
+                // Reserved by an add that hasn't linked its node yet; give the slot back and retry
+                size.incrementAndGet();
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    public boolean contains(String token) {
+        ConcurrentHashMap<String, Integer> index = uniqueIndex;
+        return index != null ? index.containsKey(token) : tokens.contains(token);
+    }
+
+    /**
+     * Weakly consistent snapshot, in order from head to tail.
+     */
+    public List<String> snapshot() {
+        return new ArrayList<>(tokens);
+    }
+
+    public void clear() {
+        replaceAll(List.of());
+    }
+
+    /**
+     * Replace the contents with the given tokens, e.g. after a UI edit of a snapshot.
+     * Tokens added concurrently between the snapshot and this call may be lost.
+     */
+    public void replaceAll(List<String> newTokens) {
+        String token;
+        while ((token = tokens.pollFirst()) != null) {
+            size.decrementAndGet();
+            unindex(uniqueIndex, token);
+        }
+        for (String newToken : newTokens) {
+            size.incrementAndGet();
+            tokens.addLast(newToken);
+            ConcurrentHashMap<String, Integer> index = uniqueIndex;
+            if (index != null) {
+                index.merge(newToken, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Turn the uniqueness index on or off, building it from the current contents.
+     */
+    public void setUniqueIndexEnabled(boolean enabled) {
+        if (!enabled) {
+            uniqueIndex = null;
+            return;
+        }
+        if (uniqueIndex == null) {
+            ConcurrentHashMap<String, Integer> index = new ConcurrentHashMap<>();
+            for (String token : tokens) {
+                index.merge(token, 1, Integer::sum);
+            }
+            uniqueIndex = index;
+        }
+    }
+
+    private static void unindex(ConcurrentHashMap<String, Integer> index, String token) {
+        if (index != null) {
+            index.computeIfPresent(token, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+}
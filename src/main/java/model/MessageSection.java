@@ -0,0 +1,28 @@
+package model;
+
+/**
+ * Part of an HTTP message a collection pattern is run against.
+ */
+public enum MessageSection {
+    WHOLE_MESSAGE("Whole message"),
+    START_LINE("Request URL / status line"),
+    HEADERS("All headers"),
+    HEADER("Specific header value"),
+    BODY("Body"),
+    BODY_PREFIX("Start of body");
+
+    private final String description;
+
+    MessageSection(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
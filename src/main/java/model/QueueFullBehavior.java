@@ -0,0 +1,22 @@
+package model;
+
+public enum QueueFullBehavior {
+    DROP("Drop the message"),
+    BLOCK("Block until space is available"),
+    RUN_INLINE("Collect on the HTTP thread");
+
+    private final String description;
+
+    QueueFullBehavior(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
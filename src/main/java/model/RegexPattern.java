@@ -1,37 +1,57 @@
 package model;
 
+import util.PatternCache;
+
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 public class RegexPattern implements Serializable {
     private String pattern;
     private String comment;
+    private List<TransformStep> postTransforms;
     private String postProcessingScript;
     private boolean enabled;
     private boolean dotallMode;
     private boolean multilineMode;
     private boolean matchRequests;
     private boolean matchResponses;
+    private MessageSection section; // Part of the message to scan
+    private String sectionHeader; // Header name for MessageSection.HEADER
+    private int bodyPrefixBytes; // Bytes of body to scan for MessageSection.BODY_PREFIX
+
+    // Compiled form of pattern + flags, rebuilt when it no longer matches them
+    private transient volatile Pattern compiledPattern;
 
     public RegexPattern() {
         this.pattern = "";
         this.comment = "";
+        this.postTransforms = new ArrayList<>();
         this.postProcessingScript = "";
         this.enabled = true;
         this.dotallMode = false;
         this.multilineMode = false;
         this.matchRequests = true;
         this.matchResponses = true;
+        this.section = MessageSection.WHOLE_MESSAGE;
+        this.sectionHeader = "";
+        this.bodyPrefixBytes = 8192;
     }
 
     public RegexPattern(String pattern, String comment) {
         this.pattern = pattern;
         this.comment = comment;
+        this.postTransforms = new ArrayList<>();
         this.postProcessingScript = "";
         this.enabled = true;
         this.dotallMode = false;
         this.multilineMode = false;
         this.matchRequests = true;
         this.matchResponses = true;
+        this.section = MessageSection.WHOLE_MESSAGE;
+        this.sectionHeader = "";
+        this.bodyPrefixBytes = 8192;
     }
 
     @Override
@@ -42,13 +62,60 @@ public class RegexPattern implements Serializable {
         return pattern;
     }
 
+    /**
+     * Build the Pattern flags for this pattern's DOTALL/MULTILINE settings.
+     */
+    public int getFlags() {
+        int flags = 0;
+        if (dotallMode) {
+            flags |= Pattern.DOTALL;
+        }
+        if (multilineMode) {
+            flags |= Pattern.MULTILINE;
+        }
+        return flags;
+    }
+
+    /**
+     * Get the compiled pattern, compiling it through the shared PatternCache on first use.
+     * A Pattern carries its own source and flags, so a cached one is only reused while it
+     * still matches the current settings, even if an edit races with this call.
+     *
+     * @throws java.util.regex.PatternSyntaxException If the pattern is invalid
+     */
+    public Pattern getCompiledPattern() {
+        // Read the settings once, so the result is built from exactly the values it is checked against
+        String source = pattern;
+        int flags = getFlags();
+        Pattern compiled = compiledPattern;
+        if (compiled == null || compiled.flags() != flags || !compiled.pattern().equals(source)) {
+            compiled = PatternCache.compile(source, flags);
+            compiledPattern = compiled;
+        }
+        return compiled;
+    }
+
+    private void invalidateCompiledPattern() {
+        Pattern compiled = compiledPattern;
+        if (compiled != null) {
+            PatternCache.invalidate(compiled.pattern(), compiled.flags());
+            compiledPattern = null;
+        }
+    }
+
     // Getters and setters
     public String getPattern() { return pattern; }
-    public void setPattern(String pattern) { this.pattern = pattern; }
+    public void setPattern(String pattern) {
+        invalidateCompiledPattern();
+        this.pattern = pattern;
+    }
 
     public String getComment() { return comment; }
     public void setComment(String comment) { this.comment = comment; }
 
+    public List<TransformStep> getPostTransforms() { return postTransforms; }
+    public void setPostTransforms(List<TransformStep> postTransforms) { this.postTransforms = postTransforms; }
+
     public String getPostProcessingScript() { return postProcessingScript; }
     public void setPostProcessingScript(String postProcessingScript) { this.postProcessingScript = postProcessingScript; }
 
@@ -56,14 +123,29 @@ public class RegexPattern implements Serializable {
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
 
     public boolean isDotallMode() { return dotallMode; }
-    public void setDotallMode(boolean dotallMode) { this.dotallMode = dotallMode; }
+    public void setDotallMode(boolean dotallMode) {
+        invalidateCompiledPattern();
+        this.dotallMode = dotallMode;
+    }
 
     public boolean isMultilineMode() { return multilineMode; }
-    public void setMultilineMode(boolean multilineMode) { this.multilineMode = multilineMode; }
+    public void setMultilineMode(boolean multilineMode) {
+        invalidateCompiledPattern();
+        this.multilineMode = multilineMode;
+    }
 
     public boolean isMatchRequests() { return matchRequests; }
     public void setMatchRequests(boolean matchRequests) { this.matchRequests = matchRequests; }
 
     public boolean isMatchResponses() { return matchResponses; }
     public void setMatchResponses(boolean matchResponses) { this.matchResponses = matchResponses; }
+
+    public MessageSection getSection() { return section; }
+    public void setSection(MessageSection section) { this.section = section; }
+
+    public String getSectionHeader() { return sectionHeader; }
+    public void setSectionHeader(String sectionHeader) { this.sectionHeader = sectionHeader; }
+
+    public int getBodyPrefixBytes() { return bodyPrefixBytes; }
+    public void setBodyPrefixBytes(int bodyPrefixBytes) { this.bodyPrefixBytes = bodyPrefixBytes; }
 }
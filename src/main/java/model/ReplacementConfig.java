@@ -18,7 +18,9 @@ public class ReplacementConfig implements Serializable {
     private EmptyBucketBehavior emptyBucketBehavior;
     private String staticValue;
     private String generatorRegex;
+    private List<TransformStep> preTransforms;
     private String preReplacementScript;
+    private ContentFilter contentFilter;
 
     public ReplacementConfig() {
         this.replaceInRequests = false;
@@ -31,7 +33,9 @@ public class ReplacementConfig implements Serializable {
         this.emptyBucketBehavior = EmptyBucketBehavior.DO_NOTHING;
         this.staticValue = "";
         this.generatorRegex = "";
+        this.preTransforms = new ArrayList<>();
         this.preReplacementScript = "";
+        this.contentFilter = new ContentFilter();
     }
 
     // Getters and setters
@@ -65,6 +69,12 @@ public class ReplacementConfig implements Serializable {
     public String getGeneratorRegex() { return generatorRegex; }
     public void setGeneratorRegex(String generatorRegex) { this.generatorRegex = generatorRegex; }
 
+    public List<TransformStep> getPreTransforms() { return preTransforms; }
+    public void setPreTransforms(List<TransformStep> preTransforms) { this.preTransforms = preTransforms; }
+
     public String getPreReplacementScript() { return preReplacementScript; }
     public void setPreReplacementScript(String preReplacementScript) { this.preReplacementScript = preReplacementScript; }
+
+    public ContentFilter getContentFilter() { return contentFilter; }
+    public void setContentFilter(ContentFilter contentFilter) { this.contentFilter = contentFilter; }
 }
@@ -1,6 +1,8 @@
 package model;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ReplacementRule implements Serializable {
     private ReplacementLocation location;
@@ -8,6 +10,7 @@ public class ReplacementRule implements Serializable {
     private String regexPattern; // For Generic Regex
     private int regexGroup; // Which group to replace in regex
     private boolean replaceAll; // true = replaceAll, false = replaceFirst
+    private List<TransformStep> preTransforms;
     private String preProcessingScript;
     private boolean enabled;
     private boolean applyToRequests;
@@ -19,6 +22,7 @@ public class ReplacementRule implements Serializable {
         this.regexPattern = "";
         this.regexGroup = 1;
         this.replaceAll = false;
+        this.preTransforms = new ArrayList<>();
         this.preProcessingScript = "";
         this.enabled = true;
         this.applyToRequests = true;
@@ -31,6 +35,7 @@ public class ReplacementRule implements Serializable {
         this.regexPattern = regexPattern;
         this.regexGroup = regexGroup;
         this.replaceAll = replaceAll;
+        this.preTransforms = new ArrayList<>();
         this.preProcessingScript = preProcessingScript;
         this.enabled = true;
         this.applyToRequests = true;
@@ -53,6 +58,9 @@ public class ReplacementRule implements Serializable {
     public boolean isReplaceAll() { return replaceAll; }
     public void setReplaceAll(boolean replaceAll) { this.replaceAll = replaceAll; }
 
+    public List<TransformStep> getPreTransforms() { return preTransforms; }
+    public void setPreTransforms(List<TransformStep> preTransforms) { this.preTransforms = preTransforms; }
+
     public String getPreProcessingScript() { return preProcessingScript; }
     public void setPreProcessingScript(String preProcessingScript) { this.preProcessingScript = preProcessingScript; }
 
@@ -0,0 +1,37 @@
+package model;
+
+import java.io.Serializable;
+
+public class TransformStep implements Serializable {
+    private TransformType type;
+    private String argument;
+
+    public TransformStep() {
+        this.type = TransformType.TRIM;
+        this.argument = "";
+    }
+
+    public TransformStep(TransformType type, String argument) {
+        this.type = type;
+        this.argument = argument != null ? argument : "";
+    }
+
+    public TransformStep copy() {
+        return new TransformStep(type, argument);
+    }
+
+    @Override
+    public String toString() {
+        if (type != null && type.isRequiresArgument()) {
+            return type.getKey() + ":" + argument;
+        }
+        return type != null ? type.getKey() : "";
+    }
+
+    // Getters and setters
+    public TransformType getType() { return type; }
+    public void setType(TransformType type) { this.type = type; }
+
+    public String getArgument() { return argument; }
+    public void setArgument(String argument) { this.argument = argument; }
+}
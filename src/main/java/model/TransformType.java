@@ -0,0 +1,58 @@
+package model;
+
+public enum TransformType {
+    BASE64_DECODE("base64-decode", "Base64 decode", false),
+    BASE64_ENCODE("base64-encode", "Base64 encode", false),
+    BASE64URL_DECODE("base64url-decode", "Base64URL decode", false),
+    BASE64URL_ENCODE("base64url-encode", "Base64URL encode (no padding)", false),
+    URL_DECODE("url-decode", "URL decode", false),
+    URL_ENCODE("url-encode", "URL encode", false),
+    JSON_FIELD("json", "Extract JSON field (path, e.g. data.tokens.0)", true),
+    SUBSTRING("substring", "Substring (start[,end], negative counts from end)", true),
+    PREFIX("prefix", "Add prefix", true),
+    SUFFIX("suffix", "Add suffix", true),
+    STRIP_PREFIX("strip-prefix", "Remove prefix if present", true),
+    STRIP_SUFFIX("strip-suffix", "Remove suffix if present", true),
+    TRIM("trim", "Trim whitespace", false),
+    LOWERCASE("lowercase", "Lowercase", false),
+    UPPERCASE("uppercase", "Uppercase", false);
+
+    private final String key;
+    private final String description;
+    private final boolean requiresArgument;
+
+    TransformType(String key, String description, boolean requiresArgument) {
+        this.key = key;
+        this.description = description;
+        this.requiresArgument = requiresArgument;
+    }
+
+    /**
+     * Name used for this step in the transform chain text (e.g. "base64-decode")
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public boolean isRequiresArgument() {
+        return requiresArgument;
+    }
+
+    public static TransformType fromKey(String key) {
+        for (TransformType type : values()) {
+            if (type.key.equalsIgnoreCase(key)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -1,6 +1,9 @@
 package model;
 
+import util.ParsedUrl;
+
 import java.io.Serializable;
+import java.util.Objects;
 import java.util.regex.Pattern;
 
 public class UrlMatcher implements Serializable {
@@ -10,6 +13,9 @@ public class UrlMatcher implements Serializable {
     private String path; // Can be regex
     private boolean enabled;
 
+    // Compiled form of the current settings, rebuilt when it no longer matches them
+    private transient volatile Compiled compiled;
+
     public UrlMatcher() {
         this.protocol = "Any";
         this.host = "";
@@ -27,79 +33,132 @@ public class UrlMatcher implements Serializable {
     }
 
     public boolean matches(String url) {
-        try {
-            // Extract protocol
-            String urlProtocol = "";
-            String remainder = url;
-            if (url.contains("://")) {
-                urlProtocol = url.substring(0, url.indexOf("://")).toLowerCase();
-                remainder = url.substring(url.indexOf("://") + 3);
-            }
+        return matches(ParsedUrl.parse(url));
+    }
 
-            // Check protocol
-            if (protocol != null && !protocol.isEmpty() && !protocol.equalsIgnoreCase("Any")) {
-                if (!urlProtocol.equalsIgnoreCase(protocol)) {
-                    return false;
-                }
-            }
+    /**
+     * Match an already parsed URL, so a URL checked against many matchers is only parsed once.
+     */
+    public boolean matches(ParsedUrl url) {
+        return compile().matches(url);
+    }
 
-            // Extract host and port
-            String urlHost = "";
-            String urlPort = "";
-            String urlPath = "";
+    /**
+     * Snapshot of the current settings as an immutable matcher that can be shared between threads.
+     * The snapshot is cached and reused until one of the settings changes.
+     */
+    public Compiled compile() {
+        // Read each field once, so the snapshot is built from exactly the values it is checked against
+        String protocol = this.protocol;
+        String host = this.host;
+        String port = this.port;
+        String path = this.path;
+        Compiled current = compiled;
+        if (current == null || !current.isFor(protocol, host, port, path)) {
+            current = new Compiled(protocol, host, port, path);
+            compiled = current;
+        }
+        return current;
+    }
 
-            int slashIndex = remainder.indexOf('/');
-            String hostPort = slashIndex >= 0 ? remainder.substring(0, slashIndex) : remainder;
-            urlPath = slashIndex >= 0 ? remainder.substring(slashIndex) : "/";
+    /**
+     * Immutable compiled form of a UrlMatcher, used by the rule plan on the HTTP hot path.
+     */
+    public static final class Compiled {
+        private final String protocol;
+        private final String host;
+        private final String port;
+        private final String path;
+        private final FieldMatcher hostMatcher;
+        private final FieldMatcher portMatcher;
+        private final FieldMatcher pathMatcher;
+
+        private Compiled(String protocol, String host, String port, String path) {
+            this.protocol = protocol;
+            this.host = host;
+            this.port = port;
+            this.path = path;
+            this.hostMatcher = FieldMatcher.compile(host);
+            this.portMatcher = FieldMatcher.compile(port);
+            this.pathMatcher = FieldMatcher.compile(path);
+        }
 
-            // Strip query string from path
-            int queryIndex = urlPath.indexOf('?');
-            if (queryIndex >= 0) {
-                urlPath = urlPath.substring(0, queryIndex);
-            }
+        public String getHost() { return host; }
 
-            if (hostPort.contains(":")) {
-                int colonIndex = hostPort.lastIndexOf(':');
-                urlHost = hostPort.substring(0, colonIndex);
-                urlPort = hostPort.substring(colonIndex + 1);
-            } else {
-                urlHost = hostPort;
-            }
+        public boolean matches(ParsedUrl url) {
+            try {
+                // Check protocol
+                if (protocol != null && !protocol.isEmpty() && !protocol.equalsIgnoreCase("Any")) {
+                    if (!url.getProtocol().equalsIgnoreCase(protocol)) {
+                        return false;
+                    }
+                }
 
-            // Check host
-            if (host != null && !host.isEmpty()) {
-                if (!matchesPattern(urlHost, host)) {
+                // Check host
+                if (hostMatcher != null && !hostMatcher.matches(url.getHost())) {
                     return false;
                 }
-            }
 
-            // Check port
-            if (port != null && !port.isEmpty()) {
-                if (!matchesPattern(urlPort, port)) {
+                // Check port
+                if (portMatcher != null && !portMatcher.matches(url.getPort())) {
                     return false;
                 }
-            }
 
-            // Check path
-            if (path != null && !path.isEmpty()) {
-                if (!matchesPattern(urlPath, path)) {
+                // Check path
+                if (pathMatcher != null && !pathMatcher.matches(url.getPath())) {
                     return false;
                 }
+
+                return true;
+            } catch (Exception e) {
+                return false;
             }
+        }
 
-            return true;
-        } catch (Exception e) {
-            return false;
+        private boolean isFor(String protocol, String host, String port, String path) {
+            return Objects.equals(this.protocol, protocol) && Objects.equals(this.host, host)
+                    && Objects.equals(this.port, port) && Objects.equals(this.path, path);
         }
     }
 
-    private boolean matchesPattern(String value, String pattern) {
-        try {
+    /**
+     * One host, port or path check. Whether it is a regex or a plain substring is decided once,
+     * when it is compiled, instead of on every URL.
+     */
+    private static final class FieldMatcher {
+        private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+        private final Pattern regex; // null in literal mode
+        private final String literal;
+
+        private FieldMatcher(Pattern regex, String literal) {
+            this.regex = regex;
+            this.literal = literal;
+        }
+
+        /**
+         * @return The matcher, or null if the field is empty and matches everything
+         */
+        static FieldMatcher compile(String pattern) {
+            if (pattern == null || pattern.isEmpty()) {
+                return null;
+            }
+            for (int i = 0; i < pattern.length(); i++) {
+                if (REGEX_METACHARACTERS.indexOf(pattern.charAt(i)) >= 0) {
+                    try {
+                        return new FieldMatcher(Pattern.compile(pattern), pattern);
+                    } catch (Exception e) {
+                        // If it's not a valid regex, fall back to substring match
+                        return new FieldMatcher(null, pattern);
+                    }
+                }
+            }
+            return new FieldMatcher(null, pattern);
+        }
+
+        boolean matches(String value) {
             // Use find() for partial matching - users can use ^ and $ for anchoring
-            return Pattern.compile(pattern).matcher(value).find();
-        } catch (Exception e) {
-            // If it's not a valid regex, try substring match
-            return value.contains(pattern);
+            return regex != null ? regex.matcher(value).find() : value.contains(literal);
         }
     }
 
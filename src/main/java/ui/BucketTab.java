@@ -34,6 +34,7 @@ public class BucketTab extends JPanel {
     private JTable urlMatcherTable;
     private RegexPatternTableModel regexPatternModel;
     private JTable regexPatternTable;
+    private JTextField postTransformsField;
     private JTextArea postProcessingScriptArea;
     private JTextField postCollectionTestTokenField;
     private JTextArea postCollectionPreviewArea;
@@ -45,6 +46,9 @@ public class BucketTab extends JPanel {
     private int lastCommittedMaxSize;
     private JComboBox<BucketFullBehavior> fullBehaviorCombo;
     private JCheckBox uniqueOnlyCheck;
+    private JCheckBox lockFreeCheck;
+    private ContentFilterPanel collectionFilterPanel;
+    private ContentFilterPanel replacementFilterPanel;
 
     // Replacement components
     private JCheckBox replaceInRequestsCheck;
@@ -53,6 +57,7 @@ public class BucketTab extends JPanel {
     private JCheckBox replacementMatchInScopeUrlsCheck;
     private UrlMatcherTableModel replacementUrlMatcherModel;
     private JTable replacementUrlMatcherTable;
+    private JTextField preReplacementTransformsField;
     private JTextArea preReplacementScriptArea;
     private JTextField preReplacementTestTokenField;
     private JTextArea preReplacementPreviewArea;
@@ -112,6 +117,7 @@ public class BucketTab extends JPanel {
     }
 
     private void autoSave() {
+        bucket.markConfigChanged();
         if (onSaveCallback != null) {
             onSaveCallback.run();
         }
@@ -226,6 +232,17 @@ public class BucketTab extends JPanel {
         }
         topPanel.add(toolsPanel, gbc);
 
+        // Content Filter
+        gbc.gridy = 4;
+        JLabel collectionFilterLabel = new JLabel("Content Filter");
+        collectionFilterLabel.setFont(collectionFilterLabel.getFont().deriveFont(Font.BOLD));
+        topPanel.add(collectionFilterLabel, gbc);
+
+        gbc.gridy = 5;
+        collectionFilterPanel = new ContentFilterPanel("Headers only", this::autoSave);
+        collectionFilterPanel.setToolTipText("Messages that fail these checks are skipped before any pattern runs");
+        topPanel.add(collectionFilterPanel, gbc);
+
         panel.add(topPanel, BorderLayout.NORTH);
 
         // Center section - tables
@@ -243,10 +260,10 @@ public class BucketTab extends JPanel {
         JPanel bottomPanel = new JPanel(new BorderLayout(5, 5));
 
         JPanel scriptHeaderPanel = new JPanel(new BorderLayout());
-        JLabel scriptLabel = new JLabel("Post-Collection JavaScript");
+        JLabel scriptLabel = new JLabel("Post-Collection Transforms / JavaScript");
         scriptLabel.setFont(scriptLabel.getFont().deriveFont(Font.BOLD, 14f));
         scriptHeaderPanel.add(scriptLabel, BorderLayout.NORTH);
-        JLabel scriptDescLabel = new JLabel("Optional. Runs immediately before storing token. (variable: token, must return string)");
+        JLabel scriptDescLabel = new JLabel("Optional. Transforms run first, then JavaScript, immediately before storing token. (variable: token, must return string)");
         scriptDescLabel.setFont(scriptDescLabel.getFont().deriveFont(Font.PLAIN, 11f));
         scriptHeaderPanel.add(scriptDescLabel, BorderLayout.CENTER);
         bottomPanel.add(scriptHeaderPanel, BorderLayout.NORTH);
@@ -254,7 +271,32 @@ public class BucketTab extends JPanel {
         // Script and preview side by side
         JPanel scriptAndPreviewPanel = new JPanel(new GridLayout(1, 2, 10, 0));
 
-        // Script area on left
+        // Transforms and script area on left
+        JPanel transformsAndScriptPanel = new JPanel(new BorderLayout(5, 5));
+        JPanel transformsPanel = new JPanel(new BorderLayout(5, 0));
+        JLabel transformsLabel = new JLabel("Transforms:");
+        transformsLabel.setToolTipText(util.TokenTransformer.getSyntaxHelp());
+        transformsPanel.add(transformsLabel, BorderLayout.WEST);
+        postTransformsField = new JTextField();
+        postTransformsField.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        postTransformsField.setToolTipText(util.TokenTransformer.getSyntaxHelp());
+        postTransformsField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { save(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { save(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { save(); }
+            private void save() {
+                try {
+                    bucket.getCollectionRule().setPostTransforms(util.TokenTransformer.parse(postTransformsField.getText()));
+                    autoSave();
+                } catch (IllegalArgumentException e) {
+                    // Keep the last valid chain; the preview shows the error
+                }
+                updatePostCollectionPreview();
+            }
+        });
+        transformsPanel.add(postTransformsField, BorderLayout.CENTER);
+        transformsAndScriptPanel.add(transformsPanel, BorderLayout.NORTH);
+
         postProcessingScriptArea = new JTextArea(5, 40);
         postProcessingScriptArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
         postProcessingScriptArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
@@ -267,7 +309,8 @@ public class BucketTab extends JPanel {
                 autoSave();
             }
         });
-        scriptAndPreviewPanel.add(new JScrollPane(postProcessingScriptArea));
+        transformsAndScriptPanel.add(new JScrollPane(postProcessingScriptArea), BorderLayout.CENTER);
+        scriptAndPreviewPanel.add(transformsAndScriptPanel);
 
         // Preview area on right
         JPanel previewPanel = new JPanel(new BorderLayout(5, 5));
@@ -626,10 +669,10 @@ public class BucketTab extends JPanel {
         JPanel panel = new JPanel(new BorderLayout(5, 5));
 
         JPanel scriptHeaderPanel = new JPanel(new BorderLayout());
-        JLabel scriptLabel = new JLabel("Pre-Replacement JavaScript");
+        JLabel scriptLabel = new JLabel("Pre-Replacement Transforms / JavaScript");
         scriptLabel.setFont(scriptLabel.getFont().deriveFont(Font.BOLD, 14f));
         scriptHeaderPanel.add(scriptLabel, BorderLayout.NORTH);
-        JLabel scriptDescLabel = new JLabel("Optional. Runs immediately before any replacement rules. (variable: token, must return string)");
+        JLabel scriptDescLabel = new JLabel("Optional. Transforms run first, then JavaScript, immediately before any replacement rules. (variable: token, must return string)");
         scriptDescLabel.setFont(scriptDescLabel.getFont().deriveFont(Font.PLAIN, 11f));
         scriptHeaderPanel.add(scriptDescLabel, BorderLayout.CENTER);
         panel.add(scriptHeaderPanel, BorderLayout.NORTH);
@@ -637,7 +680,32 @@ public class BucketTab extends JPanel {
         // Script and preview side by side
         JPanel scriptAndPreviewPanel = new JPanel(new GridLayout(1, 2, 10, 0));
 
-        // Script area on left
+        // Transforms and script area on left
+        JPanel transformsAndScriptPanel = new JPanel(new BorderLayout(5, 5));
+        JPanel transformsPanel = new JPanel(new BorderLayout(5, 0));
+        JLabel transformsLabel = new JLabel("Transforms:");
+        transformsLabel.setToolTipText(util.TokenTransformer.getSyntaxHelp());
+        transformsPanel.add(transformsLabel, BorderLayout.WEST);
+        preReplacementTransformsField = new JTextField();
+        preReplacementTransformsField.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        preReplacementTransformsField.setToolTipText(util.TokenTransformer.getSyntaxHelp());
+        preReplacementTransformsField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { save(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { save(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { save(); }
+            private void save() {
+                try {
+                    bucket.getReplacementConfig().setPreTransforms(util.TokenTransformer.parse(preReplacementTransformsField.getText()));
+                    autoSave();
+                } catch (IllegalArgumentException e) {
+                    // Keep the last valid chain; the preview shows the error
+                }
+                updatePreReplacementPreview();
+            }
+        });
+        transformsPanel.add(preReplacementTransformsField, BorderLayout.CENTER);
+        transformsAndScriptPanel.add(transformsPanel, BorderLayout.NORTH);
+
         preReplacementScriptArea = new JTextArea(5, 40);
         preReplacementScriptArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
         preReplacementScriptArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
@@ -650,7 +718,8 @@ public class BucketTab extends JPanel {
                 autoSave();
             }
         });
-        scriptAndPreviewPanel.add(new JScrollPane(preReplacementScriptArea));
+        transformsAndScriptPanel.add(new JScrollPane(preReplacementScriptArea), BorderLayout.CENTER);
+        scriptAndPreviewPanel.add(transformsAndScriptPanel);
 
         // Preview area on right
         JPanel previewPanel = new JPanel(new BorderLayout(5, 5));
@@ -924,11 +993,21 @@ public class BucketTab extends JPanel {
         });
         panel.add(uniqueOnlyCheck, gbc);
 
+        gbc.gridx = 0; gbc.gridy = 5; gbc.gridwidth = 2;
+        lockFreeCheck = new JCheckBox("Lock-free storage (for high-concurrency attacks; edits may race with traffic)");
+        lockFreeCheck.setToolTipText("Collection and replacement threads access tokens without locking. "
+            + "Manual token edits are applied to a snapshot and can lose tokens collected at the same moment.");
+        lockFreeCheck.addActionListener(e -> {
+            bucket.setLockFree(lockFreeCheck.isSelected());
+            autoSave();
+        });
+        panel.add(lockFreeCheck, gbc);
+
         // Add filler panels to push content to top-left
-        gbc.gridx = 0; gbc.gridy = 4; gbc.gridwidth = 1; gbc.weighty = 1.0; gbc.weightx = 0.0;
+        gbc.gridx = 0; gbc.gridy = 6; gbc.gridwidth = 1; gbc.weighty = 1.0; gbc.weightx = 0.0;
         panel.add(new JPanel(), gbc);
 
-        gbc.gridx = 2; gbc.gridy = 0; gbc.gridheight = 5; gbc.weighty = 0.0; gbc.weightx = 1.0;
+        gbc.gridx = 2; gbc.gridy = 0; gbc.gridheight = 7; gbc.weighty = 0.0; gbc.weightx = 1.0;
         panel.add(new JPanel(), gbc);
 
         return panel;
@@ -1113,6 +1192,17 @@ public class BucketTab extends JPanel {
 
         topPanel.add(emptyBucketPanel, gbc);
 
+        // Content Filter
+        gbc.gridy = 6;
+        JLabel replacementFilterLabel = new JLabel("Content Filter");
+        replacementFilterLabel.setFont(replacementFilterLabel.getFont().deriveFont(Font.BOLD));
+        topPanel.add(replacementFilterLabel, gbc);
+
+        gbc.gridy = 7;
+        replacementFilterPanel = new ContentFilterPanel("Regex rules match headers only", this::autoSave);
+        replacementFilterPanel.setToolTipText("Messages that fail these checks are skipped without taking a token");
+        topPanel.add(replacementFilterPanel, gbc);
+
         panel.add(topPanel, BorderLayout.NORTH);
 
         // Center section with URL Matchers, Pre-Replacement Script, and Replacement Rules
@@ -1851,7 +1941,12 @@ public class BucketTab extends JPanel {
 
         matchInScopeUrlsCheck.setSelected(collectionRule.isMatchInScopeUrls());
 
+        postTransformsField.setText(util.TokenTransformer.format(collectionRule.getPostTransforms()));
         postProcessingScriptArea.setText(collectionRule.getPostProcessingScript());
+        if (collectionRule.getContentFilter() == null) {
+            collectionRule.setContentFilter(new ContentFilter());
+        }
+        collectionFilterPanel.setFilter(collectionRule.getContentFilter());
 
         bucketEnabledCheck.setSelected(bucket.isEnabled());
         bucketTypeCombo.setSelectedItem(bucket.getBucketType());
@@ -1859,6 +1954,7 @@ public class BucketTab extends JPanel {
         lastCommittedMaxSize = bucket.getMaxSize(); // Initialize the tracked value
         fullBehaviorCombo.setSelectedItem(bucket.getFullBehavior());
         uniqueOnlyCheck.setSelected(bucket.isUniqueOnly());
+        lockFreeCheck.setSelected(bucket.isLockFree());
 
         ReplacementConfig replacementConfig = bucket.getReplacementConfig();
         replaceInRequestsCheck.setSelected(replacementConfig.isReplaceInRequests());
@@ -1876,7 +1972,12 @@ public class BucketTab extends JPanel {
         updateEmptyBucketFieldsVisibility();
 
         replacementMatchInScopeUrlsCheck.setSelected(replacementConfig.isMatchInScopeUrls());
+        preReplacementTransformsField.setText(util.TokenTransformer.format(replacementConfig.getPreTransforms()));
         preReplacementScriptArea.setText(replacementConfig.getPreReplacementScript());
+        if (replacementConfig.getContentFilter() == null) {
+            replacementConfig.setContentFilter(new ContentFilter());
+        }
+        replacementFilterPanel.setFilter(replacementConfig.getContentFilter());
 
         // Replacement rules table is already initialized with the bucket's list
         replacementRulesModel.fireTableDataChanged();
@@ -1908,7 +2009,8 @@ public class BucketTab extends JPanel {
         String testToken = postCollectionTestTokenField.getText();
 
         try {
-            String result = jsProcessor.processTokenWithException(testToken, script);
+            String result = util.TokenTransformer.apply(testToken, util.TokenTransformer.parse(postTransformsField.getText()));
+            result = jsProcessor.processTokenWithException(result, script);
             postCollectionPreviewArea.setText(result);
         } catch (Exception e) {
             postCollectionPreviewArea.setText("Error: " + e.getMessage());
@@ -1920,7 +2022,8 @@ public class BucketTab extends JPanel {
         String testToken = preReplacementTestTokenField.getText();
 
         try {
-            String result = jsProcessor.processTokenWithException(testToken, script);
+            String result = util.TokenTransformer.apply(testToken, util.TokenTransformer.parse(preReplacementTransformsField.getText()));
+            result = jsProcessor.processTokenWithException(result, script);
             preReplacementPreviewArea.setText(result);
         } catch (Exception e) {
             preReplacementPreviewArea.setText("Error: " + e.getMessage());
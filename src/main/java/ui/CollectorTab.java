@@ -299,6 +299,7 @@ public class CollectorTab extends JPanel {
 
             // Update bucket name
             bucket.setName(newName.trim());
+            bucket.markConfigChanged();
 
             // Update tab title with index prefix
             String newTitle = tabIndex + ": " + newName.trim();
@@ -396,6 +397,9 @@ public class CollectorTab extends JPanel {
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("Export Configuration");
         fileChooser.setSelectedFile(new File("collector-config.json"));
+        JCheckBox includeTokensCheck = new JCheckBox("Include collected tokens");
+        includeTokensCheck.setToolTipText("Also export every bucket's tokens; importing the file restores them");
+        fileChooser.setAccessory(includeTokensCheck);
 
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             try {
@@ -413,7 +417,7 @@ public class CollectorTab extends JPanel {
                     }
                 }
 
-                persistenceManager.exportToFile(bucketManager, bucketDefaults, file);
+                persistenceManager.exportToFile(bucketManager, bucketDefaults, file, includeTokensCheck.isSelected());
                 JOptionPane.showMessageDialog(this, "Configuration exported successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Export failed: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -539,6 +543,17 @@ public class CollectorTab extends JPanel {
                 }
             }
 
+            // Reset asynchronous collection, script execution and content filter settings
+            GlobalControls freshControls = new GlobalControls();
+            bucketManager.getGlobalControls().setAsyncCollectionEnabled(freshControls.isAsyncCollectionEnabled());
+            bucketManager.getGlobalControls().setAsyncQueueCapacity(freshControls.getAsyncQueueCapacity());
+            bucketManager.getGlobalControls().setAsyncQueueFullBehavior(freshControls.getAsyncQueueFullBehavior());
+            bucketManager.getGlobalControls().setFlushBeforeReplacement(freshControls.isFlushBeforeReplacement());
+            bucketManager.getGlobalControls().setScriptOptimizationLevel(freshControls.getScriptOptimizationLevel());
+            bucketManager.getGlobalControls().setPersistTokens(freshControls.isPersistTokens());
+            bucketManager.getGlobalControls().setCollectionFilter(freshControls.getCollectionFilter());
+            bucketManager.getGlobalControls().setReplacementFilter(freshControls.getReplacementFilter());
+
             // Reset bucket defaults to defaults
             BucketDefaults freshDefaults = new BucketDefaults();
             bucketDefaults.setEnabled(freshDefaults.isEnabled());
@@ -838,14 +853,8 @@ public class CollectorTab extends JPanel {
             }
         }
 
-        // Clear and re-add buckets in new order
-        List<Bucket> existingBuckets = new ArrayList<>(bucketManager.getBuckets());
-        for (Bucket bucket : existingBuckets) {
-            bucketManager.removeBucket(bucket);
-        }
-        for (Bucket bucket : orderedBuckets) {
-            bucketManager.addBucket(bucket);
-        }
+        // Swap in the new order in one step
+        bucketManager.replaceBuckets(orderedBuckets);
     }
 
     private void updateTokenTabTitles() {
@@ -997,6 +1006,7 @@ public class CollectorTab extends JPanel {
         newBucket.setMaxSize(source.getMaxSize());
         newBucket.setFullBehavior(source.getFullBehavior());
         newBucket.setUniqueOnly(source.isUniqueOnly());
+        newBucket.setLockFree(source.isLockFree());
 
         // Deep copy CollectionRule
         CollectionRule sourceCollectionRule = source.getCollectionRule();
@@ -1007,7 +1017,11 @@ public class CollectorTab extends JPanel {
         newCollectionRule.getEnabledTools().clear();
         newCollectionRule.getEnabledTools().addAll(sourceCollectionRule.getEnabledTools());
         newCollectionRule.setMatchInScopeUrls(sourceCollectionRule.isMatchInScopeUrls());
+        newCollectionRule.setPostTransforms(util.TokenTransformer.copy(sourceCollectionRule.getPostTransforms()));
         newCollectionRule.setPostProcessingScript(sourceCollectionRule.getPostProcessingScript());
+        if (sourceCollectionRule.getContentFilter() != null) {
+            newCollectionRule.setContentFilter(sourceCollectionRule.getContentFilter().copy());
+        }
 
         // Deep copy URL matchers
         for (UrlMatcher sourceUrlMatcher : sourceCollectionRule.getUrlMatchers()) {
@@ -1025,6 +1039,10 @@ public class CollectorTab extends JPanel {
             RegexPattern newPattern = new RegexPattern();
             newPattern.setPattern(sourcePattern.getPattern());
             newPattern.setComment(sourcePattern.getComment());
+            newPattern.setSection(sourcePattern.getSection());
+            newPattern.setSectionHeader(sourcePattern.getSectionHeader());
+            newPattern.setBodyPrefixBytes(sourcePattern.getBodyPrefixBytes());
+            newPattern.setPostTransforms(util.TokenTransformer.copy(sourcePattern.getPostTransforms()));
             newPattern.setPostProcessingScript(sourcePattern.getPostProcessingScript());
             newPattern.setEnabled(sourcePattern.isEnabled());
             newCollectionRule.getRegexPatterns().add(newPattern);
@@ -1043,7 +1061,11 @@ public class CollectorTab extends JPanel {
         newReplacementConfig.setEmptyBucketBehavior(sourceReplacementConfig.getEmptyBucketBehavior());
         newReplacementConfig.setStaticValue(sourceReplacementConfig.getStaticValue());
         newReplacementConfig.setGeneratorRegex(sourceReplacementConfig.getGeneratorRegex());
+        newReplacementConfig.setPreTransforms(util.TokenTransformer.copy(sourceReplacementConfig.getPreTransforms()));
         newReplacementConfig.setPreReplacementScript(sourceReplacementConfig.getPreReplacementScript());
+        if (sourceReplacementConfig.getContentFilter() != null) {
+            newReplacementConfig.setContentFilter(sourceReplacementConfig.getContentFilter().copy());
+        }
 
         // Deep copy replacement URL matchers
         for (UrlMatcher sourceUrlMatcher : sourceReplacementConfig.getUrlMatchers()) {
@@ -1064,6 +1086,7 @@ public class CollectorTab extends JPanel {
             newRule.setRegexPattern(sourceRule.getRegexPattern());
             newRule.setRegexGroup(sourceRule.getRegexGroup());
             newRule.setReplaceAll(sourceRule.isReplaceAll());
+            newRule.setPreTransforms(util.TokenTransformer.copy(sourceRule.getPreTransforms()));
             newRule.setPreProcessingScript(sourceRule.getPreProcessingScript());
             newRule.setEnabled(sourceRule.isEnabled());
             newReplacementConfig.getReplacementRules().add(newRule);
@@ -0,0 +1,118 @@
+package ui;
+
+import model.ContentFilter;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Row of controls for editing a ContentFilter: body size limit, MIME allow/deny lists and
+ * headers-only mode. Used for bucket collection/replacement and the global filters.
+ */
+public class ContentFilterPanel extends JPanel {
+    private static final String MIME_HELP = "<html>Comma-separated. Media types from the Content-Type header "
+            + "(<code>image/png</code>, <code>image/*</code>) or Burp MIME types, where a prefix matches a family "
+            + "(<code>IMAGE</code>, <code>FONT</code>, <code>JSON</code>, <code>HTML</code>, <code>SCRIPT</code>).</html>";
+
+    private final Runnable onChange;
+    private final JSpinner maxBodySizeSpinner;
+    private final JTextField allowedField;
+    private final JTextField deniedField;
+    private final JCheckBox headersOnlyCheck;
+    private ContentFilter filter;
+    private boolean updatingFromModel = false;
+
+    /**
+     * @param headersOnlyLabel Checkbox text, since headers-only means different things for collection and replacement
+     * @param onChange Called after every edit, e.g. to save and rebuild the rule plan
+     */
+    public ContentFilterPanel(String headersOnlyLabel, Runnable onChange) {
+        super(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        this.onChange = onChange;
+
+        add(new JLabel("Max body (KB, 0 = no limit):"));
+        maxBodySizeSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 10000000, 64));
+        maxBodySizeSpinner.addChangeListener(e -> {
+            if (updatingFromModel || filter == null) return;
+            filter.setMaxBodySizeKb((Integer) maxBodySizeSpinner.getValue());
+            changed();
+        });
+        add(maxBodySizeSpinner);
+
+        add(new JLabel("Only MIME types:"));
+        allowedField = new JTextField(12);
+        allowedField.setToolTipText(MIME_HELP);
+        allowedField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { update(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { update(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { update(); }
+            private void update() {
+                if (updatingFromModel || filter == null) return;
+                filter.setAllowedMimeTypes(parseList(allowedField.getText()));
+                changed();
+            }
+        });
+        add(allowedField);
+
+        add(new JLabel("Skip MIME types:"));
+        deniedField = new JTextField(12);
+        deniedField.setToolTipText(MIME_HELP);
+        deniedField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { update(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { update(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { update(); }
+            private void update() {
+                if (updatingFromModel || filter == null) return;
+                filter.setDeniedMimeTypes(parseList(deniedField.getText()));
+                changed();
+            }
+        });
+        add(deniedField);
+
+        headersOnlyCheck = new JCheckBox(headersOnlyLabel);
+        headersOnlyCheck.addActionListener(e -> {
+            if (updatingFromModel || filter == null) return;
+            filter.setHeadersOnly(headersOnlyCheck.isSelected());
+            changed();
+        });
+        add(headersOnlyCheck);
+    }
+
+    /**
+     * Show and edit the given filter.
+     */
+    public void setFilter(ContentFilter filter) {
+        this.filter = filter;
+        updatingFromModel = true;
+        try {
+            maxBodySizeSpinner.setValue(filter != null ? Math.max(0, filter.getMaxBodySizeKb()) : 0);
+            allowedField.setText(filter != null ? formatList(filter.getAllowedMimeTypes()) : "");
+            deniedField.setText(filter != null ? formatList(filter.getDeniedMimeTypes()) : "");
+            headersOnlyCheck.setSelected(filter != null && filter.isHeadersOnly());
+        } finally {
+            updatingFromModel = false;
+        }
+    }
+
+    private void changed() {
+        if (onChange != null) {
+            onChange.run();
+        }
+    }
+
+    private static List<String> parseList(String text) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : text.split(",")) {
+            if (!entry.trim().isEmpty()) {
+                entries.add(entry.trim());
+            }
+        }
+        return entries;
+    }
+
+    private static String formatList(List<String> entries) {
+        return entries != null ? String.join(", ", entries) : "";
+    }
+}
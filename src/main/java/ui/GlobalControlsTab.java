@@ -2,6 +2,7 @@ package ui;
 
 import burp.api.montoya.core.ToolType;
 import model.GlobalControls;
+import model.QueueFullBehavior;
 
 import javax.swing.*;
 import java.awt.*;
@@ -17,6 +18,15 @@ public class GlobalControlsTab extends JPanel {
     private final List<GlobalControlsChangeListener> listeners;
     private final Runnable onSaveCallback;
     private final Runnable onResetCallback;
+    private JCheckBox asyncCollectionCheck;
+    private JSpinner asyncQueueCapacitySpinner;
+    private JComboBox<QueueFullBehavior> asyncQueueFullCombo;
+    private JCheckBox flushBeforeReplacementCheck;
+    private JCheckBox persistTokensCheck;
+    private JComboBox<String> scriptOptimizationCombo;
+    private ContentFilterPanel collectionFilterPanel;
+    private ContentFilterPanel replacementFilterPanel;
+    private boolean updatingFromModel = false;
 
     public interface GlobalControlsChangeListener {
         void onGlobalControlsChanged();
@@ -146,19 +156,89 @@ public class GlobalControlsTab extends JPanel {
         }
         mainPanel.add(collectionToolsPanel, gbc);
 
-        // Replacement panel
+        // Asynchronous collection
         gbc.gridy = 7;
+        JLabel asyncLabel = new JLabel("Asynchronous Collection");
+        asyncLabel.setFont(asyncLabel.getFont().deriveFont(Font.BOLD));
+        mainPanel.add(asyncLabel, gbc);
+
+        gbc.gridy = 8;
+        JTextArea asyncDesc = new JTextArea("Collect tokens on background threads so HTTP messages are not held up by regex matching and post-processing scripts.");
+        asyncDesc.setEditable(false);
+        asyncDesc.setFocusable(false);
+        asyncDesc.setLineWrap(true);
+        asyncDesc.setWrapStyleWord(true);
+        asyncDesc.setOpaque(false);
+        asyncDesc.setBorder(null);
+        asyncDesc.setFont(UIManager.getFont("Label.font"));
+        mainPanel.add(asyncDesc, gbc);
+
+        gbc.gridy = 9;
+        JPanel asyncPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        asyncCollectionCheck = new JCheckBox("Collect asynchronously");
+        asyncCollectionCheck.setSelected(globalControls.isAsyncCollectionEnabled());
+        asyncCollectionCheck.addActionListener(e -> {
+            globalControls.setAsyncCollectionEnabled(asyncCollectionCheck.isSelected());
+            updateAsyncControlsEnabled();
+            notifyListeners();
+        });
+        asyncPanel.add(asyncCollectionCheck);
+
+        asyncPanel.add(new JLabel("Queue size:"));
+        asyncQueueCapacitySpinner = new JSpinner(new SpinnerNumberModel(Math.max(1, globalControls.getAsyncQueueCapacity()), 1, 1000000, 100));
+        asyncQueueCapacitySpinner.addChangeListener(e -> {
+            if (updatingFromModel) return;
+            globalControls.setAsyncQueueCapacity((Integer) asyncQueueCapacitySpinner.getValue());
+            notifyListeners();
+        });
+        asyncPanel.add(asyncQueueCapacitySpinner);
+
+        asyncPanel.add(new JLabel("When full:"));
+        asyncQueueFullCombo = new JComboBox<>(QueueFullBehavior.values());
+        asyncQueueFullCombo.setSelectedItem(globalControls.getAsyncQueueFullBehavior());
+        asyncQueueFullCombo.addActionListener(e -> {
+            if (updatingFromModel) return;
+            globalControls.setAsyncQueueFullBehavior((QueueFullBehavior) asyncQueueFullCombo.getSelectedItem());
+            notifyListeners();
+        });
+        asyncPanel.add(asyncQueueFullCombo);
+        mainPanel.add(asyncPanel, gbc);
+
+        gbc.gridy = 10;
+        flushBeforeReplacementCheck = new JCheckBox("Wait for pending collections before replacing tokens");
+        flushBeforeReplacementCheck.setSelected(globalControls.isFlushBeforeReplacement());
+        flushBeforeReplacementCheck.addActionListener(e -> {
+            globalControls.setFlushBeforeReplacement(flushBeforeReplacementCheck.isSelected());
+            notifyListeners();
+        });
+        mainPanel.add(flushBeforeReplacementCheck, gbc);
+        updateAsyncControlsEnabled();
+
+        // Collection content filter
+        gbc.gridy = 11;
+        JLabel collectionFilterLabel = new JLabel("Content Filter");
+        collectionFilterLabel.setFont(collectionFilterLabel.getFont().deriveFont(Font.BOLD));
+        mainPanel.add(collectionFilterLabel, gbc);
+
+        gbc.gridy = 12;
+        collectionFilterPanel = new ContentFilterPanel("Headers only", this::notifyListeners);
+        collectionFilterPanel.setToolTipText("Applied to every bucket in addition to the bucket's own content filter");
+        collectionFilterPanel.setFilter(globalControls.getCollectionFilter());
+        mainPanel.add(collectionFilterPanel, gbc);
+
+        // Replacement panel
+        gbc.gridy = 13;
         JLabel replacementMainHeading = new JLabel("Token Replacement");
         replacementMainHeading.setFont(replacementMainHeading.getFont().deriveFont(Font.BOLD, 16f));
         replacementMainHeading.setForeground(new Color(0xd86633));
         mainPanel.add(replacementMainHeading, gbc);
 
-        gbc.gridy = 8;
+        gbc.gridy = 14;
         JLabel replacementLabel = new JLabel("Enabled Tools");
         replacementLabel.setFont(replacementLabel.getFont().deriveFont(Font.BOLD));
         mainPanel.add(replacementLabel, gbc);
 
-        gbc.gridy = 9;
+        gbc.gridy = 15;
         JTextArea replacementDesc = new JTextArea("Global control for which Burp tools tokens can be placed in. Individual buckets must also enable the tool.");
         replacementDesc.setEditable(false);
         replacementDesc.setFocusable(false);
@@ -169,7 +249,7 @@ public class GlobalControlsTab extends JPanel {
         replacementDesc.setFont(UIManager.getFont("Label.font"));
         mainPanel.add(replacementDesc, gbc);
 
-        gbc.gridy = 10;
+        gbc.gridy = 16;
         JPanel replacementToolsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
 
         // Add "All" checkbox for Replacement Tools
@@ -208,13 +288,70 @@ public class GlobalControlsTab extends JPanel {
         }
         mainPanel.add(replacementToolsPanel, gbc);
 
+        // Replacement content filter
+        gbc.gridy = 17;
+        JLabel replacementFilterLabel = new JLabel("Content Filter");
+        replacementFilterLabel.setFont(replacementFilterLabel.getFont().deriveFont(Font.BOLD));
+        mainPanel.add(replacementFilterLabel, gbc);
+
+        gbc.gridy = 18;
+        replacementFilterPanel = new ContentFilterPanel("Regex rules match headers only", this::notifyListeners);
+        replacementFilterPanel.setToolTipText("Applied to every bucket in addition to the bucket's own content filter");
+        replacementFilterPanel.setFilter(globalControls.getReplacementFilter());
+        mainPanel.add(replacementFilterPanel, gbc);
+
+        // Script execution section
+        gbc.gridy = 19;
+        JLabel scriptLabel = new JLabel("Script Execution");
+        scriptLabel.setFont(scriptLabel.getFont().deriveFont(Font.BOLD));
+        mainPanel.add(scriptLabel, gbc);
+
+        gbc.gridy = 20;
+        JTextArea scriptDesc = new JTextArea("Optimization level for post-processing and pre-replacement scripts. Scripts that run often are compiled to bytecode at this level; scripts that fail to compile stay interpreted.");
+        scriptDesc.setEditable(false);
+        scriptDesc.setFocusable(false);
+        scriptDesc.setLineWrap(true);
+        scriptDesc.setWrapStyleWord(true);
+        scriptDesc.setOpaque(false);
+        scriptDesc.setBorder(null);
+        scriptDesc.setFont(UIManager.getFont("Label.font"));
+        mainPanel.add(scriptDesc, gbc);
+
+        gbc.gridy = 21;
+        JPanel scriptPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
+        scriptPanel.add(new JLabel("Optimization level:"));
+        String[] levels = new String[11];
+        levels[0] = "Interpreted";
+        for (int level = 0; level <= 9; level++) {
+            levels[level + 1] = String.valueOf(level);
+        }
+        scriptOptimizationCombo = new JComboBox<>(levels);
+        scriptOptimizationCombo.setSelectedIndex(optimizationLevelToIndex(globalControls.getScriptOptimizationLevel()));
+        scriptOptimizationCombo.addActionListener(e -> {
+            if (updatingFromModel) return;
+            globalControls.setScriptOptimizationLevel(scriptOptimizationCombo.getSelectedIndex() - 1);
+            notifyListeners();
+        });
+        scriptPanel.add(scriptOptimizationCombo);
+        mainPanel.add(scriptPanel, gbc);
+
         // Persistence section
-        gbc.gridy = 11;
+        gbc.gridy = 22;
         JLabel persistenceLabel = new JLabel("Persistence");
         persistenceLabel.setFont(persistenceLabel.getFont().deriveFont(Font.BOLD));
         mainPanel.add(persistenceLabel, gbc);
 
-        gbc.gridy = 12;
+        gbc.gridy = 23;
+        persistTokensCheck = new JCheckBox("Save bucket tokens in the project file");
+        persistTokensCheck.setToolTipText("Tokens are saved in the background every few seconds and restored when the project is reopened");
+        persistTokensCheck.setSelected(globalControls.isPersistTokens());
+        persistTokensCheck.addActionListener(e -> {
+            globalControls.setPersistTokens(persistTokensCheck.isSelected());
+            notifyListeners();
+        });
+        mainPanel.add(persistTokensCheck, gbc);
+
+        gbc.gridy = 24;
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 5));
 
         JButton saveButton = new JButton("Save Configuration");
@@ -268,6 +405,18 @@ public class GlobalControlsTab extends JPanel {
         return toolTypes.toArray(new ToolType[0]);
     }
 
+    private int optimizationLevelToIndex(int level) {
+        // Index 0 is "Interpreted" (-1), index n is level n - 1
+        return Math.max(0, Math.min(10, level + 1));
+    }
+
+    private void updateAsyncControlsEnabled() {
+        boolean async = asyncCollectionCheck.isSelected();
+        asyncQueueCapacitySpinner.setEnabled(async);
+        asyncQueueFullCombo.setEnabled(async);
+        flushBeforeReplacementCheck.setEnabled(async);
+    }
+
     public void updateFromModel() {
         for (Map.Entry<ToolType, JCheckBox> entry : collectionCheckboxes.entrySet()) {
             entry.getValue().setSelected(globalControls.getCollectionEnabledTools().contains(entry.getKey()));
@@ -275,5 +424,20 @@ public class GlobalControlsTab extends JPanel {
         for (Map.Entry<ToolType, JCheckBox> entry : replacementCheckboxes.entrySet()) {
             entry.getValue().setSelected(globalControls.getReplacementEnabledTools().contains(entry.getKey()));
         }
+        // Spinner and combo listeners fire on programmatic changes, so suppress them while syncing
+        updatingFromModel = true;
+        try {
+            asyncCollectionCheck.setSelected(globalControls.isAsyncCollectionEnabled());
+            asyncQueueCapacitySpinner.setValue(Math.max(1, globalControls.getAsyncQueueCapacity()));
+            asyncQueueFullCombo.setSelectedItem(globalControls.getAsyncQueueFullBehavior());
+            flushBeforeReplacementCheck.setSelected(globalControls.isFlushBeforeReplacement());
+            updateAsyncControlsEnabled();
+            scriptOptimizationCombo.setSelectedIndex(optimizationLevelToIndex(globalControls.getScriptOptimizationLevel()));
+            persistTokensCheck.setSelected(globalControls.isPersistTokens());
+            collectionFilterPanel.setFilter(globalControls.getCollectionFilter());
+            replacementFilterPanel.setFilter(globalControls.getReplacementFilter());
+        } finally {
+            updatingFromModel = false;
+        }
     }
 }
@@ -5,6 +5,8 @@ import model.Bucket;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ProxyHistoryParserDialog extends JDialog {
@@ -12,22 +14,24 @@ public class ProxyHistoryParserDialog extends JDialog {
     private final BucketManager bucketManager;
     private final burp.api.montoya.MontoyaApi api;
 
+    private JList<Bucket> bucketList;
     private JSpinner maxItemsSpinner;
     private JCheckBox unlimitedCheckbox;
     private ButtonGroup directionGroup;
     private JRadioButton oldestFirstRadio;
     private JRadioButton newestFirstRadio;
+    private JCheckBox onlyUnparsedCheckbox;
     private JProgressBar progressBar;
     private JLabel statusLabel;
     private JButton parseButton;
     private JButton cancelButton;
 
-    private SwingWorker<Integer, Integer> parserWorker;
+    private SwingWorker<Map<Bucket, Integer>, Integer> parserWorker;
     private AtomicBoolean cancelFlag;
     private AtomicBoolean pauseFlag;
 
     public ProxyHistoryParserDialog(Frame owner, Bucket bucket, BucketManager bucketManager, burp.api.montoya.MontoyaApi api) {
-        super(owner, "Parse Proxy History - " + bucket.getName(), true);
+        super(owner, "Parse Proxy History", true);
         this.bucket = bucket;
         this.bucketManager = bucketManager;
         this.api = api;
@@ -35,8 +39,8 @@ public class ProxyHistoryParserDialog extends JDialog {
         this.pauseFlag = new AtomicBoolean(false);
 
         initComponents();
-        setSize(500, 300);
-        setMinimumSize(new Dimension(450, 250));
+        setSize(500, 410);
+        setMinimumSize(new Dimension(450, 360));
         setLocationRelativeTo(owner);
     }
 
@@ -51,8 +55,32 @@ public class ProxyHistoryParserDialog extends JDialog {
         gbc.anchor = GridBagConstraints.WEST;
         gbc.fill = GridBagConstraints.HORIZONTAL;
 
-        // Max items
+        // Buckets, all collected in a single pass over the history
         gbc.gridx = 0; gbc.gridy = 0;
+        gbc.anchor = GridBagConstraints.NORTHWEST;
+        optionsPanel.add(new JLabel("Buckets:"), gbc);
+        gbc.gridx = 1; gbc.gridwidth = 2; gbc.weightx = 1.0;
+        DefaultListModel<Bucket> bucketModel = new DefaultListModel<>();
+        for (Bucket b : bucketManager.getBuckets()) {
+            bucketModel.addElement(b);
+        }
+        bucketList = new JList<>(bucketModel);
+        bucketList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        bucketList.setVisibleRowCount(4);
+        bucketList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, ((Bucket) value).getName(), index, isSelected, cellHasFocus);
+            }
+        });
+        bucketList.setSelectedValue(bucket, true);
+        bucketList.setToolTipText("Ctrl/Shift-click to parse several buckets at once");
+        optionsPanel.add(new JScrollPane(bucketList), gbc);
+        gbc.gridwidth = 1; gbc.weightx = 0;
+        gbc.anchor = GridBagConstraints.WEST;
+
+        // Max items
+        gbc.gridx = 0; gbc.gridy = 1;
         optionsPanel.add(new JLabel("Max Items:"), gbc);
         gbc.gridx = 1;
         maxItemsSpinner = new JSpinner(new SpinnerNumberModel(100, 1, 999999, 100));
@@ -67,7 +95,7 @@ public class ProxyHistoryParserDialog extends JDialog {
         optionsPanel.add(unlimitedCheckbox, gbc);
 
         // Direction
-        gbc.gridx = 0; gbc.gridy = 1; gbc.gridwidth = 1;
+        gbc.gridx = 0; gbc.gridy = 2; gbc.gridwidth = 1;
         optionsPanel.add(new JLabel("Direction:"), gbc);
         gbc.gridx = 1; gbc.gridwidth = 2;
         JPanel directionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
@@ -80,6 +108,14 @@ public class ProxyHistoryParserDialog extends JDialog {
         directionPanel.add(newestFirstRadio);
         optionsPanel.add(directionPanel, gbc);
 
+        // Incremental parsing
+        gbc.gridx = 1; gbc.gridy = 3; gbc.gridwidth = 2;
+        onlyUnparsedCheckbox = new JCheckBox("Skip items already parsed", true);
+        onlyUnparsedCheckbox.setToolTipText("<html>Only parse history items added since the last run, or left over from a cancelled one.<br>"
+                + "Editing a bucket or clearing its tokens starts it from scratch; untick to parse everything again anyway.</html>");
+        optionsPanel.add(onlyUnparsedCheckbox, gbc);
+        gbc.gridwidth = 1;
+
         add(optionsPanel, BorderLayout.NORTH);
 
         // Progress panel
@@ -146,21 +182,34 @@ public class ProxyHistoryParserDialog extends JDialog {
     }
 
     private void startParsing() {
-        // Check if bucket is enabled and Proxy tool is enabled for collection
-        boolean bucketEnabled = bucket.isEnabled();
-        boolean proxyToolEnabled = bucket.getCollectionRule().getEnabledTools().contains(burp.api.montoya.core.ToolType.PROXY);
+        List<Bucket> selectedBuckets = bucketList.getSelectedValuesList();
+        if (selectedBuckets.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Select at least one bucket to parse.", "Parse Proxy History", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
 
-        if (!bucketEnabled || !proxyToolEnabled) {
-            // Build warning message
-            StringBuilder message = new StringBuilder("This bucket would not normally collect tokens from the Proxy:\n\n");
+        // Check if each bucket is enabled and Proxy tool is enabled for collection
+        StringBuilder warnings = new StringBuilder();
+        for (Bucket b : selectedBuckets) {
+            boolean bucketEnabled = b.isEnabled();
+            boolean proxyToolEnabled = b.getCollectionRule().getEnabledTools().contains(burp.api.montoya.core.ToolType.PROXY);
+            String prefix = selectedBuckets.size() > 1 ? b.getName() + ": " : "";
 
             if (!bucketEnabled) {
-                message.append("• The bucket is currently DISABLED\n");
+                warnings.append("• ").append(prefix).append("The bucket is currently DISABLED\n");
             }
 
             if (!proxyToolEnabled) {
-                message.append("• The PROXY tool is not enabled for collection\n");
+                warnings.append("• ").append(prefix).append("The PROXY tool is not enabled for collection\n");
             }
+        }
+
+        if (warnings.length() > 0) {
+            // Build warning message
+            StringBuilder message = new StringBuilder(selectedBuckets.size() > 1
+                    ? "Some of these buckets would not normally collect tokens from the Proxy:\n\n"
+                    : "This bucket would not normally collect tokens from the Proxy:\n\n");
+            message.append(warnings);
 
             message.append("\nDo you want to parse the Proxy history and collect tokens anyway?");
 
@@ -177,38 +226,53 @@ public class ProxyHistoryParserDialog extends JDialog {
             }
         }
 
+        // Get options
+        int maxItems = unlimitedCheckbox.isSelected() ? 0 : (Integer) maxItemsSpinner.getValue();
+        boolean newestFirst = newestFirstRadio.isSelected();
+        boolean onlyUnparsed = onlyUnparsedCheckbox.isSelected();
+
+        // Count the items this run will scan for the progress bar
+        int totalItems = bucketManager.countProxyHistoryToParse(selectedBuckets, onlyUnparsed);
+        if (totalItems == 0) {
+            JOptionPane.showMessageDialog(
+                    this,
+                    onlyUnparsed ? "No new Proxy history items since the last parse." : "The Proxy history is empty.",
+                    "Parse Proxy History",
+                    JOptionPane.INFORMATION_MESSAGE
+            );
+            return;
+        }
+        int itemsToProcess = (maxItems > 0) ? Math.min(maxItems, totalItems) : totalItems;
+
         // Update button states
         parseButton.setText("Pause");
         parseButton.setEnabled(true);
         cancelButton.setEnabled(true);
+        bucketList.setEnabled(false);
         maxItemsSpinner.setEnabled(false);
         unlimitedCheckbox.setEnabled(false);
         oldestFirstRadio.setEnabled(false);
         newestFirstRadio.setEnabled(false);
+        onlyUnparsedCheckbox.setEnabled(false);
 
         // Reset flags
         cancelFlag.set(false);
         pauseFlag.set(false);
 
-        // Get options
-        int maxItems = unlimitedCheckbox.isSelected() ? 0 : (Integer) maxItemsSpinner.getValue();
-        boolean newestFirst = newestFirstRadio.isSelected();
-
-        // Get total history size for progress bar
-        int totalItems = api.proxy().history().size();
-        int itemsToProcess = (maxItems > 0) ? Math.min(maxItems, totalItems) : totalItems;
         progressBar.setMaximum(itemsToProcess);
         progressBar.setValue(0);
         statusLabel.setText("Processing item 0 of " + itemsToProcess);
+        long startTime = System.nanoTime();
 
         // Create and execute worker
-        parserWorker = new SwingWorker<Integer, Integer>() {
+        parserWorker = new SwingWorker<Map<Bucket, Integer>, Integer>() {
             @Override
-            protected Integer doInBackground() throws Exception {
+            protected Map<Bucket, Integer> doInBackground() throws Exception {
                 return bucketManager.parseProxyHistory(
-                        bucket,
+                        selectedBuckets,
                         maxItems,
                         newestFirst,
+                        onlyUnparsed,
                         progress -> publish(progress),
                         () -> cancelFlag.get(),
                         () -> pauseFlag.get()
@@ -220,14 +284,16 @@ public class ProxyHistoryParserDialog extends JDialog {
                 if (!chunks.isEmpty()) {
                     int progress = chunks.get(chunks.size() - 1);
                     progressBar.setValue(progress);
-                    statusLabel.setText("Processing item " + progress + " of " + itemsToProcess);
+                    statusLabel.setText("Processing item " + progress + " of " + itemsToProcess
+                            + " (" + throughput(progress, startTime) + " items/s)");
                 }
             }
 
             @Override
             protected void done() {
                 try {
-                    int tokensCollected = get();
+                    Map<Bucket, Integer> collected = get();
+                    int tokensCollected = collected.values().stream().mapToInt(Integer::intValue).sum();
                     // Use current progress bar value to show actual items processed
                     int itemsProcessed = progressBar.getValue();
 
@@ -240,7 +306,8 @@ public class ProxyHistoryParserDialog extends JDialog {
                                 ProxyHistoryParserDialog.this,
                                 "Parsing cancelled!\n\n" +
                                         "Items processed: " + itemsProcessed + " of " + itemsToProcess + "\n" +
-                                        "Tokens collected: " + tokensCollected,
+                                        "Tokens collected: " + tokensCollected + perBucket(collected) + "\n\n" +
+                                        "Parse again with \"Skip items already parsed\" to continue where it stopped.",
                                 "Parsing Cancelled",
                                 JOptionPane.INFORMATION_MESSAGE
                         );
@@ -249,14 +316,15 @@ public class ProxyHistoryParserDialog extends JDialog {
                     } else {
                         // Completed successfully
                         progressBar.setValue(itemsToProcess);
-                        statusLabel.setText("Completed - " + tokensCollected + " tokens collected");
+                        statusLabel.setText("Completed - " + tokensCollected + " tokens collected ("
+                                + throughput(itemsToProcess, startTime) + " items/s)");
 
                         // Show results dialog
                         JOptionPane.showMessageDialog(
                                 ProxyHistoryParserDialog.this,
                                 "Parsing complete!\n\n" +
                                         "Items processed: " + itemsToProcess + "\n" +
-                                        "Tokens collected: " + tokensCollected,
+                                        "Tokens collected: " + tokensCollected + perBucket(collected),
                                 "Parsing Complete",
                                 JOptionPane.INFORMATION_MESSAGE
                         );
@@ -276,10 +344,12 @@ public class ProxyHistoryParserDialog extends JDialog {
                     parseButton.setText("Parse");
                     parseButton.setEnabled(true);
                     cancelButton.setEnabled(false);
+                    bucketList.setEnabled(true);
                     maxItemsSpinner.setEnabled(!unlimitedCheckbox.isSelected());
                     unlimitedCheckbox.setEnabled(true);
                     oldestFirstRadio.setEnabled(true);
                     newestFirstRadio.setEnabled(true);
+                    onlyUnparsedCheckbox.setEnabled(true);
                 }
             }
         };
@@ -287,6 +357,25 @@ public class ProxyHistoryParserDialog extends JDialog {
         parserWorker.execute();
     }
 
+    private static long throughput(int items, long startTime) {
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        return seconds > 0 ? Math.round(items / seconds) : 0;
+    }
+
+    /**
+     * Per-bucket token counts for the results dialog, or "" when only one bucket was parsed.
+     */
+    private static String perBucket(Map<Bucket, Integer> collected) {
+        if (collected.size() < 2) {
+            return "";
+        }
+        StringBuilder lines = new StringBuilder("\n");
+        for (Map.Entry<Bucket, Integer> entry : collected.entrySet()) {
+            lines.append("\n  ").append(entry.getKey().getName()).append(": ").append(entry.getValue());
+        }
+        return lines.toString();
+    }
+
     private void cancelParsing() {
         if (parserWorker != null && !parserWorker.isDone()) {
             cancelFlag.set(true);
@@ -1,5 +1,6 @@
 package ui;
 
+import model.MessageSection;
 import model.RegexPattern;
 
 import javax.swing.*;
@@ -22,6 +23,10 @@ public class RegexPatternDialog extends JDialog {
     private JCheckBox multilineCheckBox;
     private JCheckBox matchRequestsCheckBox;
     private JCheckBox matchResponsesCheckBox;
+    private JComboBox<MessageSection> sectionComboBox;
+    private JTextField sectionHeaderField;
+    private JSpinner bodyPrefixSpinner;
+    private JTextField postTransformsField;
     private JTextArea postProcessingScriptArea;
     private JTextField patternTestTokenField;
     private JTextArea patternPreviewArea;
@@ -134,6 +139,34 @@ public class RegexPatternDialog extends JDialog {
 
         flagsSection.add(matchSourcesPanel, flagsGbc);
 
+        // Message section label
+        flagsGbc.gridx = 0; flagsGbc.gridy = 4; flagsGbc.gridwidth = 2; flagsGbc.insets = new Insets(10, 0, 5, 0);
+        JLabel sectionLabel = new JLabel("Message Section (what part of the message to scan):");
+        sectionLabel.setFont(sectionLabel.getFont().deriveFont(Font.BOLD));
+        flagsSection.add(sectionLabel, flagsGbc);
+
+        // Message section controls
+        flagsGbc.gridy = 5; flagsGbc.gridwidth = 1; flagsGbc.insets = new Insets(0, 10, 5, 15);
+        JPanel sectionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+
+        sectionComboBox = new JComboBox<>(MessageSection.values());
+        sectionComboBox.setToolTipText("Scanning a smaller section is faster and avoids matches elsewhere in the message");
+        sectionComboBox.addActionListener(e -> updateSectionControls());
+        sectionPanel.add(sectionComboBox);
+
+        sectionPanel.add(new JLabel("Header:"));
+        sectionHeaderField = new JTextField(12);
+        sectionHeaderField.setToolTipText("Header name, e.g. Authorization (case-insensitive)");
+        sectionPanel.add(sectionHeaderField);
+
+        sectionPanel.add(new JLabel("Bytes:"));
+        bodyPrefixSpinner = new JSpinner(new SpinnerNumberModel(8192, 1, Integer.MAX_VALUE, 1024));
+        bodyPrefixSpinner.setToolTipText("Number of bytes from the start of the body to scan");
+        sectionPanel.add(bodyPrefixSpinner);
+
+        flagsSection.add(sectionPanel, flagsGbc);
+        updateSectionControls();
+
         topPanel.add(flagsSection, gbc);
 
         // Comment
@@ -149,10 +182,10 @@ public class RegexPatternDialog extends JDialog {
 
         // Header
         JPanel scriptHeaderPanel = new JPanel(new BorderLayout());
-        JLabel scriptLabel = new JLabel("Post-Collection JavaScript");
+        JLabel scriptLabel = new JLabel("Post-Collection Transforms / JavaScript");
         scriptLabel.setFont(scriptLabel.getFont().deriveFont(Font.BOLD, 14f));
         scriptHeaderPanel.add(scriptLabel, BorderLayout.NORTH);
-        JLabel scriptDescLabel = new JLabel("Optional. Runs immediately after extracting token. (variable: token, must return string)");
+        JLabel scriptDescLabel = new JLabel("Optional. Transforms run first, then JavaScript, immediately after extracting token. (variable: token, must return string)");
         scriptDescLabel.setFont(scriptDescLabel.getFont().deriveFont(Font.PLAIN, 11f));
         scriptHeaderPanel.add(scriptDescLabel, BorderLayout.CENTER);
         scriptPanel.add(scriptHeaderPanel, BorderLayout.NORTH);
@@ -160,7 +193,23 @@ public class RegexPatternDialog extends JDialog {
         // Script and preview side by side
         JPanel scriptAndPreviewPanel = new JPanel(new GridLayout(1, 2, 10, 0));
 
-        // Script area on left
+        // Transforms and script area on left
+        JPanel transformsAndScriptPanel = new JPanel(new BorderLayout(5, 5));
+        JPanel transformsPanel = new JPanel(new BorderLayout(5, 0));
+        JLabel transformsLabel = new JLabel("Transforms:");
+        transformsLabel.setToolTipText(util.TokenTransformer.getSyntaxHelp());
+        transformsPanel.add(transformsLabel, BorderLayout.WEST);
+        postTransformsField = new JTextField();
+        postTransformsField.setFont(new Font("Monospaced", Font.PLAIN, 11));
+        postTransformsField.setToolTipText(util.TokenTransformer.getSyntaxHelp());
+        postTransformsField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { updatePatternPreview(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { updatePatternPreview(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { updatePatternPreview(); }
+        });
+        transformsPanel.add(postTransformsField, BorderLayout.CENTER);
+        transformsAndScriptPanel.add(transformsPanel, BorderLayout.NORTH);
+
         postProcessingScriptArea = new JTextArea(4, 40);
         postProcessingScriptArea.setFont(new Font("Monospaced", Font.PLAIN, 11));
         postProcessingScriptArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
@@ -168,7 +217,8 @@ public class RegexPatternDialog extends JDialog {
             public void removeUpdate(javax.swing.event.DocumentEvent e) { updatePatternPreview(); }
             public void insertUpdate(javax.swing.event.DocumentEvent e) { updatePatternPreview(); }
         });
-        scriptAndPreviewPanel.add(new JScrollPane(postProcessingScriptArea));
+        transformsAndScriptPanel.add(new JScrollPane(postProcessingScriptArea), BorderLayout.CENTER);
+        scriptAndPreviewPanel.add(transformsAndScriptPanel);
 
         // Preview area on right
         JPanel previewPanel = new JPanel(new BorderLayout(5, 5));
@@ -269,6 +319,11 @@ public class RegexPatternDialog extends JDialog {
         multilineCheckBox.setSelected(regexPattern.isMultilineMode());
         matchRequestsCheckBox.setSelected(regexPattern.isMatchRequests());
         matchResponsesCheckBox.setSelected(regexPattern.isMatchResponses());
+        sectionComboBox.setSelectedItem(regexPattern.getSection() != null ? regexPattern.getSection() : MessageSection.WHOLE_MESSAGE);
+        sectionHeaderField.setText(regexPattern.getSectionHeader() != null ? regexPattern.getSectionHeader() : "");
+        bodyPrefixSpinner.setValue(Math.max(1, regexPattern.getBodyPrefixBytes()));
+        updateSectionControls();
+        postTransformsField.setText(util.TokenTransformer.format(regexPattern.getPostTransforms()));
         postProcessingScriptArea.setText(regexPattern.getPostProcessingScript() != null ? regexPattern.getPostProcessingScript() : "");
     }
 
@@ -279,9 +334,19 @@ public class RegexPatternDialog extends JDialog {
         regexPattern.setMultilineMode(multilineCheckBox.isSelected());
         regexPattern.setMatchRequests(matchRequestsCheckBox.isSelected());
         regexPattern.setMatchResponses(matchResponsesCheckBox.isSelected());
+        regexPattern.setSection((MessageSection) sectionComboBox.getSelectedItem());
+        regexPattern.setSectionHeader(sectionHeaderField.getText().trim());
+        regexPattern.setBodyPrefixBytes((Integer) bodyPrefixSpinner.getValue());
+        regexPattern.setPostTransforms(util.TokenTransformer.parse(postTransformsField.getText()));
         regexPattern.setPostProcessingScript(postProcessingScriptArea.getText());
     }
 
+    private void updateSectionControls() {
+        MessageSection section = (MessageSection) sectionComboBox.getSelectedItem();
+        sectionHeaderField.setEnabled(section == MessageSection.HEADER);
+        bodyPrefixSpinner.setEnabled(section == MessageSection.BODY_PREFIX);
+    }
+
     private boolean validatePattern() {
         String pattern = patternField.getText().trim();
         if (pattern.isEmpty()) {
@@ -289,9 +354,13 @@ public class RegexPatternDialog extends JDialog {
             return false;
         }
 
+        if (sectionComboBox.getSelectedItem() == MessageSection.HEADER && sectionHeaderField.getText().trim().isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Header name cannot be empty!", "Error", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+
         try {
             Pattern.compile(pattern);
-            return true;
         } catch (PatternSyntaxException e) {
             JOptionPane.showMessageDialog(this,
                 "Invalid regex pattern:\n" + e.getMessage(),
@@ -299,6 +368,17 @@ public class RegexPatternDialog extends JDialog {
                 JOptionPane.ERROR_MESSAGE);
             return false;
         }
+
+        try {
+            util.TokenTransformer.parse(postTransformsField.getText());
+            return true;
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this,
+                "Invalid transforms:\n" + e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
     }
 
     private void testPattern() {
@@ -325,7 +405,7 @@ public class RegexPatternDialog extends JDialog {
                 flags |= Pattern.MULTILINE;
             }
 
-            Pattern p = Pattern.compile(pattern, flags);
+            Pattern p = util.PatternCache.compile(pattern, flags);
             Matcher m = p.matcher(testInput);
 
             StringBuilder result = new StringBuilder();
@@ -364,7 +444,8 @@ public class RegexPatternDialog extends JDialog {
         String testToken = patternTestTokenField.getText();
 
         try {
-            String result = jsProcessor.processTokenWithException(testToken, script);
+            String result = util.TokenTransformer.apply(testToken, util.TokenTransformer.parse(postTransformsField.getText()));
+            result = jsProcessor.processTokenWithException(result, script);
             patternPreviewArea.setText(result);
         } catch (Exception e) {
             patternPreviewArea.setText("Error: " + e.getMessage());
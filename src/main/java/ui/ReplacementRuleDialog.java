@@ -29,6 +29,7 @@ public class ReplacementRuleDialog extends JDialog {
     private JCheckBox replaceAllCheckbox;
     private JCheckBox applyToRequestsCheckBox;
     private JCheckBox applyToResponsesCheckBox;
+    private JTextField preTransformsField;
     private JTextArea preProcessingScriptArea;
     private JTextField scriptTestTokenField;
     private JTextArea scriptPreviewArea;
@@ -205,10 +206,10 @@ public class ReplacementRuleDialog extends JDialog {
 
         // Header
         JPanel scriptHeaderPanel = new JPanel(new BorderLayout());
-        JLabel scriptLabel = new JLabel("Pre-Replacement JavaScript");
+        JLabel scriptLabel = new JLabel("Pre-Replacement Transforms / JavaScript");
         scriptLabel.setFont(scriptLabel.getFont().deriveFont(Font.BOLD, 14f));
         scriptHeaderPanel.add(scriptLabel, BorderLayout.NORTH);
-        JLabel scriptDescLabel = new JLabel("Optional. Runs immediately before replacement. (variable: token, must return string)");
+        JLabel scriptDescLabel = new JLabel("Optional. Transforms run first, then JavaScript, immediately before replacement. (variable: token, must return string)");
         scriptDescLabel.setFont(scriptDescLabel.getFont().deriveFont(Font.PLAIN, 11f));
         scriptHeaderPanel.add(scriptDescLabel, BorderLayout.CENTER);
         scriptPanel.add(scriptHeaderPanel, BorderLayout.NORTH);
@@ -216,7 +217,23 @@ public class ReplacementRuleDialog extends JDialog {
         // Script and preview side by side
         JPanel scriptAndPreviewPanel = new JPanel(new GridLayout(1, 2, 10, 0));
 
-        // Script area on left
+        // Transforms and script area on left
+        JPanel transformsAndScriptPanel = new JPanel(new BorderLayout(5, 5));
+        JPanel transformsPanel = new JPanel(new BorderLayout(5, 0));
+        JLabel transformsLabel = new JLabel("Transforms:");
+        transformsLabel.setToolTipText(util.TokenTransformer.getSyntaxHelp());
+        transformsPanel.add(transformsLabel, BorderLayout.WEST);
+        preTransformsField = new JTextField();
+        preTransformsField.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        preTransformsField.setToolTipText(util.TokenTransformer.getSyntaxHelp());
+        preTransformsField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { updateScriptPreview(); applyReplacement(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { updateScriptPreview(); applyReplacement(); }
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { updateScriptPreview(); applyReplacement(); }
+        });
+        transformsPanel.add(preTransformsField, BorderLayout.CENTER);
+        transformsAndScriptPanel.add(transformsPanel, BorderLayout.NORTH);
+
         preProcessingScriptArea = new JTextArea(8, 40);
         preProcessingScriptArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
         preProcessingScriptArea.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
@@ -224,7 +241,8 @@ public class ReplacementRuleDialog extends JDialog {
             public void removeUpdate(javax.swing.event.DocumentEvent e) { updateScriptPreview(); applyReplacement(); }
             public void insertUpdate(javax.swing.event.DocumentEvent e) { updateScriptPreview(); applyReplacement(); }
         });
-        scriptAndPreviewPanel.add(new JScrollPane(preProcessingScriptArea));
+        transformsAndScriptPanel.add(new JScrollPane(preProcessingScriptArea), BorderLayout.CENTER);
+        scriptAndPreviewPanel.add(transformsAndScriptPanel);
 
         // Preview area on right
         JPanel previewPanel = new JPanel(new BorderLayout(5, 5));
@@ -338,6 +356,15 @@ public class ReplacementRuleDialog extends JDialog {
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton okButton = new JButton("OK");
         okButton.addActionListener(e -> {
+            try {
+                util.TokenTransformer.parse(preTransformsField.getText());
+            } catch (IllegalArgumentException ex) {
+                JOptionPane.showMessageDialog(this,
+                    "Invalid transforms:\n" + ex.getMessage(),
+                    "Error",
+                    JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             saveToRule();
             confirmed = true;
             dispose();
@@ -385,6 +412,7 @@ public class ReplacementRuleDialog extends JDialog {
         replaceAllCheckbox.setSelected(rule.isReplaceAll());
         applyToRequestsCheckBox.setSelected(rule.isApplyToRequests());
         applyToResponsesCheckBox.setSelected(rule.isApplyToResponses());
+        preTransformsField.setText(util.TokenTransformer.format(rule.getPreTransforms()));
         preProcessingScriptArea.setText(rule.getPreProcessingScript());
     }
 
@@ -396,6 +424,7 @@ public class ReplacementRuleDialog extends JDialog {
         rule.setReplaceAll(replaceAllCheckbox.isSelected());
         rule.setApplyToRequests(applyToRequestsCheckBox.isSelected());
         rule.setApplyToResponses(applyToResponsesCheckBox.isSelected());
+        rule.setPreTransforms(util.TokenTransformer.parse(preTransformsField.getText()));
         rule.setPreProcessingScript(preProcessingScriptArea.getText());
     }
 
@@ -404,7 +433,8 @@ public class ReplacementRuleDialog extends JDialog {
         String testToken = scriptTestTokenField.getText();
 
         try {
-            String result = jsProcessor.processTokenWithException(testToken, script);
+            String result = util.TokenTransformer.apply(testToken, util.TokenTransformer.parse(preTransformsField.getText()));
+            result = jsProcessor.processTokenWithException(result, script);
             scriptPreviewArea.setText(result);
         } catch (Exception e) {
             scriptPreviewArea.setText("Error: " + e.getMessage());
@@ -464,16 +494,17 @@ public class ReplacementRuleDialog extends JDialog {
         ReplacementLocation location = (ReplacementLocation) locationCombo.getSelectedItem();
         String fieldName = fieldNameField.getText();
 
-        // Apply pre-processing script if defined
+        // Apply pre-processing transforms and script if defined
         String processedToken = tokenValue;
         String script = preProcessingScriptArea.getText();
-        if (script != null && !script.trim().isEmpty()) {
-            try {
-                processedToken = jsProcessor.processTokenWithException(tokenValue, script);
-            } catch (Exception e) {
-                // On error, use original token
-                processedToken = tokenValue;
+        try {
+            processedToken = util.TokenTransformer.apply(tokenValue, util.TokenTransformer.parse(preTransformsField.getText()));
+            if (script != null && !script.trim().isEmpty()) {
+                processedToken = jsProcessor.processTokenWithException(processedToken, script);
             }
+        } catch (Exception e) {
+            // On error, use original token
+            processedToken = tokenValue;
         }
 
         switch (location) {
@@ -570,16 +601,17 @@ public class ReplacementRuleDialog extends JDialog {
         ReplacementLocation location = (ReplacementLocation) locationCombo.getSelectedItem();
         String fieldName = fieldNameField.getText();
 
-        // Apply pre-processing script if defined
+        // Apply pre-processing transforms and script if defined
         String processedToken = tokenValue;
         String script = preProcessingScriptArea.getText();
-        if (script != null && !script.trim().isEmpty()) {
-            try {
-                processedToken = jsProcessor.processTokenWithException(tokenValue, script);
-            } catch (Exception e) {
-                // On error, use original token
-                processedToken = tokenValue;
+        try {
+            processedToken = util.TokenTransformer.apply(tokenValue, util.TokenTransformer.parse(preTransformsField.getText()));
+            if (script != null && !script.trim().isEmpty()) {
+                processedToken = jsProcessor.processTokenWithException(processedToken, script);
             }
+        } catch (Exception e) {
+            // On error, use original token
+            processedToken = tokenValue;
         }
 
         switch (location) {
@@ -0,0 +1,54 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only CharSequence view over a range of a byte array, one char per byte (ISO-8859-1).
+ * Lets java.util.regex match directly against raw HTTP message bytes without decoding or
+ * copying them, and match offsets are byte offsets, so binary and non-UTF-8 content is never
+ * altered outside the ranges that are replaced.
+ */
+public class ByteCharSequence implements CharSequence {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    public ByteCharSequence(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public ByteCharSequence(byte[] bytes, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " out of bounds for length " + bytes.length);
+        }
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        return (char) (bytes[offset + index] & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range " + start + "-" + end + " out of bounds for length " + length);
+        }
+        return new ByteCharSequence(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
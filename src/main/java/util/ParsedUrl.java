@@ -0,0 +1,61 @@
+package util;
+
+/**
+ * A URL split into the parts UrlMatcher checks: protocol, host, port and path (without the
+ * query string). Parsed once per message and shared by every bucket's matchers.
+ */
+public class ParsedUrl {
+    private final String url;
+    private final String protocol; // Lower-case, "" if the URL has no scheme
+    private final String host;
+    private final String port; // "" if the URL has no explicit port
+    private final String path; // "/" if the URL has no path
+
+    private ParsedUrl(String url, String protocol, String host, String port, String path) {
+        this.url = url;
+        this.protocol = protocol;
+        this.host = host;
+        this.port = port;
+        this.path = path;
+    }
+
+    public static ParsedUrl parse(String url) {
+        if (url == null) {
+            url = "";
+        }
+
+        // Extract protocol
+        String protocol = "";
+        String remainder = url;
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd >= 0) {
+            protocol = url.substring(0, schemeEnd).toLowerCase();
+            remainder = url.substring(schemeEnd + 3);
+        }
+
+        // Extract host, port and path, stripping the query string from the path
+        int slashIndex = remainder.indexOf('/');
+        String hostPort = slashIndex >= 0 ? remainder.substring(0, slashIndex) : remainder;
+        String path = slashIndex >= 0 ? remainder.substring(slashIndex) : "/";
+        int queryIndex = path.indexOf('?');
+        if (queryIndex >= 0) {
+            path = path.substring(0, queryIndex);
+        }
+
+        String host = hostPort;
+        String port = "";
+        int colonIndex = hostPort.lastIndexOf(':');
+        if (colonIndex >= 0) {
+            host = hostPort.substring(0, colonIndex);
+            port = hostPort.substring(colonIndex + 1);
+        }
+
+        return new ParsedUrl(url, protocol, host, port, path);
+    }
+
+    public String getUrl() { return url; }
+    public String getProtocol() { return protocol; }
+    public String getHost() { return host; }
+    public String getPort() { return port; }
+    public String getPath() { return path; }
+}
@@ -0,0 +1,61 @@
+package util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Shared cache of compiled regex patterns keyed on pattern text plus compile flags.
+ * Collection runs for every HTTP message, so compiling the same patterns over and
+ * over is avoided by looking them up here instead of calling Pattern.compile directly.
+ */
+public class PatternCache {
+    // Upper bound on cached entries; the UI previews compile a pattern per keystroke
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final Map<String, Pattern> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Get a compiled pattern, compiling and caching it on first use.
+     *
+     * @param regex The regex source
+     * @param flags The Pattern flags (e.g. Pattern.DOTALL | Pattern.MULTILINE)
+     * @return The compiled pattern
+     * @throws java.util.regex.PatternSyntaxException If the regex is invalid (invalid patterns are not cached)
+     */
+    public static Pattern compile(String regex, int flags) {
+        String key = flags + ":" + regex;
+        Pattern pattern = cache.get(key);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex, flags);
+            if (cache.size() >= MAX_ENTRIES) {
+                cache.clear();
+            }
+            cache.put(key, pattern);
+        }
+        return pattern;
+    }
+
+    /**
+     * Get a compiled pattern without flags.
+     */
+    public static Pattern compile(String regex) {
+        return compile(regex, 0);
+    }
+
+    /**
+     * Remove a pattern from the cache, e.g. after the owning RegexPattern was edited.
+     */
+    public static void invalidate(String regex, int flags) {
+        if (regex != null) {
+            cache.remove(flags + ":" + regex);
+        }
+    }
+
+    /**
+     * Remove all cached patterns.
+     */
+    public static void clear() {
+        cache.clear();
+    }
+}
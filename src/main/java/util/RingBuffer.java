@@ -0,0 +1,272 @@
+package util;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Growable circular array with O(1) operations at both ends and O(1) indexed get/set.
+ * Inserting, removing or moving in the middle shifts only the shorter side (or the
+ * elements between the two positions), never copying the whole buffer.
+ * Not thread-safe; Bucket guards it with its read/write lock.
+ */
+public class RingBuffer<E> implements Iterable<E> {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Capacity to return to when cleared, so a drained bucket releases a grown array
+    private final int initialCapacity;
+    private Object[] elements;
+    private int head;
+    private int size;
+
+    public RingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RingBuffer(int initialCapacity) {
+        this.initialCapacity = Math.max(1, initialCapacity);
+        this.elements = new Object[this.initialCapacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        checkIndex(index, size);
+        return (E) elements[slot(index)];
+    }
+
+    /**
+     * Replace the element at index.
+     *
+     * @return The previous element
+     */
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        checkIndex(index, size);
+        int slot = slot(index);
+        E previous = (E) elements[slot];
+        elements[slot] = element;
+        return previous;
+    }
+
+    public E getFirst() {
+        if (size == 0) throw new NoSuchElementException();
+        return get(0);
+    }
+
+    public E getLast() {
+        if (size == 0) throw new NoSuchElementException();
+        return get(size - 1);
+    }
+
+    public void addFirst(E element) {
+        ensureCapacity(size + 1);
+        head = head == 0 ? elements.length - 1 : head - 1;
+        elements[head] = element;
+        size++;
+    }
+
+    public void addLast(E element) {
+        ensureCapacity(size + 1);
+        elements[slot(size)] = element;
+        size++;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E removeFirst() {
+        if (size == 0) throw new NoSuchElementException();
+        E element = (E) elements[head];
+        elements[head] = null;
+        head = head + 1 == elements.length ? 0 : head + 1;
+        size--;
+        return element;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E removeLast() {
+        if (size == 0) throw new NoSuchElementException();
+        int slot = slot(size - 1);
+        E element = (E) elements[slot];
+        elements[slot] = null;
+        size--;
+        return element;
+    }
+
+    /**
+     * Insert at index (0..size), shifting whichever side of the buffer is shorter.
+     */
+    public void add(int index, E element) {
+        checkIndex(index, size + 1);
+        if (index == size) {
+            addLast(element);
+            return;
+        }
+        if (index == 0) {
+            addFirst(element);
+            return;
+        }
+
+        ensureCapacity(size + 1);
+        if (index < size / 2) {
+            // Open a slot before head and shift the front part one step towards it
+            head = head == 0 ? elements.length - 1 : head - 1;
+            for (int i = 0; i < index; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            for (int i = size; i > index; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+        elements[slot(index)] = element;
+        size++;
+    }
+
+    /**
+     * Remove the element at index, shifting whichever side of the buffer is shorter.
+     */
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        checkIndex(index, size);
+        E element = (E) elements[slot(index)];
+
+        if (index < size / 2) {
+            for (int i = index; i > 0; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+            elements[head] = null;
+            head = head + 1 == elements.length ? 0 : head + 1;
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+        size--;
+        return element;
+    }
+
+    /**
+     * Move the element at fromIndex to toIndex, shifting only the elements in between.
+     */
+    public void move(int fromIndex, int toIndex) {
+        checkIndex(fromIndex, size);
+        checkIndex(toIndex, size);
+        Object element = elements[slot(fromIndex)];
+        if (fromIndex < toIndex) {
+            for (int i = fromIndex; i < toIndex; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            for (int i = fromIndex; i > toIndex; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+        elements[slot(toIndex)] = element;
+    }
+
+    /**
+     * Remove every element matching the filter in a single in-place compaction pass.
+     * The filter is evaluated once per element, in order.
+     *
+     * @return The number of elements removed
+     */
+    @SuppressWarnings("unchecked")
+    public int removeIf(Predicate<? super E> filter) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            Object element = elements[slot(i)];
+            if (!filter.test((E) element)) {
+                elements[slot(kept++)] = element;
+            }
+        }
+        int removed = size - kept;
+        for (int i = kept; i < size; i++) {
+            elements[slot(i)] = null;
+        }
+        size = kept;
+        return removed;
+    }
+
+    public boolean contains(Object element) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(elements[slot(i)], element)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        if (elements.length > initialCapacity) {
+            elements = new Object[initialCapacity];
+        } else {
+            Arrays.fill(elements, null);
+        }
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Grow the backing array so it holds at least minCapacity elements without resizing.
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity <= elements.length) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, elements.length * 2);
+        elements = copyElements(newCapacity);
+        head = 0;
+    }
+
+    /**
+     * Copy the elements, in order, into a new list.
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> toList() {
+        return (List<E>) new ArrayList<>(Arrays.asList(copyElements(size)));
+    }
+
+    private Object[] copyElements(int length) {
+        Object[] copy = new Object[length];
+        int firstPart = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, copy, 0, firstPart);
+        System.arraycopy(elements, 0, copy, firstPart, size - firstPart);
+        return copy;
+    }
+
+    private int slot(int index) {
+        int slot = head + index;
+        return slot >= elements.length ? slot - elements.length : slot;
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + bound);
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public E next() {
+                if (index >= size) throw new NoSuchElementException();
+                return get(index++);
+            }
+        };
+    }
+}
@@ -0,0 +1,294 @@
+package util;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import model.TransformStep;
+import model.TransformType;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Applies declarative transform chains (base64, URL encoding, JSON field extraction,
+ * substring, prefix/suffix, ...) to tokens in plain Java.
+ * These cover the common post-collection and pre-replacement cases without a JavaScript
+ * evaluation per token; a script, if configured, runs after the chain.
+ *
+ * Chains are written as text, one step per "|", e.g.:
+ *   base64-decode | json:access_token | prefix:Bearer
+ * Arguments follow the ":" verbatim up to the next " |". Use "\|" for a literal pipe
+ * and "\\" for a literal backslash.
+ */
+public class TokenTransformer {
+
+    private TokenTransformer() {
+    }
+
+    /**
+     * Apply every step in order, throwing if a step cannot be applied.
+     *
+     * @param token The token value to transform
+     * @param steps The steps to apply, may be null or empty
+     * @return The transformed token
+     * @throws IllegalArgumentException If a step fails (e.g. invalid JSON or missing field)
+     */
+    public static String apply(String token, List<TransformStep> steps) {
+        if (steps == null || steps.isEmpty()) {
+            return token;
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            token = applyStep(token, steps.get(i));
+        }
+        return token;
+    }
+
+    /**
+     * Array variant used by the precompiled rule plan.
+     */
+    public static String apply(String token, TransformStep[] steps) {
+        if (steps == null) {
+            return token;
+        }
+        for (TransformStep step : steps) {
+            token = applyStep(token, step);
+        }
+        return token;
+    }
+
+    private static String applyStep(String token, TransformStep step) {
+        if (token == null || step == null || step.getType() == null) {
+            return token;
+        }
+        String argument = step.getArgument() != null ? step.getArgument() : "";
+
+        switch (step.getType()) {
+            case BASE64_DECODE:
+                return TokenEncoder.decode(token, TokenEncoder.EncodingType.BASE64);
+            case BASE64_ENCODE:
+                return TokenEncoder.encode(token, TokenEncoder.EncodingType.BASE64);
+            case BASE64URL_DECODE:
+                try {
+                    return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    // Same as Base64: leave undecodable tokens untouched
+                    return token;
+                }
+            case BASE64URL_ENCODE:
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+            case URL_DECODE:
+                if (token.indexOf('%') < 0 && token.indexOf('+') < 0) {
+                    return token;
+                }
+                return URLDecoder.decode(token, StandardCharsets.UTF_8);
+            case URL_ENCODE:
+                return URLEncoder.encode(token, StandardCharsets.UTF_8);
+            case JSON_FIELD:
+                return extractJsonField(token, argument);
+            case SUBSTRING:
+                return substring(token, argument);
+            case PREFIX:
+                return argument.isEmpty() ? token : argument.concat(token);
+            case SUFFIX:
+                return argument.isEmpty() ? token : token.concat(argument);
+            case STRIP_PREFIX:
+                return !argument.isEmpty() && token.startsWith(argument) ? token.substring(argument.length()) : token;
+            case STRIP_SUFFIX:
+                return !argument.isEmpty() && token.endsWith(argument)
+                        ? token.substring(0, token.length() - argument.length()) : token;
+            case TRIM:
+                return token.trim();
+            case LOWERCASE:
+                return token.toLowerCase(Locale.ROOT);
+            case UPPERCASE:
+                return token.toUpperCase(Locale.ROOT);
+            default:
+                return token;
+        }
+    }
+
+    private static String extractJsonField(String token, String path) {
+        JsonElement element;
+        try {
+            element = JsonParser.parseString(token);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Token is not valid JSON");
+        }
+
+        if (!path.isEmpty()) {
+            int start = 0;
+            while (start <= path.length()) {
+                int end = path.indexOf('.', start);
+                if (end < 0) {
+                    end = path.length();
+                }
+                String segment = path.substring(start, end);
+                element = child(element, segment);
+                if (element == null) {
+                    throw new IllegalArgumentException("JSON field not found: " + path);
+                }
+                start = end + 1;
+            }
+        }
+
+        if (element.isJsonNull()) {
+            return "";
+        }
+        return element.isJsonPrimitive() ? element.getAsString() : element.toString();
+    }
+
+    private static JsonElement child(JsonElement element, String segment) {
+        if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            return object.get(segment);
+        }
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            try {
+                int index = Integer.parseInt(segment);
+                if (index < 0) {
+                    index += array.size();
+                }
+                return index >= 0 && index < array.size() ? array.get(index) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static String substring(String token, String argument) {
+        int comma = argument.indexOf(',');
+        int length = token.length();
+        int start;
+        int end;
+        try {
+            start = Integer.parseInt(comma < 0 ? argument.trim() : argument.substring(0, comma).trim());
+            end = comma < 0 ? length : Integer.parseInt(argument.substring(comma + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid substring range: " + argument);
+        }
+
+        // Negative positions count from the end, as with JavaScript's slice()
+        if (start < 0) start = Math.max(0, length + start);
+        if (end < 0) end = Math.max(0, length + end);
+        start = Math.min(start, length);
+        end = Math.min(end, length);
+
+        return start >= end ? "" : token.substring(start, end);
+    }
+
+    /**
+     * Parse a transform chain from its text form.
+     *
+     * @param text The chain, e.g. "url-decode | json:token"
+     * @return The parsed steps (empty if the text is blank)
+     * @throws IllegalArgumentException If a step name is unknown or a required argument is missing
+     */
+    public static List<TransformStep> parse(String text) {
+        List<TransformStep> steps = new ArrayList<>();
+        if (text == null || text.trim().isEmpty()) {
+            return steps;
+        }
+
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length() && (text.charAt(i + 1) == '|' || text.charAt(i + 1) == '\\')) {
+                current.append(text.charAt(++i));
+            } else if (c == '|') {
+                addStep(steps, current.toString(), true);
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        addStep(steps, current.toString(), false);
+
+        return steps;
+    }
+
+    private static void addStep(List<TransformStep> steps, String text, boolean beforeSeparator) {
+        String stripped = text.stripLeading();
+        if (stripped.trim().isEmpty()) {
+            return;
+        }
+
+        int colon = stripped.indexOf(':');
+        String name = (colon < 0 ? stripped : stripped.substring(0, colon)).trim();
+        TransformType type = TransformType.fromKey(name);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown transform: " + name);
+        }
+
+        String argument = "";
+        if (type.isRequiresArgument()) {
+            if (colon < 0) {
+                throw new IllegalArgumentException("Transform '" + name + "' requires an argument (" + name + ":value)");
+            }
+            argument = stripped.substring(colon + 1);
+            // Drop the single space format() puts before a " | " separator; everything else is kept
+            if (beforeSeparator && argument.endsWith(" ")) {
+                argument = argument.substring(0, argument.length() - 1);
+            }
+        }
+
+        steps.add(new TransformStep(type, argument));
+    }
+
+    /**
+     * Format steps back into their text form, the inverse of parse().
+     */
+    public static String format(List<TransformStep> steps) {
+        if (steps == null || steps.isEmpty()) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (TransformStep step : steps) {
+            if (step == null || step.getType() == null) continue;
+            if (text.length() > 0) {
+                text.append(" | ");
+            }
+            text.append(step.getType().getKey());
+            if (step.getType().isRequiresArgument()) {
+                text.append(':').append(step.getArgument().replace("\\", "\\\\").replace("|", "\\|"));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Tooltip text listing the available steps and the chain syntax.
+     */
+    public static String getSyntaxHelp() {
+        StringBuilder help = new StringBuilder("<html>Steps separated by |, applied in order before any JavaScript.<br>"
+                + "Example: <code>base64-decode | json:access_token | prefix:Bearer </code><br><br>");
+        for (TransformType type : TransformType.values()) {
+            help.append("<code>").append(type.getKey());
+            if (type.isRequiresArgument()) {
+                help.append(":value");
+            }
+            help.append("</code> - ").append(type.getDescription()).append("<br>");
+        }
+        return help.append("</html>").toString();
+    }
+
+    /**
+     * Copy a list of steps, e.g. when duplicating a bucket.
+     */
+    public static List<TransformStep> copy(List<TransformStep> steps) {
+        List<TransformStep> copy = new ArrayList<>();
+        if (steps != null) {
+            for (TransformStep step : steps) {
+                copy.add(step.copy());
+            }
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,127 @@
+package core;
+
+import burp.api.montoya.proxy.ProxyHttpRequestResponse;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryCheckpointTest {
+    private static final ZonedDateTime START = ZonedDateTime.parse("2026-01-01T00:00:00Z");
+
+    @Test
+    void rangesMergeWithOverlappingAndTouchingNeighbours() {
+        List<ProxyHttpRequestResponse> history = history(100);
+        HistoryCheckpoint checkpoint = new HistoryCheckpoint();
+        checkpoint.markParsed(10, 20, history);
+        checkpoint.markParsed(30, 40, history);
+        checkpoint.markParsed(50, 60, history);
+        // Touches the first range and overlaps the second
+        checkpoint.markParsed(20, 35, history);
+
+        HistoryCheckpoint.Ranges ranges = checkpoint.validate(history, 0, 0);
+        assertParsed(ranges, 10, 40);
+        assertParsed(ranges, 50, 60);
+        assertFalse(ranges.contains(9));
+        assertFalse(ranges.contains(45));
+
+        // Swallows everything
+        checkpoint.markParsed(0, 100, history);
+        assertParsed(checkpoint.validate(history, 0, 0), 0, 100);
+    }
+
+    @Test
+    void newItemsKeepTheRanges() {
+        HistoryCheckpoint checkpoint = new HistoryCheckpoint();
+        checkpoint.markParsed(0, 10, history(10));
+
+        HistoryCheckpoint.Ranges ranges = checkpoint.validate(history(15), 0, 0);
+        assertParsed(ranges, 0, 10);
+        assertFalse(ranges.contains(10));
+    }
+
+    @Test
+    void clearedOrShiftedHistoryDropsTheRanges() {
+        HistoryCheckpoint checkpoint = new HistoryCheckpoint();
+        checkpoint.markParsed(0, 10, history(10));
+        assertFalse(checkpoint.validate(history(5), 0, 0).contains(0));
+
+        checkpoint.markParsed(0, 10, history(10));
+        // Same length, but the items moved: the last parsed item has a different time
+        List<ProxyHttpRequestResponse> shifted = new ArrayList<>(history(11).subList(1, 11));
+        assertFalse(checkpoint.validate(shifted, 0, 0).contains(0));
+    }
+
+    @Test
+    void editedOrClearedBucketDropsTheRanges() {
+        List<ProxyHttpRequestResponse> history = history(10);
+        HistoryCheckpoint checkpoint = new HistoryCheckpoint();
+        checkpoint.validate(history, 0, 0);
+        checkpoint.markParsed(0, 10, history);
+        assertTrue(checkpoint.validate(history, 0, 0).contains(5));
+
+        assertFalse(checkpoint.validate(history, 1, 0).contains(5));
+        checkpoint.markParsed(0, 10, history);
+        assertTrue(checkpoint.validate(history, 1, 0).contains(5));
+
+        assertFalse(checkpoint.validate(history, 1, 1).contains(5));
+    }
+
+    @Test
+    void nextUnparsedSkipsWhatEveryBucketHasParsed() {
+        List<ProxyHttpRequestResponse> history = history(100);
+        HistoryCheckpoint first = new HistoryCheckpoint();
+        HistoryCheckpoint second = new HistoryCheckpoint();
+        first.markParsed(0, 50, history);
+        second.markParsed(0, 30, history);
+        second.markParsed(40, 60, history);
+        HistoryCheckpoint.Ranges[] parsed = {first.validate(history, 0, 0), second.validate(history, 0, 0)};
+
+        assertEquals(30, HistoryCheckpoint.nextUnparsed(parsed, 0, false, 100));
+        assertEquals(35, HistoryCheckpoint.nextUnparsed(parsed, 35, false, 100));
+        assertEquals(50, HistoryCheckpoint.nextUnparsed(parsed, 40, false, 100));
+        assertEquals(99, HistoryCheckpoint.nextUnparsed(parsed, 99, true, 100));
+        assertEquals(39, HistoryCheckpoint.nextUnparsed(parsed, 45, true, 100));
+        assertEquals(-1, HistoryCheckpoint.nextUnparsed(parsed, 20, true, 100));
+
+        first.markParsed(50, 100, history);
+        second.markParsed(30, 100, history);
+        parsed = new HistoryCheckpoint.Ranges[]{first.validate(history, 0, 0), second.validate(history, 0, 0)};
+        assertEquals(-1, HistoryCheckpoint.nextUnparsed(parsed, 0, false, 100));
+    }
+
+    @Test
+    void nothingParsedStartsWhereAsked() {
+        HistoryCheckpoint.Ranges empty = new HistoryCheckpoint().validate(history(10), 0, 0);
+        HistoryCheckpoint.Ranges[] parsed = {empty};
+        assertEquals(3, HistoryCheckpoint.nextUnparsed(parsed, 3, false, 10));
+        assertEquals(3, HistoryCheckpoint.nextUnparsed(parsed, 3, true, 10));
+        assertEquals(-1, HistoryCheckpoint.nextUnparsed(parsed, 10, false, 10));
+    }
+
+    private static void assertParsed(HistoryCheckpoint.Ranges ranges, int start, int end) {
+        for (int i = start; i < end; i++) {
+            assertTrue(ranges.contains(i), "item " + i + " should be parsed");
+        }
+    }
+
+    // Items only need a time, one second apart
+    private static List<ProxyHttpRequestResponse> history(int size) {
+        List<ProxyHttpRequestResponse> history = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ZonedDateTime time = START.plusSeconds(i);
+            history.add((ProxyHttpRequestResponse) Proxy.newProxyInstance(HistoryCheckpointTest.class.getClassLoader(),
+                    new Class<?>[]{ProxyHttpRequestResponse.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("time")) {
+                            return time;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }));
+        }
+        return history;
+    }
+}
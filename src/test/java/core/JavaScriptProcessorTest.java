@@ -0,0 +1,52 @@
+package core;
+
+import burp.api.montoya.MontoyaApi;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaScriptProcessorTest {
+    // Scripts here don't touch the Montoya helpers, so every API call can return null
+    private static final MontoyaApi API = (MontoyaApi) Proxy.newProxyInstance(
+            JavaScriptProcessorTest.class.getClassLoader(), new Class<?>[]{MontoyaApi.class}, (proxy, method, args) -> null);
+
+    @Test
+    void pooledContextsAreSharedAcrossThreads() throws Exception {
+        JavaScriptProcessor processor = new JavaScriptProcessor(null, API);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        String token = thread + "-" + i;
+                        assertEquals(token.toUpperCase() + "!", processor.processTokenWithException(token, "return token.toUpperCase() + '!';"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void worksAgainAfterShutdown() throws Exception {
+        JavaScriptProcessor processor = new JavaScriptProcessor(null, API);
+        assertEquals("ab", processor.processTokenWithException("a", "return token + 'b';"));
+        processor.shutdown();
+        assertEquals("ac", processor.processTokenWithException("a", "return token + 'c';"));
+    }
+}
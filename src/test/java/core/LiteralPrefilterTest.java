@@ -0,0 +1,134 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiteralPrefilterTest {
+
+    private static String literal(String regex) {
+        return LiteralPrefilter.requiredLiteral(regex, 0);
+    }
+
+    @Test
+    void plainLiteralIsRequired() {
+        assertEquals("token=", literal("token=([a-f0-9]+)"));
+        assertEquals("csrf", literal("csrf\\s*=\\s*\"(\\w+)\""));
+    }
+
+    @Test
+    void longestRunWins() {
+        assertEquals("session_id", literal("ab[0-9]session_id=?"));
+    }
+
+    @Test
+    void quantifiedAtomEndsTheRun() {
+        assertEquals("abc", literal("abcd?"));
+        assertNull(literal("ab+c"));
+    }
+
+    @Test
+    void alternationAndFlagsGiveUp() {
+        assertNull(literal("foo|bar"));
+        assertNull(literal("(?i)token"));
+        assertNull(LiteralPrefilter.requiredLiteral("token", Pattern.CASE_INSENSITIVE));
+        assertNull(literal("\\Qtoken\\E"));
+    }
+
+    @Test
+    void escapedPunctuationIsLiteral() {
+        assertEquals("a.b.c", literal("a\\.b\\.c"));
+    }
+
+    @Test
+    void hexEscapeIsConsumedWhole() {
+        assertEquals("bcd", literal("\\x41bcd"));
+        assertEquals("bcd", literal("\\x{41}bcd"));
+    }
+
+    @Test
+    void unicodeEscapeIsConsumedWhole() {
+        assertEquals("bcd", literal("\\u0041bcd"));
+    }
+
+    @Test
+    void octalEscapeIsConsumedWhole() {
+        assertEquals("bcd", literal("\\0101bcd"));
+        assertEquals("8bcd", literal("\\0778bcd"));
+        assertEquals("bcd", literal("\\07bcd"));
+    }
+
+    @Test
+    void controlEscapeIsConsumedWhole() {
+        assertEquals("bcd", literal("\\cMbcd"));
+    }
+
+    @Test
+    void multiDigitBackReferenceIsNotLiteral() {
+        String literal = literal("(a)\\10abc");
+        assertTrue(literal == null || !literal.contains("0"), literal);
+        assertEquals("xyz", literal("(a)\\1xyz"));
+    }
+
+    @Test
+    void propertyEscapesAreConsumedWhole() {
+        assertEquals("abc", literal("\\pLabc"));
+        assertEquals("abc", literal("\\p{Alpha}abc"));
+        assertEquals("abc", literal("(?<n>x)\\k<n>abc"));
+    }
+
+    @Test
+    void unknownEscapeGivesUp() {
+        assertNull(literal("\\yabc"));
+    }
+
+    @Test
+    void escapesInsideClassesAndGroups() {
+        assertEquals("tail", literal("[\\x5d]tail"));
+        assertEquals("tail", literal("(\\u0029x)tail"));
+    }
+
+    @Test
+    void everyRequiredLiteralActuallyOccursInMatches() {
+        String[] regexes = {"\\x41bcd", "\\u0041bcd", "\\0101bcd", "(a)\\10abc", "\\cMbcd", "\\pLabc"};
+        String[] inputs = {"Abcd", "Abcd", "Abcd", "aa0abc", "\rbcd", "Xabc"};
+        for (int n = 0; n < regexes.length; n++) {
+            Pattern pattern = Pattern.compile(regexes[n]);
+            assertTrue(pattern.matcher(inputs[n]).find(), regexes[n]);
+            String literal = literal(regexes[n]);
+            if (literal != null) {
+                assertTrue(inputs[n].contains(literal), regexes[n] + " -> " + literal);
+            }
+        }
+    }
+
+    @Test
+    void scanReportsPresentLiterals() {
+        LiteralPrefilter.Builder builder = new LiteralPrefilter.Builder();
+        int token = builder.add("token=");
+        int csrf = builder.add("csrf");
+        int unicode = builder.add("é_id");
+        assertEquals(token, builder.add("token="));
+
+        LiteralPrefilter prefilter = builder.build();
+        assertEquals(3, prefilter.getLiteralCount());
+
+        BitSet hits = prefilter.scan("GET /?token=abc HTTP/1.1\r\nX: é_id=1\r\n");
+        assertTrue(hits.get(token));
+        assertFalse(hits.get(csrf));
+        assertTrue(hits.get(unicode));
+    }
+
+    @Test
+    void scanFindsOverlappingLiterals() {
+        LiteralPrefilter.Builder builder = new LiteralPrefilter.Builder();
+        int she = builder.add("she");
+        int hers = builder.add("hers");
+        BitSet hits = builder.build().scan("ushers");
+        assertTrue(hits.get(she));
+        assertTrue(hits.get(hers));
+    }
+}
@@ -0,0 +1,236 @@
+package core;
+
+import burp.api.montoya.core.ByteArray;
+import burp.api.montoya.http.HttpService;
+import burp.api.montoya.http.message.requests.HttpRequest;
+import burp.api.montoya.internal.MontoyaObjectFactory;
+import burp.api.montoya.internal.ObjectFactoryLocator;
+import model.ReplacementRule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageRewriterTest {
+    private MontoyaObjectFactory previousFactory;
+    private final List<String> nativeCalls = new ArrayList<>();
+
+    @BeforeEach
+    void installFactory() {
+        previousFactory = ObjectFactoryLocator.FACTORY;
+        ObjectFactoryLocator.FACTORY = (MontoyaObjectFactory) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{MontoyaObjectFactory.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "byteArray":
+                            return byteArray((byte[]) args[0]);
+                        case "httpRequest":
+                            return request(((ByteArray) args[1]).getBytes());
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @AfterEach
+    void restoreFactory() {
+        ObjectFactoryLocator.FACTORY = previousFactory;
+    }
+
+    @Test
+    void editsApplyInRuleOrder() {
+        MessageRewriter rewriter = new MessageRewriter(null);
+        rewriter.setHeader(null, "X-Token", "first");
+        rewriter.addRegex(null, Pattern.compile("X-Token: (\\w+)"), 1, "second", false, true);
+        rewriter.setHeader(null, "X-Other", "third");
+
+        String result = rewrite(rewriter, "GET / HTTP/1.1\r\nHost: a\r\nX-Token: old\r\n\r\n", true);
+        assertEquals("GET / HTTP/1.1\r\nHost: a\r\nX-Token: second\r\nX-Other: third\r\n\r\n", result);
+
+        // The reverse order lets the later header edit win
+        rewriter = new MessageRewriter(null);
+        rewriter.addRegex(null, Pattern.compile("X-Token: (\\w+)"), 1, "second", false, true);
+        rewriter.setHeader(null, "X-Token", "first");
+        result = rewrite(rewriter, "GET / HTTP/1.1\r\nHost: a\r\nX-Token: old\r\n\r\n", true);
+        assertEquals("GET / HTTP/1.1\r\nHost: a\r\nX-Token: first\r\n\r\n", result);
+    }
+
+    @Test
+    void parametersAndCookiesAreSetOrAdded() {
+        MessageRewriter rewriter = new MessageRewriter(null);
+        rewriter.setUrlParameter(null, "id", "7");
+        rewriter.setUrlParameter(null, "new", "x");
+        rewriter.setCookie(null, "session", "abc");
+        rewriter.setBodyParameter(null, "csrf", "tok");
+
+        String result = rewrite(rewriter, "POST /p?id=1 HTTP/1.1\r\nCookie: session=old; a=b\r\n"
+                + "Content-Type: application/x-www-form-urlencoded\r\nContent-Length: 12\r\n\r\ncsrf=1&q=abc", true);
+        assertEquals("POST /p?id=7&new=x HTTP/1.1\r\nCookie: session=abc; a=b\r\n"
+                + "Content-Type: application/x-www-form-urlencoded\r\nContent-Length: 14\r\n\r\ncsrf=tok&q=abc", result);
+    }
+
+    @Test
+    void contentLengthOnlyChangesWithTheBody() {
+        MessageRewriter rewriter = new MessageRewriter(null);
+        rewriter.setHeader(null, "X-A", "1");
+        // A deliberately wrong Content-Length is left alone when the body is untouched
+        String result = rewrite(rewriter, "HTTP/1.1 200 OK\r\nContent-Length: 99\r\n\r\nhello", false);
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Length: 99\r\nX-A: 1\r\n\r\nhello", result);
+
+        rewriter = new MessageRewriter(null);
+        rewriter.addRegex(null, Pattern.compile("hello"), 0, "goodbye", true, false);
+        result = rewrite(rewriter, "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello", false);
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Length: 7\r\n\r\ngoodbye", result);
+    }
+
+    @Test
+    void chunkedBodiesAreReencoded() {
+        MessageRewriter rewriter = new MessageRewriter(null);
+        rewriter.addRegex(null, Pattern.compile("token=(\\w+)"), 1, "replaced", true, false);
+
+        String result = rewrite(rewriter, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "6\r\ntoken=\r\n3\r\nabc\r\n0\r\n\r\n", false);
+        assertTrue(result.startsWith("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"), result);
+        assertFalse(result.contains("Content-Length"), result);
+        String body = result.substring(result.indexOf("\r\n\r\n") + 4);
+        assertEquals("token=replaced", dechunk(body));
+    }
+
+    @Test
+    void unmatchedChunkedBodyKeepsItsFraming() {
+        MessageRewriter rewriter = new MessageRewriter(null);
+        rewriter.addRegex(null, Pattern.compile("absent"), 0, "x", true, false);
+        byte[] raw = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1);
+        assertNull(rewriter.rewrite(raw, bodyOffset(raw), false));
+    }
+
+    @Test
+    void onlyRulesThatChangedTheMessageAreReported() {
+        ReplacementRule header = new ReplacementRule();
+        ReplacementRule sameValue = new ReplacementRule();
+        ReplacementRule noMatch = new ReplacementRule();
+        ReplacementRule body = new ReplacementRule();
+        MessageRewriter rewriter = new MessageRewriter(null);
+        rewriter.setHeader(header, "X-A", "new");
+        rewriter.setHeader(sameValue, "Host", "a");
+        rewriter.addRegex(noMatch, Pattern.compile("absent"), 0, "x", true, false);
+        rewriter.addRegex(body, Pattern.compile("hello"), 0, "bye", true, false);
+
+        rewrite(rewriter, "HTTP/1.1 200 OK\r\nHost: a\r\nX-A: old\r\nContent-Length: 5\r\n\r\nhello", false);
+        assertEquals(List.of(header, body), rewriter.changedRules());
+    }
+
+    @Test
+    void http2RequestsAreEditedNatively() {
+        MessageRewriter rewriter = new MessageRewriter(null);
+        rewriter.setHeader(null, "X-A", "1");
+        rewriter.addRegex(null, Pattern.compile("v=1"), 0, "v=22", true, false);
+
+        HttpRequest result = rewriter.applyTo(request(
+                "POST /a HTTP/2\r\nHost: a\r\n\r\nv=1".getBytes(StandardCharsets.ISO_8859_1)));
+        assertEquals(List.of("withAddedHeader"), nativeCalls);
+        assertEquals("POST /a HTTP/2\r\nHost: a\r\nX-A: 1\r\n\r\nv=22",
+                new String(result.toByteArray().getBytes(), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void unchangedRequestIsReturnedAsIs() {
+        MessageRewriter rewriter = new MessageRewriter(null);
+        rewriter.setHeader(null, "Host", "a");
+        HttpRequest request = request("GET / HTTP/2\r\nHost: a\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertSame(request, rewriter.applyTo(request));
+
+        request = request("GET / HTTP/1.1\r\nHost: a\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertSame(request, rewriter.applyTo(request));
+    }
+
+    private static String rewrite(MessageRewriter rewriter, String message, boolean isRequest) {
+        byte[] raw = message.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] result = rewriter.rewrite(raw, bodyOffset(raw), isRequest);
+        assertNotNull(result);
+        return new String(result, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int bodyOffset(byte[] raw) {
+        return new String(raw, StandardCharsets.ISO_8859_1).indexOf("\r\n\r\n") + 4;
+    }
+
+    private static String dechunk(String body) {
+        StringBuilder data = new StringBuilder();
+        int position = 0;
+        while (true) {
+            int lineEnd = body.indexOf("\r\n", position);
+            int size = Integer.parseInt(body.substring(position, lineEnd).trim(), 16);
+            if (size == 0) {
+                return data.toString();
+            }
+            data.append(body, lineEnd + 2, lineEnd + 2 + size);
+            position = lineEnd + 2 + size + 2;
+        }
+    }
+
+    private static ByteArray byteArray(byte[] bytes) {
+        return (ByteArray) Proxy.newProxyInstance(MessageRewriterTest.class.getClassLoader(),
+                new Class<?>[]{ByteArray.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getBytes":
+                            return bytes.clone();
+                        case "length":
+                            return bytes.length;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // Just enough of a request over raw bytes for the rewriter; native header edits are recorded
+    private HttpRequest request(byte[] raw) {
+        String message = new String(raw, StandardCharsets.ISO_8859_1);
+        int headEnd = message.indexOf("\r\n\r\n");
+        String head = message.substring(0, headEnd);
+        return (HttpRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "toByteArray":
+                            return byteArray(raw);
+                        case "bodyOffset":
+                            return headEnd + 4;
+                        case "httpService":
+                            return (HttpService) null;
+                        case "httpVersion":
+                            return head.substring(head.lastIndexOf(' ', head.indexOf("\r\n")) + 1, head.indexOf("\r\n"));
+                        case "headerValue":
+                            return headerValue(head, (String) args[0]);
+                        case "hasHeader":
+                            return headerValue(head, (String) args[0]) != null;
+                        case "withAddedHeader":
+                            nativeCalls.add(method.getName());
+                            return request((head + "\r\n" + args[0] + ": " + args[1] + message.substring(headEnd))
+                                    .getBytes(StandardCharsets.ISO_8859_1));
+                        case "withUpdatedHeader":
+                            nativeCalls.add(method.getName());
+                            return request(message.replaceFirst("(?m)^" + args[0] + ": [^\r]*", args[0] + ": " + args[1])
+                                    .getBytes(StandardCharsets.ISO_8859_1));
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static String headerValue(String head, String name) {
+        for (String line : head.split("\r\n")) {
+            if (line.regionMatches(true, 0, name + ":", 0, name.length() + 1)) {
+                return line.substring(name.length() + 1).trim();
+            }
+        }
+        return null;
+    }
+}
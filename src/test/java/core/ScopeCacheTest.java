@@ -0,0 +1,45 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScopeCacheTest {
+
+    @Test
+    void urlsDifferingOnlyInQueryShareOneDecision() {
+        List<String> asked = new ArrayList<>();
+        ScopeCache cache = new ScopeCache(url -> {
+            asked.add(url);
+            return url.contains("/api/");
+        });
+
+        assertTrue(cache.isInScope("https://Example.com/api/items?id=1"));
+        assertTrue(cache.isInScope("https://example.COM/api/items?id=2#top"));
+        assertFalse(cache.isInScope("https://example.com/other?id=1"));
+        assertEquals(List.of("https://example.com/api/items", "https://example.com/other"), asked);
+    }
+
+    @Test
+    void clearAsksAgain() {
+        boolean[] inScope = {true};
+        ScopeCache cache = new ScopeCache(url -> inScope[0]);
+        assertTrue(cache.isInScope("https://example.com/"));
+
+        inScope[0] = false;
+        assertTrue(cache.isInScope("https://example.com/"));
+        cache.clear();
+        assertFalse(cache.isInScope("https://example.com/"));
+    }
+
+    @Test
+    void normalizeKeepsSchemeHostPortAndPath() {
+        assertEquals("https://example.com:8443/A/b", ScopeCache.normalize("HTTPS://Example.com:8443/A/b?q=1#f"));
+        assertEquals("http://example.com", ScopeCache.normalize("http://EXAMPLE.com?q=/x"));
+        assertEquals("http://example.com/", ScopeCache.normalize("http://example.com/#frag"));
+        assertEquals("/relative", ScopeCache.normalize("/relative?x"));
+    }
+}
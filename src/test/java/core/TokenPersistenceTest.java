@@ -0,0 +1,91 @@
+package core;
+
+import model.Bucket;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenPersistenceTest {
+
+    @Test
+    void recordsRoundTrip() throws IOException {
+        StringBuilder longToken = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            longToken.append((char) ('a' + i % 26));
+        }
+        List<String> tokens = Arrays.asList("abc", "", "ünïcødé ✓", "😀", longToken.toString(), "abc");
+
+        List<String> read = new ArrayList<>();
+        assertEquals(tokens.size(), TokenPersistence.readTokens(TokenPersistence.writeTokens(tokens), read::add));
+        assertEquals(tokens, read);
+    }
+
+    @Test
+    void emptyRecordRoundTrips() throws IOException {
+        byte[] record = TokenPersistence.writeTokens(Collections.emptyList());
+        assertEquals(0, TokenPersistence.readTokens(record, token -> fail("unexpected token " + token)));
+    }
+
+    @Test
+    void recordStartsWithMagicAndVersion() throws IOException {
+        byte[] record = TokenPersistence.writeTokens(List.of("token"));
+        assertEquals('C', record[0]);
+        assertEquals('T', record[1]);
+        assertEquals(1, record[2]);
+    }
+
+    @Test
+    void foreignOrNewerRecordsAreRejected() throws IOException {
+        assertThrows(IOException.class, () -> TokenPersistence.readTokens(new byte[]{'[', '"', 'a'}, token -> { }));
+        assertThrows(IOException.class, () -> TokenPersistence.readTokens(new byte[0], token -> { }));
+
+        byte[] record = TokenPersistence.writeTokens(List.of("token"));
+        record[2] = 2;
+        assertThrows(IOException.class, () -> TokenPersistence.readTokens(record, token -> { }));
+    }
+
+    @Test
+    void truncatedRecordIsAnError() throws IOException {
+        byte[] record = TokenPersistence.writeTokens(List.of("first token", "second token"));
+        byte[] truncated = Arrays.copyOf(record, record.length / 2);
+        assertThrows(IOException.class, () -> TokenPersistence.readTokens(truncated, token -> { }));
+    }
+
+    @Test
+    void restoredTokensLoadOnFirstUseWithoutCountingAsChanges() throws IOException {
+        byte[] record = TokenPersistence.writeTokens(List.of("one", "two"));
+        Bucket bucket = new Bucket("b");
+        int[] decoded = {0};
+        bucket.restoreTokensLater(sink -> {
+            decoded[0]++;
+            try {
+                TokenPersistence.readTokens(record, sink);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        assertEquals(0, decoded[0]);
+        assertEquals(0, bucket.getTokenChangeCount());
+
+        // Tokens collected after the restore go after the saved ones
+        bucket.addToken("three");
+        assertEquals(1, decoded[0]);
+        assertEquals(List.of("one", "two", "three"), bucket.getAllTokens());
+        assertEquals(1, bucket.getTokenChangeCount());
+        assertEquals(1, decoded[0]);
+    }
+
+    @Test
+    void clearingSkipsAPendingRestore() {
+        Bucket bucket = new Bucket("b");
+        bucket.restoreTokensLater(sink -> fail("restore should be skipped"));
+        bucket.clearTokens();
+        assertEquals(0, bucket.getTokenCount());
+    }
+}
@@ -0,0 +1,158 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockFreeTokenStoreTest {
+
+    @Test
+    void takesFromHeadOrTail() {
+        LockFreeTokenStore store = new LockFreeTokenStore();
+        for (String token : List.of("a", "b", "c")) {
+            store.add(token, -1, BucketFullBehavior.REJECT_NEW);
+        }
+        assertEquals("a", store.get(false, false, false));
+        assertEquals("c", store.get(false, true, false));
+        assertEquals("a", store.get(true, false, false));
+        assertEquals("c", store.get(true, true, false));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void lastTokenCanBeKept() {
+        LockFreeTokenStore store = new LockFreeTokenStore();
+        store.add("only", -1, BucketFullBehavior.REJECT_NEW);
+        assertEquals("only", store.get(true, false, true));
+        assertEquals("only", store.get(true, false, true));
+        assertEquals(1, store.size());
+        assertEquals("only", store.get(true, false, false));
+        assertNull(store.get(true, false, false));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void fullBehaviors() {
+        LockFreeTokenStore reject = fill(BucketFullBehavior.REJECT_NEW);
+        assertEquals(List.of("1", "2"), reject.snapshot());
+
+        LockFreeTokenStore oldest = fill(BucketFullBehavior.REPLACE_OLDEST);
+        assertEquals(List.of("2", "3"), oldest.snapshot());
+
+        LockFreeTokenStore last = fill(BucketFullBehavior.REPLACE_LAST);
+        assertEquals(List.of("1", "3"), last.snapshot());
+        assertEquals(2, last.size());
+    }
+
+    private static LockFreeTokenStore fill(BucketFullBehavior behavior) {
+        LockFreeTokenStore store = new LockFreeTokenStore();
+        for (String token : List.of("1", "2", "3")) {
+            store.add(token, 2, behavior);
+        }
+        return store;
+    }
+
+    @Test
+    void uniqueIndexRejectsDuplicatesAndForgetsTakenTokens() {
+        LockFreeTokenStore store = new LockFreeTokenStore();
+        store.setUniqueIndexEnabled(true);
+        store.add("a", -1, BucketFullBehavior.REJECT_NEW);
+        store.add("a", -1, BucketFullBehavior.REJECT_NEW);
+        assertEquals(1, store.size());
+        assertTrue(store.contains("a"));
+
+        store.get(true, false, false);
+        assertFalse(store.contains("a"));
+        store.add("a", -1, BucketFullBehavior.REJECT_NEW);
+        assertEquals(1, store.size());
+
+        // A rejected token must not stay claimed in the index
+        store.add("b", 1, BucketFullBehavior.REJECT_NEW);
+        assertFalse(store.contains("b"));
+    }
+
+    @Test
+    void replaceAllAndClear() {
+        LockFreeTokenStore store = new LockFreeTokenStore();
+        store.setUniqueIndexEnabled(true);
+        store.add("old", -1, BucketFullBehavior.REJECT_NEW);
+        store.replaceAll(List.of("x", "y"));
+        assertEquals(List.of("x", "y"), store.snapshot());
+        assertEquals(2, store.size());
+        assertFalse(store.contains("old"));
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertNull(store.get(true, false, false));
+    }
+
+    @Test
+    void concurrentProducersAndConsumersLoseNothing() throws Exception {
+        LockFreeTokenStore store = new LockFreeTokenStore();
+        int producers = 4;
+        int perProducer = 20000;
+        ExecutorService pool = Executors.newFixedThreadPool(producers * 2);
+        Set<String> taken = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        CountDownLatch producersDone = new CountDownLatch(producers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        store.add(producer + ":" + i, -1, BucketFullBehavior.REJECT_NEW);
+                    }
+                    producersDone.countDown();
+                }));
+                futures.add(pool.submit(() -> {
+                    while (producersDone.getCount() > 0 || store.size() > 0) {
+                        String token = store.get(true, producer % 2 == 0, false);
+                        if (token != null && !taken.add(token)) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(0, duplicates.get());
+        assertEquals(producers * perProducer, taken.size() + store.snapshot().size());
+        assertEquals(store.snapshot().size(), store.size());
+    }
+
+    @Test
+    void concurrentAddsNeverExceedMaxSize() throws Exception {
+        LockFreeTokenStore store = new LockFreeTokenStore();
+        int maxSize = 100;
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                int producer = p;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        store.add(producer + ":" + i, maxSize, BucketFullBehavior.REPLACE_OLDEST);
+                        assertTrue(store.size() <= maxSize);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(maxSize, store.size());
+        assertEquals(maxSize, store.snapshot().size());
+    }
+}
@@ -0,0 +1,39 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegexPatternTest {
+
+    @Test
+    void compiledPatternIsReusedUntilEdited() {
+        RegexPattern pattern = new RegexPattern("token=(\\w+)", "");
+        Pattern first = pattern.getCompiledPattern();
+        assertSame(first, pattern.getCompiledPattern());
+
+        pattern.setPattern("csrf=(\\w+)");
+        assertEquals("csrf=(\\w+)", pattern.getCompiledPattern().pattern());
+    }
+
+    @Test
+    void flagsFollowTheModes() {
+        RegexPattern pattern = new RegexPattern("a.b", "");
+        assertEquals(0, pattern.getCompiledPattern().flags());
+
+        pattern.setDotallMode(true);
+        pattern.setMultilineMode(true);
+        assertEquals(Pattern.DOTALL | Pattern.MULTILINE, pattern.getCompiledPattern().flags());
+        assertTrue(pattern.getCompiledPattern().matcher("a\nb").find());
+    }
+
+    @Test
+    void invalidPatternThrowsAndIsNotCached() {
+        RegexPattern pattern = new RegexPattern("a(b", "");
+        assertThrows(java.util.regex.PatternSyntaxException.class, pattern::getCompiledPattern);
+        pattern.setPattern("ab");
+        assertTrue(pattern.getCompiledPattern().matcher("xaby").find());
+    }
+}
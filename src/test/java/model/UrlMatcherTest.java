@@ -0,0 +1,65 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlMatcherTest {
+
+    @Test
+    void emptyFieldsMatchEverything() {
+        assertTrue(new UrlMatcher().matches("https://example.com/anything?q=1"));
+    }
+
+    @Test
+    void literalFieldsMatchAsSubstrings() {
+        UrlMatcher matcher = new UrlMatcher("Any", "example.com", "", "/api");
+        assertTrue(matcher.matches("https://www.example.com/api/v1"));
+        assertFalse(matcher.matches("https://example.org/api"));
+        assertFalse(matcher.matches("https://example.com/web"));
+    }
+
+    @Test
+    void regexFieldsUseFind() {
+        UrlMatcher matcher = new UrlMatcher("Any", "^api\\.example\\.com$", "^(443|8443)$", "");
+        assertTrue(matcher.matches("https://api.example.com:443/x"));
+        assertFalse(matcher.matches("https://api.example.com/x")); // No explicit port
+        assertTrue(matcher.matches("https://api.example.com:8443/x"));
+        assertFalse(matcher.matches("https://api.example.com:8080/x"));
+        assertFalse(matcher.matches("https://xapi.example.com:443/x"));
+    }
+
+    @Test
+    void invalidRegexFallsBackToSubstring() {
+        UrlMatcher matcher = new UrlMatcher("Any", "", "", "/a[b");
+        assertTrue(matcher.matches("https://example.com/a[b/c"));
+        assertFalse(matcher.matches("https://example.com/ab"));
+    }
+
+    @Test
+    void protocolIsChecked() {
+        UrlMatcher matcher = new UrlMatcher("HTTPS", "", "", "");
+        assertTrue(matcher.matches("https://example.com/"));
+        assertFalse(matcher.matches("http://example.com/"));
+    }
+
+    @Test
+    void compiledSnapshotIsReusedUntilAFieldChanges() {
+        UrlMatcher matcher = new UrlMatcher("Any", "example.com", "", "");
+        UrlMatcher.Compiled first = matcher.compile();
+        assertSame(first, matcher.compile());
+
+        matcher.setHost("example.org");
+        UrlMatcher.Compiled second = matcher.compile();
+        assertNotSame(first, second);
+        assertEquals("example.org", second.getHost());
+
+        // The earlier snapshot keeps matching what it was built from
+        assertTrue(first.matches(util.ParsedUrl.parse("https://example.com/")));
+        assertFalse(matcher.matches("https://example.com/"));
+        assertTrue(matcher.matches("https://example.org/"));
+
+        matcher.setProtocol("HTTP");
+        assertFalse(matcher.matches("https://example.org/"));
+    }
+}
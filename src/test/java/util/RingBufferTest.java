@@ -0,0 +1,124 @@
+package util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+
+    @Test
+    void dequeOperationsWrapAroundAndGrow() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        buffer.addLast(1);
+        buffer.addLast(2);
+        buffer.addFirst(0);
+        buffer.addFirst(-1);
+        // Full and wrapped; the next add grows the array
+        buffer.addLast(3);
+        assertEquals(List.of(-1, 0, 1, 2, 3), buffer.toList());
+        assertEquals(-1, buffer.removeFirst());
+        assertEquals(3, buffer.removeLast());
+        assertEquals(0, buffer.getFirst());
+        assertEquals(2, buffer.getLast());
+        assertEquals(3, buffer.size());
+    }
+
+    @Test
+    void emptyBufferThrows() {
+        RingBuffer<String> buffer = new RingBuffer<>();
+        assertTrue(buffer.isEmpty());
+        assertThrows(NoSuchElementException.class, buffer::getFirst);
+        assertThrows(NoSuchElementException.class, buffer::removeLast);
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.get(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> buffer.add(1, "a"));
+    }
+
+    @Test
+    void indexedEditsMatchAList() {
+        Random random = new Random(42);
+        RingBuffer<Integer> buffer = new RingBuffer<>(2);
+        List<Integer> expected = new ArrayList<>();
+
+        for (int step = 0; step < 20000; step++) {
+            int value = random.nextInt(100);
+            switch (random.nextInt(9)) {
+                case 0:
+                    buffer.addFirst(value);
+                    expected.add(0, value);
+                    break;
+                case 1:
+                case 2:
+                    buffer.addLast(value);
+                    expected.add(value);
+                    break;
+                case 3: {
+                    int index = random.nextInt(expected.size() + 1);
+                    buffer.add(index, value);
+                    expected.add(index, value);
+                    break;
+                }
+                case 4:
+                    if (!expected.isEmpty()) {
+                        int index = random.nextInt(expected.size());
+                        assertEquals(expected.remove(index), buffer.remove(index));
+                    }
+                    break;
+                case 5:
+                    if (!expected.isEmpty()) {
+                        assertEquals(expected.remove(0), buffer.removeFirst());
+                    }
+                    break;
+                case 6:
+                    if (!expected.isEmpty()) {
+                        int from = random.nextInt(expected.size());
+                        int to = random.nextInt(expected.size());
+                        buffer.move(from, to);
+                        expected.add(to, expected.remove(from));
+                    }
+                    break;
+                case 7:
+                    if (!expected.isEmpty()) {
+                        int index = random.nextInt(expected.size());
+                        assertEquals(expected.set(index, value), buffer.set(index, value));
+                    }
+                    break;
+                case 8:
+                    if (random.nextInt(50) == 0) {
+                        int divisor = 2 + random.nextInt(5);
+                        int removed = buffer.removeIf(element -> element % divisor == 0);
+                        int before = expected.size();
+                        expected.removeIf(element -> element % divisor == 0);
+                        assertEquals(before - expected.size(), removed);
+                    }
+                    break;
+            }
+            assertEquals(expected.size(), buffer.size());
+        }
+        assertEquals(expected, buffer.toList());
+
+        List<Integer> iterated = new ArrayList<>();
+        buffer.forEach(iterated::add);
+        assertEquals(expected, iterated);
+    }
+
+    @Test
+    void clearAndContains() {
+        RingBuffer<String> buffer = new RingBuffer<>(2);
+        for (int i = 0; i < 10; i++) {
+            buffer.addLast("t" + i);
+        }
+        assertTrue(buffer.contains("t9"));
+        assertFalse(buffer.contains("t10"));
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        assertFalse(buffer.contains("t9"));
+        buffer.addLast("again");
+        assertEquals(List.of("again"), buffer.toList());
+    }
+}